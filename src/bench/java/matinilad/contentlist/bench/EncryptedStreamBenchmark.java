@@ -0,0 +1,98 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import matinilad.contentlist.phantomfs.utils.EncryptedInputStream;
+import matinilad.contentlist.phantomfs.utils.EncryptedOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption and decryption of a buffer, the score includes the key derivation done when a stream is opened.
+ *
+ * @author Cien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptedStreamBenchmark {
+
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    @Param({"65536", "16777216"})
+    public int size;
+
+    private byte[] plain;
+    private byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.plain = new byte[this.size];
+        new Random(Synthetic.SEED).nextBytes(this.plain);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream e = new EncryptedOutputStream(out, PASSWORD)) {
+            e.write(this.plain);
+        }
+        this.encrypted = out.toByteArray();
+    }
+
+    @Benchmark
+    public void encrypt() throws IOException {
+        try (OutputStream e = new EncryptedOutputStream(OutputStream.nullOutputStream(), PASSWORD)) {
+            e.write(this.plain);
+        }
+    }
+
+    @Benchmark
+    public long decrypt() throws IOException {
+        try (InputStream d = new EncryptedInputStream(new ByteArrayInputStream(this.encrypted), PASSWORD)) {
+            return d.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+}
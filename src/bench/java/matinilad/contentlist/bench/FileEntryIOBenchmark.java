@@ -0,0 +1,109 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import matinilad.contentlist.phantomfs.entry.FileEntry;
+import matinilad.contentlist.phantomfs.entry.FileEntryReader;
+import matinilad.contentlist.phantomfs.entry.FileEntryWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading and writing of csv lists, the score is the time to read or write all entries.
+ *
+ * @author Cien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileEntryIOBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private List<FileEntry> list;
+    private String csv;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.list = new ArrayList<>(this.entries);
+        Iterator<FileEntry> it = Synthetic.newGenerator().generate(this.entries);
+        while (it.hasNext()) {
+            this.list.add(it.next());
+        }
+
+        StringWriter out = new StringWriter();
+        try (FileEntryWriter writer = new FileEntryWriter(out)) {
+            for (FileEntry e : this.list) {
+                writer.writeFileEntry(e);
+            }
+        }
+        this.csv = out.toString();
+    }
+
+    @Benchmark
+    public void readEntry(Blackhole blackhole) throws IOException {
+        try (FileEntryReader reader = new FileEntryReader(new StringReader(this.csv))) {
+            FileEntry entry;
+            while ((entry = reader.readEntry()) != null) {
+                blackhole.consume(entry);
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeFileEntry() throws IOException {
+        try (FileEntryWriter writer = new FileEntryWriter(Writer.nullWriter())) {
+            for (FileEntry e : this.list) {
+                writer.writeFileEntry(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.entry.FileEntryMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading metadata with a number of random keys.
+ *
+ * @author Cien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileEntryMetadataBenchmark {
+
+    @Param({"4", "256"})
+    public int keys;
+
+    private FileEntryMetadata metadata;
+    private String saved;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(Synthetic.SEED);
+        this.metadata = new FileEntryMetadata();
+        for (int i = 0; i < this.keys; i++) {
+            PhantomPath path = PhantomPath.of("/group" + random.nextInt(8) + "/key" + i + ".txt");
+            StringBuilder value = new StringBuilder();
+            int length = 1 + random.nextInt(128);
+            for (int j = 0; j < length; j++) {
+                value.append((char) ('a' + random.nextInt(26)));
+            }
+            this.metadata.writeString(path, value.toString());
+        }
+        this.saved = this.metadata.save();
+    }
+
+    @Benchmark
+    public String save() {
+        return this.metadata.save();
+    }
+
+    @Benchmark
+    public FileEntryMetadata load() {
+        FileEntryMetadata m = new FileEntryMetadata();
+        m.load(this.saved);
+        return m;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import matinilad.contentlist.phantomfs.PhantomFileSystem;
+import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.entry.FileEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The in memory file system at different sizes, the 10M entries size needs a large heap (-jvmArgsAppend -Xmx16g).
+ *
+ * <p>
+ * writeEntry includes the cost of generating the entries, compare it with generate to get the cost of the file system alone.</p>
+ *
+ * @author Cien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PhantomFileSystemBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int entries;
+
+    private PhantomFileSystem fs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.fs = newFileSystem();
+        this.fs.validate();
+    }
+
+    private PhantomFileSystem newFileSystem() {
+        PhantomFileSystem f = new PhantomFileSystem();
+        Iterator<FileEntry> it = Synthetic.newGenerator().generate(this.entries);
+        while (it.hasNext()) {
+            f.writeEntry(it.next());
+        }
+        return f;
+    }
+
+    @Benchmark
+    public void generate(Blackhole blackhole) {
+        Iterator<FileEntry> it = Synthetic.newGenerator().generate(this.entries);
+        while (it.hasNext()) {
+            blackhole.consume(it.next());
+        }
+    }
+
+    @Benchmark
+    public PhantomFileSystem writeEntry() {
+        return newFileSystem();
+    }
+
+    @Benchmark
+    public PhantomFileSystem validate() {
+        this.fs.validate();
+        return this.fs;
+    }
+
+    @Benchmark
+    public PhantomPath[] search() throws InterruptedException {
+        return this.fs.search(PhantomPath.of("/"), "a1", false, false, true);
+    }
+
+    @Benchmark
+    public FileEntry[] listEntries() {
+        return this.fs.listEntries();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.entry.FileEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Path parsing and manipulation over the paths of a generated list.
+ *
+ * @author Cien
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhantomPathBenchmark {
+
+    private static final int PATHS = 4096;
+
+    private String[] strings;
+    private PhantomPath[] paths;
+    private PhantomPath[] special;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.strings = new String[PATHS];
+        this.paths = new PhantomPath[PATHS];
+        this.special = new PhantomPath[PATHS];
+        Iterator<FileEntry> it = Synthetic.newGenerator().generate(PATHS);
+        for (int i = 0; i < PATHS; i++) {
+            PhantomPath p = it.next().getPath();
+            this.strings[i] = p.toString();
+            this.paths[i] = p;
+            this.special[i] = p.resolve("../.").resolve(p.getName() == null ? "." : p.getName());
+        }
+    }
+
+    @Benchmark
+    public void of(Blackhole blackhole) {
+        for (String s : this.strings) {
+            blackhole.consume(PhantomPath.of(s));
+        }
+    }
+
+    @Benchmark
+    public void resolve(Blackhole blackhole) {
+        PhantomPath base = this.paths[this.paths.length - 1];
+        for (PhantomPath p : this.paths) {
+            blackhole.consume(base.resolve(p.toRelative()));
+        }
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        for (PhantomPath p : this.special) {
+            blackhole.consume(p.normalize());
+        }
+    }
+
+}
@@ -39,7 +39,7 @@ public class Main {
                 }
                 System.out.println("Available interfaces:");
                 System.out.println("-version - Displays information about this program");
-                System.out.println("-cli - The command line interface (create, validate)");
+                System.out.println("-cli - The command line interface (create, validate, generate)");
                 System.out.println("-tui - The terminal user interface (open)");
                 System.out.println("-gui - The graphical user interface (default) (create, validate, open)");
             }
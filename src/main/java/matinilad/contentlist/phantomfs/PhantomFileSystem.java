@@ -27,7 +27,6 @@
 package matinilad.contentlist.phantomfs;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -38,6 +37,7 @@ import java.util.Objects;
 import java.util.Set;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
 import matinilad.contentlist.phantomfs.entry.FileEntryType;
+import matinilad.contentlist.phantomfs.jfr.SearchEvent;
 
 /**
  *
@@ -50,6 +50,7 @@ public class PhantomFileSystem {
         String name = null;
         boolean directory = false;
         InternalFile parent = null;
+        PhantomPath path = null;
         final Map<String, InternalFile> children = new LinkedHashMap<>();
     }
 
@@ -68,9 +69,7 @@ public class PhantomFileSystem {
 
     }
 
-    private void writeEntryImpl(FileEntry entry) {
-        PhantomPath path = entry.getPath();
-        boolean directory = entry.getType().equals(FileEntryType.DIRECTORY);
+    private void writeEntryImpl(PhantomPath path, boolean directory, FileEntry entry) {
 
         InternalFile currentDirectory = this.root;
         for (int i = 0; i < path.getNumberOfObjects() - 1; i++) {
@@ -121,7 +120,37 @@ public class PhantomFileSystem {
     }
 
     public void writeEntry(FileEntry entry) {
-        writeEntryImpl(entry);
+        writeEntryImpl(entry.getPath(), entry.getType().equals(FileEntryType.DIRECTORY), entry);
+    }
+
+    /**
+     * Reserves the place of a file in its directory, so a entry written later
+     * for it keeps the order it would have had if it was written now; a
+     * reserved file that is never written must be released with
+     * {@link #releaseFile(PhantomPath)}
+     *
+     * @param path The path of the file, not null
+     */
+    public void reserveFile(PhantomPath path) {
+        Objects.requireNonNull(path, "path is null");
+        if (path.isRoot()) {
+            throw new IllegalArgumentException("path is root");
+        }
+        writeEntryImpl(path, false, null);
+    }
+
+    /**
+     * Removes a file reserved with {@link #reserveFile(PhantomPath)} that was
+     * not written, does nothing if the file was written.
+     *
+     * @param path The path of the file, not null, not relative
+     */
+    public void releaseFile(PhantomPath path) {
+        InternalFile file = resolve(path);
+        if (file == null || file.directory || file.entry != null) {
+            return;
+        }
+        file.parent.children.remove(file.name, file);
     }
 
     private void validateFile(InternalFile file) {
@@ -193,15 +222,17 @@ public class PhantomFileSystem {
         if (file == this.root) {
             return PhantomPath.of("/");
         }
+        PhantomPath path = file.path;
+        if (path != null) {
+            return path;
+        }
 
-        List<String> names = new ArrayList<>();
-        InternalFile current = file;
-        do {
-            names.add(current.name);
-        } while ((current = current.parent) != this.root);
-        Collections.reverse(names);
-
-        return PhantomPath.of(names.toArray(String[]::new), false);
+        //directory paths are kept as they are the shared prefix of their children
+        path = realPath(file.parent).child(file.name);
+        if (file.directory) {
+            file.path = path;
+        }
+        return path;
     }
 
     /**
@@ -273,7 +304,7 @@ public class PhantomFileSystem {
             if ((e.equals(".") || e.equals("..")) && !includeSpecialLinks) {
                 continue;
             }
-            files.add(realPath.resolve(e));
+            files.add(realPath.child(e));
         }
 
         return files.toArray(PhantomPath[]::new);
@@ -397,6 +428,8 @@ public class PhantomFileSystem {
             boolean sort
     ) throws InterruptedException {
         Objects.requireNonNull(name, "name is null");
+        SearchEvent event = new SearchEvent();
+        event.start();
         InternalFile resolved = resolve(path);
         if (resolved == null || !resolved.directory) {
             return null;
@@ -406,6 +439,7 @@ public class PhantomFileSystem {
         }
         List<PhantomPath> files = new ArrayList<>();
         search(files, sort, resolved, name, caseSensitive, exactName, 0);
+        event.finish(path, name, caseSensitive, exactName, sort, files.size());
         return files.toArray(PhantomPath[]::new);
     }
     
@@ -23,8 +23,32 @@ import java.util.Objects;
  */
 public class PhantomPath {
 
-    private static final PhantomPath ABSOLUTE_ROOT = new PhantomPath(new String[0], false);
-    private static final PhantomPath RELATIVE_ROOT = new PhantomPath(new String[0], true);
+    private static final PhantomPath ABSOLUTE_ROOT = new PhantomPath(false);
+    private static final PhantomPath RELATIVE_ROOT = new PhantomPath(true);
+
+    private static void checkObject(String object, int index) {
+        if (object.isEmpty()) {
+            throw new IllegalArgumentException("object at index " + index + " is empty.");
+        }
+        for (int j = 0; j < object.length(); j++) {
+            char c = object.charAt(j);
+            if (c == '\0' || c == '/' || c == '\\') {
+                throw new IllegalArgumentException(
+                        "object at index " + index + " contains illegal characters");
+            }
+        }
+    }
+
+    private static PhantomPath create(String[] objects, boolean relative) {
+        PhantomPath path = (relative ? RELATIVE_ROOT : ABSOLUTE_ROOT);
+        for (String object : objects) {
+            path = new PhantomPath(path, object);
+        }
+        if (objects.length != 0) {
+            path.objects = objects;
+        }
+        return path;
+    }
 
     /**
      * Creates a new ContentPath from a array of objects
@@ -36,20 +60,10 @@ public class PhantomPath {
     public static PhantomPath of(String[] objects, boolean relative) {
         Objects.requireNonNull(objects, "objects is null");
         for (int i = 0; i < objects.length; i++) {
-            String object = objects[i];
-            if (object.isEmpty()) {
-                throw new IllegalArgumentException("object at index " + i + " is empty.");
-            }
-            for (int j = 0; j < object.length(); j++) {
-                char c = object.charAt(j);
-                if (c == '\0' || c == '/' || c == '\\') {
-                    throw new IllegalArgumentException(
-                            "object at index " + i + " contains illegal characters");
-                }
-            }
+            checkObject(objects[i], i);
         }
 
-        return new PhantomPath(objects.clone(), relative);
+        return create(objects.clone(), relative);
     }
     
     /**
@@ -96,7 +110,7 @@ public class PhantomPath {
             b.appendCodePoint(unicode);
         }
         String[] objects = objectList.toArray(String[]::new);
-        return new PhantomPath(objects, relative);
+        return create(objects, relative);
     }
 
     /**
@@ -112,31 +126,64 @@ public class PhantomPath {
     public static PhantomPath resolve(PhantomPath a, PhantomPath b) {
         Objects.requireNonNull(a, "a is null");
         Objects.requireNonNull(b, "b is null");
-        List<String> fields = new ArrayList<>();
-        for (int i = 0; i < a.getNumberOfObjects(); i++) {
-            fields.add(a.getObject(i));
-        }
+        //a is shared as the prefix, only the objects of b are linked
+        PhantomPath result = a;
         for (int i = 0; i < b.getNumberOfObjects(); i++) {
-            fields.add(b.getObject(i));
+            result = new PhantomPath(result, b.getObject(i));
         }
-        return new PhantomPath(fields.toArray(String[]::new), a.isRelative());
+        return result;
     }
     
-    private final String[] objects;
+    private final PhantomPath parent;
+    private final String name;
+    private final int depth;
     private final boolean relative;
     private final boolean specialLinks;
+    private final int hash;
+    
+    private volatile String[] objects = null;
 
-    private PhantomPath(String[] objects, boolean relative) {
-        this.objects = objects;
+    private PhantomPath(boolean relative) {
+        this.parent = null;
+        this.name = null;
+        this.depth = 0;
         this.relative = relative;
-        boolean special = false;
-        for (String obj : objects) {
-            if (obj.equals(".") || obj.equals("..")) {
-                special = true;
-                break;
+        this.specialLinks = false;
+        this.hash = (relative ? 1 : 2);
+        this.objects = new String[0];
+    }
+    
+    private PhantomPath(PhantomPath parent, String name) {
+        this.parent = parent;
+        this.name = name;
+        this.depth = parent.depth + 1;
+        this.relative = parent.relative;
+        this.specialLinks = parent.specialLinks || name.equals(".") || name.equals("..");
+        this.hash = 31 * parent.hash + name.hashCode();
+    }
+    
+    /**
+     * Creates a child of this path, the child is linked to this path so it is created in constant time, the name must be a valid object.
+     * 
+     * @param name the name of the child
+     * @return the child path
+     */
+    PhantomPath child(String name) {
+        return new PhantomPath(this, name);
+    }
+    
+    private String[] objects() {
+        String[] array = this.objects;
+        if (array == null) {
+            array = new String[this.depth];
+            PhantomPath current = this;
+            for (int i = this.depth - 1; i >= 0; i--) {
+                array[i] = current.name;
+                current = current.parent;
             }
+            this.objects = array;
         }
-        this.specialLinks = special;
+        return array;
     }
 
     /**
@@ -149,7 +196,7 @@ public class PhantomPath {
      * @return The number of objects in this path
      */
     public int getNumberOfObjects() {
-        return this.objects.length;
+        return this.depth;
     }
 
     /**
@@ -163,7 +210,10 @@ public class PhantomPath {
      * @return The object
      */
     public String getObject(int index) {
-        return this.objects[index];
+        if (index == (this.depth - 1)) {
+            return this.name;
+        }
+        return objects()[index];
     }
 
     /**
@@ -176,10 +226,7 @@ public class PhantomPath {
      * @return The last object of this path (the name of the file) or null if this is a root path.
      */
     public String getName() {
-        if (isRoot()) {
-            return null;
-        }
-        return this.objects[this.objects.length - 1];
+        return this.name;
     }
 
     /**
@@ -197,7 +244,7 @@ public class PhantomPath {
      * @return true if is a root directory
      */
     public boolean isRoot() {
-        return this.objects.length == 0;
+        return this.depth == 0;
     }
 
     /**
@@ -220,14 +267,10 @@ public class PhantomPath {
      * @return the parent or the root if this is already a root directory
      */
     public PhantomPath getParent() {
-        if (this.objects.length <= 1) {
-            if (isRelative()) {
-                return RELATIVE_ROOT;
-            } else {
-                return ABSOLUTE_ROOT;
-            }
+        if (this.parent == null) {
+            return this;
         }
-        return new PhantomPath(Arrays.copyOf(this.objects, this.objects.length - 1), isRelative());
+        return this.parent;
     }
 
     /**
@@ -244,7 +287,7 @@ public class PhantomPath {
         if (isRelative()) {
             return this;
         }
-        return new PhantomPath(this.objects, true);
+        return create(objects(), true);
     }
 
     /**
@@ -261,7 +304,7 @@ public class PhantomPath {
         if (!isRelative()) {
             return this;
         }
-        return new PhantomPath(this.objects, false);
+        return create(objects(), false);
     }
 
     /**
@@ -333,12 +376,12 @@ public class PhantomPath {
      * @return
      */
     public PhantomPath rename(String name) {
+        Objects.requireNonNull(name, "name is null");
+        checkObject(name, Math.max(this.depth - 1, 0));
         if (isRoot()) {
-            return of(new String[]{name}, isRelative());
+            return new PhantomPath(this, name);
         }
-        String[] copy = this.objects.clone();
-        copy[copy.length - 1] = name;
-        return of(copy, isRelative());
+        return new PhantomPath(this.parent, name);
     }
     
     /**
@@ -365,8 +408,8 @@ public class PhantomPath {
                 return null;
             }
         }
-        return new PhantomPath(
-                Arrays.copyOfRange(this.objects, root.getNumberOfObjects(), this.objects.length),
+        return create(
+                Arrays.copyOfRange(objects(), root.getNumberOfObjects(), this.depth),
                 true
         );
     }
@@ -380,9 +423,10 @@ public class PhantomPath {
         if (!hasSpecialLinks()) {
             return this;
         }
+        String[] array = objects();
         List<String> objs = new ArrayList<>();
-        for (int i = 0; i < this.objects.length; i++) {
-            String obj = this.objects[i];
+        for (int i = 0; i < array.length; i++) {
+            String obj = array[i];
             if (obj.equals(".")) {
                 continue;
             }
@@ -404,15 +448,12 @@ public class PhantomPath {
         if (objs.isEmpty()) {
             return (isRelative() ? RELATIVE_ROOT : ABSOLUTE_ROOT);
         }
-        return new PhantomPath(objs.toArray(String[]::new), isRelative());
+        return create(objs.toArray(String[]::new), isRelative());
     }
     
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 19 * hash + Arrays.deepHashCode(this.objects);
-        hash = 19 * hash + (this.relative ? 1 : 0);
-        return hash;
+        return this.hash;
     }
 
     @Override
@@ -427,10 +468,20 @@ public class PhantomPath {
             return false;
         }
         final PhantomPath other = (PhantomPath) obj;
-        if (this.relative != other.relative) {
+        if (this.hash != other.hash || this.depth != other.depth || this.relative != other.relative) {
             return false;
         }
-        return Arrays.deepEquals(this.objects, other.objects);
+        //stops as soon as both paths share the same prefix instance
+        PhantomPath a = this;
+        PhantomPath b = other;
+        while (a != b) {
+            if (!a.name.equals(b.name)) {
+                return false;
+            }
+            a = a.parent;
+            b = b.parent;
+        }
+        return true;
     }
 
     /**
@@ -8,6 +8,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
 import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.utils.SamplePoints;
 
 /**
  *
@@ -29,7 +30,11 @@ public class FileEntry {
     private int files = 0;
     private int directories = 0;
     private byte[] sha256 = null;
+    private byte[] crc32c = null;
+    private byte[] treeHash = null;
+    private byte[] treeLeaves = null;
     private byte[] sample = null;
+    private byte[] samplePoints = null;
 
     private final FileEntryMetadata metadata = new FileEntryMetadata();
 
@@ -122,6 +127,57 @@ public class FileEntry {
         this.sha256 = (sha256 == null ? null : sha256.clone());
     }
 
+    public byte[] getCrc32c() {
+        return (this.crc32c == null ? null : this.crc32c.clone());
+    }
+
+    /**
+     * Sets the CRC32C checksum of the file, a fast non cryptographic
+     * checksum for detecting accidental corruption.
+     *
+     * @param crc32c The checksum as 4 big endian bytes or null
+     */
+    public void setCrc32c(byte[] crc32c) {
+        if (crc32c != null && crc32c.length != 4) {
+            throw new IllegalArgumentException("Invalid crc32c length! " + crc32c.length + " found, but 4 is required.");
+        }
+        this.crc32c = (crc32c == null ? null : crc32c.clone());
+    }
+
+    public byte[] getTreeHash() {
+        return (this.treeHash == null ? null : this.treeHash.clone());
+    }
+
+    /**
+     * Sets the root of the block tree hash of the file.
+     *
+     * @param treeHash The root or null
+     * @see matinilad.contentlist.phantomfs.utils.TreeHash
+     */
+    public void setTreeHash(byte[] treeHash) {
+        if (treeHash != null && treeHash.length != 32) {
+            throw new IllegalArgumentException("Invalid tree hash length! " + treeHash.length + " found, but 32 is required.");
+        }
+        this.treeHash = (treeHash == null ? null : treeHash.clone());
+    }
+
+    public byte[] getTreeLeaves() {
+        return (this.treeLeaves == null ? null : this.treeLeaves.clone());
+    }
+
+    /**
+     * Sets the leaves of the block tree hash, used to validate a file from the
+     * middle and to find which ranges of it are corrupted.
+     *
+     * @param treeLeaves The leaf hashes one after another or null
+     */
+    public void setTreeLeaves(byte[] treeLeaves) {
+        if (treeLeaves != null && (treeLeaves.length == 0 || treeLeaves.length % 32 != 0)) {
+            throw new IllegalArgumentException("Invalid tree leaves length! " + treeLeaves.length + " is not a multiple of 32.");
+        }
+        this.treeLeaves = (treeLeaves == null ? null : treeLeaves.clone());
+    }
+
     public byte[] getSample() {
         return (this.sample == null ? null : this.sample.clone());
     }
@@ -130,6 +186,24 @@ public class FileEntry {
         this.sample = (sample == null ? null : sample.clone());
     }
 
+    public byte[] getSamplePoints() {
+        return (this.samplePoints == null ? null : this.samplePoints.clone());
+    }
+
+    /**
+     * Sets the short digests of regions spread over the file, checked with
+     * positional reads by a quick validation.
+     *
+     * @param samplePoints The encoded sample points or null
+     * @see matinilad.contentlist.phantomfs.utils.SamplePoints
+     */
+    public void setSamplePoints(byte[] samplePoints) {
+        if (samplePoints != null && !SamplePoints.isValid(samplePoints)) {
+            throw new IllegalArgumentException("Invalid sample points! " + samplePoints.length + " bytes found.");
+        }
+        this.samplePoints = (samplePoints == null ? null : samplePoints.clone());
+    }
+
     public FileEntryMetadata getMetadata() {
         return metadata;
     }
@@ -158,7 +232,10 @@ public class FileEntry {
         hash = 13 * hash + this.files;
         hash = 13 * hash + this.directories;
         hash = 13 * hash + Arrays.hashCode(this.sha256);
+        hash = 13 * hash + Arrays.hashCode(this.crc32c);
+        hash = 13 * hash + Arrays.hashCode(this.treeHash);
         hash = 13 * hash + Arrays.hashCode(this.sample);
+        hash = 13 * hash + Arrays.hashCode(this.samplePoints);
         return hash;
     }
 
@@ -198,7 +275,19 @@ public class FileEntry {
         if (!Arrays.equals(this.sha256, other.sha256)) {
             return false;
         }
-        return Arrays.equals(this.sample, other.sample);
+        if (!Arrays.equals(this.crc32c, other.crc32c)) {
+            return false;
+        }
+        if (!Arrays.equals(this.treeHash, other.treeHash)) {
+            return false;
+        }
+        if (!Arrays.equals(this.treeLeaves, other.treeLeaves)) {
+            return false;
+        }
+        if (!Arrays.equals(this.sample, other.sample)) {
+            return false;
+        }
+        return Arrays.equals(this.samplePoints, other.samplePoints);
     }
 
 }
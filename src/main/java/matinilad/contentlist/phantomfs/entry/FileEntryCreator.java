@@ -37,6 +37,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.utils.DirectInputStream;
+import matinilad.contentlist.phantomfs.utils.HashCache;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.ReadAheadInputStream;
 
 /**
  *
@@ -46,6 +50,9 @@ public class FileEntryCreator {
     
     private boolean sha256Enabled = true;
     private int sampleSize = 32;
+    private HashCache hashCache = null;
+    private boolean directIO = false;
+    private RateLimiter rateLimiter = null;
 
     public FileEntryCreator() {
 
@@ -70,6 +77,30 @@ public class FileEntryCreator {
         this.sampleSize = sampleSize;
     }
 
+    public HashCache getHashCache() {
+        return hashCache;
+    }
+
+    public void setHashCache(HashCache hashCache) {
+        this.hashCache = hashCache;
+    }
+
+    public boolean isDirectIO() {
+        return directIO;
+    }
+
+    public void setDirectIO(boolean directIO) {
+        this.directIO = directIO;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
     protected boolean onShouldInterrupt() throws IOException, InterruptedException {
         return Thread.interrupted();
     }
@@ -124,9 +155,8 @@ public class FileEntryCreator {
         FileEntry entry = new FileEntry(path, FileEntryType.typeOf(file));
         onEntryCreated(entry);
         
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
         try {
-            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
-
             entry.setCreated(attributes.creationTime().toMillis());
             entry.setModified(attributes.lastModifiedTime().toMillis());
         } catch (UnsupportedOperationException ex) {}
@@ -134,9 +164,32 @@ public class FileEntryCreator {
         checkInterrupt();
 
         if (entry.getType().equals(FileEntryType.FILE)) {
-            entry.setSize(Files.size(file));
+            entry.setSize(attributes.size());
+            
+            HashCache cache = this.hashCache;
+            if (cache != null) {
+                HashCache.Cached cached = cache.get(file, attributes);
+                if (cached != null) {
+                    byte[] sample = cached.getSample(getSampleSize(), entry.getSize());
+                    if (sample != null && (!isSha256Enabled() || cached.getSha256() != null)) {
+                        if (getSampleSize() > 0) {
+                            entry.setSample(sample);
+                        }
+                        if (isSha256Enabled()) {
+                            entry.setSha256(cached.getSha256());
+                        }
+                        onEntryProgress(entry, entry.getSize());
+                        return entry;
+                    }
+                }
+            }
 
-            try (InputStream in = Files.newInputStream(file)) {
+            RateLimiter limiter = this.rateLimiter;
+            if (limiter != null) {
+                limiter.acquireFile();
+            }
+
+            try (InputStream in = (isSha256Enabled() ? ReadAheadInputStream.open(file, entry.getSize(), isDirectIO()) : DirectInputStream.open(file, isDirectIO()))) {
                 long count = 0;
                 onEntryProgress(entry, 0);
 
@@ -159,6 +212,9 @@ public class FileEntryCreator {
                     }
 
                     sample = Arrays.copyOf(sample, (int) count);
+                    if (limiter != null) {
+                        limiter.acquireBytes(sample.length);
+                    }
                     digest.update(sample, 0, sample.length);
 
                     entry.setSample(sample);
@@ -169,6 +225,9 @@ public class FileEntryCreator {
                     int r;
                     while ((r = in.read(buffer, 0, buffer.length)) != -1) {
                         count += r;
+                        if (limiter != null) {
+                            limiter.acquireBytes(r);
+                        }
                         digest.update(buffer, 0, r);
 
                         onEntryProgress(entry, count);
@@ -178,6 +237,11 @@ public class FileEntryCreator {
                     entry.setSha256(digest.digest());
                 }
             }
+            
+            if (cache != null) {
+                byte[] sample = entry.getSample();
+                cache.put(file, attributes, entry.getSha256(), null, (sample == null ? new byte[0] : sample));
+            }
         }
 
         return entry;
@@ -28,7 +28,10 @@ package matinilad.contentlist.phantomfs.entry;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
@@ -37,7 +40,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.jfr.FileHashEvent;
+import matinilad.contentlist.phantomfs.utils.DirectInputStream;
+import matinilad.contentlist.phantomfs.utils.HardlinkTable;
+import matinilad.contentlist.phantomfs.utils.HashCache;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.ReadAheadInputStream;
+import matinilad.contentlist.phantomfs.utils.SamplePoints;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
+import matinilad.contentlist.phantomfs.utils.TreeHash;
 
 /**
  *
@@ -45,8 +60,22 @@ import matinilad.contentlist.phantomfs.PhantomPath;
  */
 public class FileEntryFactory {
 
+    static byte[] toBytes(Checksum checksum) {
+        return ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array();
+    }
+
     private boolean sha256Enabled = true;
+    private boolean crc32cEnabled = false;
+    private boolean treeHashEnabled = false;
+    private boolean directIO = false;
     private int sampleSize = 32;
+    private int samplePoints = 0;
+    private int samplePointSize = SamplePoints.DEFAULT_REGION_SIZE;
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    private HashCache hashCache = null;
+    private RateLimiter rateLimiter = null;
+    private HardlinkTable hardlinkTable = null;
+    private FileEntryJournal journal = null;
 
     public FileEntryFactory() {
 
@@ -60,6 +89,51 @@ public class FileEntryFactory {
         this.sha256Enabled = sha256Enabled;
     }
 
+    public boolean isCrc32cEnabled() {
+        return crc32cEnabled;
+    }
+
+    /**
+     * Enables the CRC32C checksum, computed in the same pass as the sha256.
+     *
+     * @param crc32cEnabled If the checksum should be computed
+     */
+    public void setCrc32cEnabled(boolean crc32cEnabled) {
+        this.crc32cEnabled = crc32cEnabled;
+    }
+
+    public boolean isTreeHashEnabled() {
+        return treeHashEnabled;
+    }
+
+    /**
+     * Enables the block tree hash, it is built in the same pass as the
+     * sha256 and crc32c or, if both are disabled, hashed in parallel with
+     * positional reads.
+     *
+     * @param treeHashEnabled If the tree hash should be computed
+     * @see TreeHash
+     */
+    public void setTreeHashEnabled(boolean treeHashEnabled) {
+        this.treeHashEnabled = treeHashEnabled;
+    }
+
+    public boolean isDirectIO() {
+        return directIO;
+    }
+
+    /**
+     * Reads the files with direct I/O, bypassing the page cache so hashing a
+     * large amount of data does not evict the cached data of other programs,
+     * files are read normally if direct I/O is not supported.
+     *
+     * @param directIO If the page cache should be bypassed
+     * @see DirectInputStream
+     */
+    public void setDirectIO(boolean directIO) {
+        this.directIO = directIO;
+    }
+
     public int getSampleSize() {
         return sampleSize;
     }
@@ -71,6 +145,169 @@ public class FileEntryFactory {
         this.sampleSize = sampleSize;
     }
 
+    public int getSamplePoints() {
+        return samplePoints;
+    }
+
+    /**
+     * Sets the number of regions spread over each file that are hashed into
+     * the sample points, read with positional reads after the file is hashed.
+     *
+     * @param samplePoints The number of regions, at least
+     * {@link SamplePoints#MIN_COUNT}, or 0 to disable
+     * @see SamplePoints
+     */
+    public void setSamplePoints(int samplePoints) {
+        if (samplePoints != 0 && (samplePoints < SamplePoints.MIN_COUNT || samplePoints > SamplePoints.MAX_COUNT)) {
+            throw new IllegalArgumentException("sample points must be 0 or between " + SamplePoints.MIN_COUNT + " and " + SamplePoints.MAX_COUNT);
+        }
+        this.samplePoints = samplePoints;
+    }
+
+    public int getSamplePointSize() {
+        return samplePointSize;
+    }
+
+    public void setSamplePointSize(int samplePointSize) {
+        if (samplePointSize < 1) {
+            throw new IllegalArgumentException("sample point size must be at least 1");
+        }
+        this.samplePointSize = samplePointSize;
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
+    public HashCache getHashCache() {
+        return hashCache;
+    }
+
+    /**
+     * Sets a cache used to skip reading files that did not change since they
+     * were last hashed.
+     *
+     * @param hashCache The cache or null to always read the files
+     */
+    public void setHashCache(HashCache hashCache) {
+        this.hashCache = hashCache;
+    }
+
+    public HardlinkTable getHardlinkTable() {
+        return hardlinkTable;
+    }
+
+    /**
+     * Sets a table shared by the factories of a job so files with more than
+     * one hard link are read once, the hashes are reused for the other
+     * links. Not used with the tree hash.
+     *
+     * @param hardlinkTable The table or null to read every link
+     */
+    public void setHardlinkTable(HardlinkTable hardlinkTable) {
+        this.hardlinkTable = hardlinkTable;
+    }
+
+    public FileEntryJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal of a interrupted creation being resumed, a file whose
+     * size and modification time match its journaled entry is not read
+     * again. The entries are not added to the journal by the factory.
+     *
+     * @param journal The journal or null to read all files
+     */
+    public void setJournal(FileEntryJournal journal) {
+        this.journal = journal;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets a limiter of the bytes and files read per second, it may be
+     * shared by all the factories of a job. Files found in the hash cache are
+     * not counted as they are not read.
+     *
+     * @param rateLimiter The limiter or null for no limit
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    private boolean setCached(FileEntry entry, HashCache.Cached cached, long size) {
+        byte[] sample = cached.getSample(getSampleSize(), size);
+        if (sample == null
+                || (isSha256Enabled() && cached.getSha256() == null)
+                || (isCrc32cEnabled() && cached.getCrc32c() == null)) {
+            return false;
+        }
+        if (getSampleSize() > 0) {
+            entry.setSample(sample);
+        }
+        if (isSha256Enabled()) {
+            entry.setSha256(cached.getSha256());
+        }
+        if (isCrc32cEnabled()) {
+            entry.setCrc32c(cached.getCrc32c());
+        }
+        return true;
+    }
+
+    private void setSamplePoints(FileEntry entry, Path path, long size) throws IOException, InterruptedException {
+        if (getSamplePoints() == 0) {
+            return;
+        }
+        OperationMetrics m = this.metrics;
+        long start = m.start();
+        try (FileChannel channel = DirectInputStream.openChannel(path, isDirectIO())) {
+            SamplePoints points = new SamplePoints(channel, size);
+            points.setRateLimiter(this.rateLimiter);
+            points.setWaitListener((w) -> onFileWaiting(path, w));
+            entry.setSamplePoints(points.digest(getSamplePoints(), getSamplePointSize()));
+            m.add(OperationMetrics.Counter.BYTES_READ, points.getBytesRead());
+        } finally {
+            m.stop(OperationMetrics.Timer.READ, start);
+        }
+    }
+
+    private boolean setJournaled(FileEntry entry, FileEntry journaled, long size) {
+        if (journaled.getSize() != size || journaled.getModified() != entry.getModified()) {
+            return false;
+        }
+        byte[] treeHash = journaled.getTreeHash();
+        byte[] treeLeaves = journaled.getTreeLeaves();
+        if (isTreeHashEnabled() && (treeHash == null || treeLeaves == null)) {
+            return false;
+        }
+        byte[] points = journaled.getSamplePoints();
+        if (getSamplePoints() > 0 && (points == null
+                || SamplePoints.regionSizeOf(points) != getSamplePointSize()
+                || SamplePoints.decodeDigests(points).length != SamplePoints.offsets(size, getSamplePoints(), getSamplePointSize()).length)) {
+            return false;
+        }
+        byte[] sample = journaled.getSample();
+        HashCache.Cached cached = new HashCache.Cached(journaled.getSha256(), journaled.getCrc32c(), (sample == null ? new byte[0] : sample));
+        if (!setCached(entry, cached, size)) {
+            return false;
+        }
+        if (isTreeHashEnabled()) {
+            entry.setTreeHash(treeHash);
+            entry.setTreeLeaves(treeLeaves);
+        }
+        if (getSamplePoints() > 0) {
+            entry.setSamplePoints(points);
+        }
+        return true;
+    }
+
     protected boolean onShouldInterrupt() {
         return Thread.interrupted();
     }
@@ -79,7 +316,65 @@ public class FileEntryFactory {
 
     }
 
+    /**
+     * Called when reading a file starts or stops waiting for something other
+     * than the file itself, like the rate limiter or another path of the same
+     * hard linked inode; waits of leaves hashed in parallel may overlap.
+     *
+     * @param path The file
+     * @param waiting true when a wait starts, false when it ends
+     */
+    protected void onFileWaiting(Path path, boolean waiting) {
+
+    }
+
+    private HardlinkTable.Link link(HardlinkTable links, Path path, BasicFileAttributes attributes) throws InterruptedException {
+        onFileWaiting(path, true);
+        try {
+            return links.link(path, attributes);
+        } finally {
+            onFileWaiting(path, false);
+        }
+    }
+
+    private void setTree(FileEntry entry, byte[][] leaves) {
+        entry.setTreeHash(TreeHash.root(leaves));
+        entry.setTreeLeaves(TreeHash.encodeLeaves(leaves));
+    }
+
+    /**
+     * Returns the path a entry created by this factory has.
+     *
+     * @param root The root directory, not null
+     * @param path The file or directory, not null
+     * @return the path of the entry
+     */
+    public static PhantomPath toPhantomPath(Path root, Path path) {
+        Path relative = root.relativize(path);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < relative.getNameCount(); i++) {
+            names.add(relative.getName(i).toString());
+        }
+        return PhantomPath.of(names.toArray(String[]::new), false);
+    }
+
     public FileEntry newFileEntry(Path root, Path path) throws IOException, InterruptedException {
+        return newFileEntry(root, path, null);
+    }
+
+    /**
+     * Creates a entry for a path, using attributes that were already read
+     * (like the ones from {@link matinilad.contentlist.phantomfs.utils.PathStream.Entry#getAttributes()}) instead of
+     * reading them again.
+     *
+     * @param root The root directory, not null
+     * @param path The file or directory, not null
+     * @param attributes The attributes of the path following links, or null to read them
+     * @return the new entry
+     * @throws IOException if the path is not a file or directory or can't be read
+     * @throws InterruptedException if interrupted
+     */
+    public FileEntry newFileEntry(Path root, Path path, BasicFileAttributes attributes) throws IOException, InterruptedException {
         if (onShouldInterrupt()) {
             throw new InterruptedException("interrupted");
         }
@@ -87,30 +382,31 @@ public class FileEntryFactory {
         Objects.requireNonNull(root, "root is null");
         Objects.requireNonNull(path, "path is null");
 
-        if (!Files.exists(path)) {
-            throw new IOException("file does not exists: " + path);
+        OperationMetrics m = this.metrics;
+        long start = m.start();
+        
+        if (attributes == null) {
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException ex) {
+                throw new IOException("file does not exists: " + path, ex);
+            }
         }
 
-        Path relative = root.relativize(path);
-        List<String> names = new ArrayList<>();
-        for (int i = 0; i < relative.getNameCount(); i++) {
-            names.add(relative.getName(i).toString());
-        }
 
         FileEntryType type;
-        if (Files.isRegularFile(path)) {
+        if (attributes.isRegularFile()) {
             type = FileEntryType.FILE;
-        } else if (Files.isDirectory(path)) {
+        } else if (attributes.isDirectory()) {
             type = FileEntryType.DIRECTORY;
         } else {
             throw new IOException("unknown file type: " + path);
         }
+        m.increment(type.equals(FileEntryType.FILE) ? OperationMetrics.Counter.FILES : OperationMetrics.Counter.DIRECTORIES);
 
-        FileEntry entry = new FileEntry(PhantomPath.of(names.toArray(String[]::new), false), type);
+        FileEntry entry = new FileEntry(toPhantomPath(root, path), type);
 
         try {
-            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
-
             entry.setCreated(attributes.creationTime().toMillis());
             entry.setModified(attributes.lastModifiedTime().toMillis());
             entry.setAccess(attributes.lastAccessTime().toMillis());
@@ -119,62 +415,193 @@ public class FileEntryFactory {
         }
         
         if (entry.getType().equals(FileEntryType.FILE)) {
-            long size = Files.size(path);
+            long size = attributes.size();
             entry.setSize(size);
-
-            try (InputStream in = Files.newInputStream(path)) {
-                long count = 0;
-                onFileProgress(path, count, size);
-
-                MessageDigest digest;
-                try {
-                    digest = MessageDigest.getInstance("SHA-256");
-                } catch (NoSuchAlgorithmException ex) {
-                    throw new IOException(ex);
+            
+            m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+            
+            FileEntryJournal journal = this.journal;
+            if (journal != null) {
+                FileEntry previous = journal.get(entry.getPath());
+                if (previous != null && setJournaled(entry, previous, size)) {
+                    m.increment(OperationMetrics.Counter.JOURNAL_HITS);
+                    onFileProgress(path, size, size);
+                    return entry;
                 }
+            }
+            
+            HashCache cache = this.hashCache;
+            if (cache != null && !isTreeHashEnabled()) {
+                HashCache.Cached cached = cache.get(path, attributes);
+                if (cached != null && setCached(entry, cached, size)) {
+                    m.increment(OperationMetrics.Counter.CACHE_HITS);
+                    setSamplePoints(entry, path, size);
+                    onFileProgress(path, size, size);
+                    return entry;
+                }
+            }
+            
+            HardlinkTable links = this.hardlinkTable;
+            try (HardlinkTable.Link link = (links != null && !isTreeHashEnabled() ? link(links, path, attributes) : null)) {
+                if (link != null && link.getCached() != null && setCached(entry, link.getCached(), size)) {
+                    link.reused();
+                    m.add(OperationMetrics.Counter.HARDLINK_BYTES, size);
+                    setSamplePoints(entry, path, size);
+                    onFileProgress(path, size, size);
+                    return entry;
+                }
+                
+            
+                RateLimiter limiter = this.rateLimiter;
+                RateLimiter.WaitListener waiting = (w) -> onFileWaiting(path, w);
+                if (limiter != null) {
+                    limiter.acquireFile(waiting);
+                }
+                
+                FileHashEvent hashEvent = new FileHashEvent();
+                hashEvent.start();
+
+                boolean fullRead = isSha256Enabled() || isCrc32cEnabled();
+                try (InputStream in = (fullRead ? ReadAheadInputStream.open(path, size, isDirectIO()) : DirectInputStream.open(path, isDirectIO()))) {
+                    long count = 0;
+                    onFileProgress(path, count, size);
+
+                    MessageDigest digest;
+                    try {
+                        digest = MessageDigest.getInstance("SHA-256");
+                    } catch (NoSuchAlgorithmException ex) {
+                        throw new IOException(ex);
+                    }
+                    CRC32C crc = (isCrc32cEnabled() ? new CRC32C() : null);
+                    TreeHash.Builder tree = null;
+                    if (isTreeHashEnabled() && (isSha256Enabled() || crc != null)) {
+                        tree = new TreeHash.Builder();
+                    }
 
-                if (getSampleSize() > 0) {
-                    byte[] sample = new byte[getSampleSize()];
-
-                    for (int i = 0; i < sample.length; i++) {
-                        int b = in.read();
-                        if (b == -1) {
-                            break;
+                    if (getSampleSize() > 0) {
+                        byte[] sample = new byte[getSampleSize()];
+
+                        for (int i = 0; i < sample.length; i++) {
+                            start = m.start();
+                            int b = in.read();
+                            m.stop(OperationMetrics.Timer.READ, start);
+                            if (b == -1) {
+                                break;
+                            }
+
+                            sample[i] = (byte) b;
+                            count++;
+
+                            onFileProgress(path, count, size);
+                            
+                            if (onShouldInterrupt()) {
+                                throw new InterruptedException("interrupted");
+                            }
                         }
 
-                        sample[i] = (byte) b;
-                        count++;
-
-                        onFileProgress(path, count, size);
-                        
-                        if (onShouldInterrupt()) {
-                            throw new InterruptedException("interrupted");
+                        sample = Arrays.copyOf(sample, (int) count);
+                        if (limiter != null) {
+                            limiter.acquireBytes(sample.length, waiting);
                         }
-                    }
+                        start = m.start();
+                        digest.update(sample, 0, sample.length);
+                        if (crc != null) {
+                            crc.update(sample, 0, sample.length);
+                        }
+                        if (tree != null) {
+                            tree.update(sample, 0, sample.length);
+                        }
+                        m.stop(OperationMetrics.Timer.DIGEST, start);
 
-                    sample = Arrays.copyOf(sample, (int) count);
-                    digest.update(sample, 0, sample.length);
+                        entry.setSample(sample);
+                    }
 
-                    entry.setSample(sample);
-                }
+                    if (isSha256Enabled() || crc != null) {
+                        byte[] buffer = new byte[1 * 1024 * 1024];
+                        int r;
+                        while (true) {
+                            start = m.start();
+                            r = in.read(buffer, 0, buffer.length);
+                            m.stop(OperationMetrics.Timer.READ, start);
+                            if (r == -1) {
+                                break;
+                            }
+                            count += r;
+                            if (limiter != null) {
+                                limiter.acquireBytes(r, waiting);
+                            }
+                            
+                            TaskExecutor executor = TaskExecutor.shared();
+                            executor.acquireCPU(waiting);
+                            try {
+                                start = m.start();
+                                if (isSha256Enabled()) {
+                                    digest.update(buffer, 0, r);
+                                }
+                                if (crc != null) {
+                                    crc.update(buffer, 0, r);
+                                }
+                                if (tree != null) {
+                                    tree.update(buffer, 0, r);
+                                }
+                                m.stop(OperationMetrics.Timer.DIGEST, start);
+                            } finally {
+                                executor.releaseCPU();
+                            }
+                            
+                            onFileProgress(path, count, size);
+                            
+                            if (onShouldInterrupt()) {
+                                throw new InterruptedException("interrupted");
+                            }
+                        }
 
-                if (isSha256Enabled()) {
-                    byte[] buffer = new byte[1 * 1024 * 1024];
-                    int r;
-                    while ((r = in.read(buffer, 0, buffer.length)) != -1) {
-                        count += r;
-                        digest.update(buffer, 0, r);
-                        
-                        onFileProgress(path, count, size);
-                        
-                        if (onShouldInterrupt()) {
-                            throw new InterruptedException("interrupted");
+                        if (isSha256Enabled()) {
+                            start = m.start();
+                            entry.setSha256(digest.digest());
+                            m.stop(OperationMetrics.Timer.DIGEST, start);
+                        }
+                        if (crc != null) {
+                            entry.setCrc32c(toBytes(crc));
                         }
+                        if (tree != null) {
+                            setTree(entry, tree.finish());
+                        }
+                        m.add(OperationMetrics.Counter.BYTES_HASHED, count);
                     }
-
-                    entry.setSha256(digest.digest());
+                    m.add(OperationMetrics.Counter.BYTES_READ, count);
+                    
+                    hashEvent.finish(FileHashEvent.CREATE, path, size, count);
+                }
+                
+                if (isTreeHashEnabled() && entry.getTreeHash() == null) {
+                    try (FileChannel channel = DirectInputStream.openChannel(path, isDirectIO());
+                            TaskExecutor.Scope scope = TaskExecutor.shared().newScope(this::onShouldInterrupt)) {
+                        TreeHash tree = new TreeHash(channel, size);
+                        tree.setRateLimiter(limiter);
+                        tree.setWaitListener(waiting);
+                        setTree(entry, tree.hashLeaves(scope, 0, (index, leaf, bytes) -> {
+                            onFileProgress(path, bytes, size);
+                        }));
+                    }
+                    m.add(OperationMetrics.Counter.BYTES_READ, size);
+                    m.add(OperationMetrics.Counter.BYTES_HASHED, size);
+                }
+                
+                setSamplePoints(entry, path, size);
+                
+                if (cache != null) {
+                    byte[] sample = entry.getSample();
+                    cache.put(path, attributes, entry.getSha256(), entry.getCrc32c(), (sample == null ? new byte[0] : sample));
+                }
+                
+                if (link != null) {
+                    byte[] sample = entry.getSample();
+                    link.complete(new HashCache.Cached(entry.getSha256(), entry.getCrc32c(), (sample == null ? new byte[0] : sample)));
                 }
             }
+        } else {
+            m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
         }
 
         return entry;
@@ -0,0 +1,258 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.entry;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+import matinilad.contentlist.phantomfs.PhantomPath;
+
+/**
+ * Journal of the file entries hashed by a list creation, so a interrupted
+ * creation can be resumed without hashing the same files again.
+ * <p>
+ * The journal is a directory next to the list, every checkpoint writes the
+ * entries completed since the last one to a new numbered segment, a complete
+ * csv file with all the hash columns that is moved into place atomically, so
+ * a crash loses at most the entries of one checkpoint interval. A resumed
+ * creation loads all segments, a later segment replaces the entries of a
+ * earlier one.
+ *
+ * @author Cien
+ */
+public class FileEntryJournal implements Closeable {
+
+    public static final long CHECKPOINT_INTERVAL = 30 * 1000;
+    public static final String SUFFIX = ".journal";
+
+    private static final String SEGMENT_EXTENSION = ".csv";
+
+    private static FileEntryWriter.Flags flags() {
+        FileEntryWriter.Flags flags = new FileEntryWriter.Flags();
+        flags.setFilesAndDirectoriesEnabled(false);
+        flags.setCrc32cEnabled(true);
+        flags.setTreeHashEnabled(true);
+        flags.setTreeLeavesEnabled(true);
+        flags.setSamplePointsEnabled(true);
+        flags.setMetadataEnabled(false);
+        return flags;
+    }
+
+    private static boolean sameContent(FileEntry a, FileEntry b) {
+        return a.getSize() == b.getSize()
+                && a.getModified() == b.getModified()
+                && Arrays.equals(a.getSha256(), b.getSha256())
+                && Arrays.equals(a.getCrc32c(), b.getCrc32c())
+                && Arrays.equals(a.getTreeHash(), b.getTreeHash())
+                && Arrays.equals(a.getSample(), b.getSample())
+                && Arrays.equals(a.getSamplePoints(), b.getSamplePoints());
+    }
+
+    /**
+     * @param list The list being created, not null
+     * @return the journal directory of the list
+     */
+    public static Path directoryFor(Path list) {
+        Objects.requireNonNull(list, "list is null");
+        return list.resolveSibling(list.getFileName().toString() + SUFFIX);
+    }
+
+    /**
+     * Opens a journal directory, loading the entries of a previous creation
+     * if it exists.
+     *
+     * @param directory The journal directory, not null
+     * @return the journal
+     * @throws IOException if the directory can't be created or a segment can't be read
+     */
+    public static FileEntryJournal open(Path directory) throws IOException {
+        Objects.requireNonNull(directory, "directory is null");
+        Files.createDirectories(directory);
+
+        List<Path> segments;
+        try (Stream<Path> list = Files.list(directory)) {
+            segments = list
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+
+        FileEntryJournal journal = new FileEntryJournal(directory);
+        for (Path segment : segments) {
+            try (FileEntryReader reader = new FileEntryReader(Files.newBufferedReader(segment, StandardCharsets.UTF_8))) {
+                FileEntry e;
+                while ((e = reader.readEntry()) != null) {
+                    journal.loaded.put(e.getPath(), e);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("invalid journal segment: " + segment, ex);
+            }
+            String name = segment.getFileName().toString();
+            try {
+                int number = Integer.parseInt(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                journal.nextSegment = Math.max(journal.nextSegment, number + 1);
+            } catch (NumberFormatException ex) {
+                //not a segment written by the journal
+            }
+        }
+        return journal;
+    }
+
+    private final Path directory;
+    private final Map<PhantomPath, FileEntry> loaded = new HashMap<>();
+    private final List<FileEntry> pending = new ArrayList<>();
+    private int nextSegment = 0;
+    private long lastCheckpoint = System.currentTimeMillis();
+    private boolean closed = false;
+
+    private FileEntryJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of entries loaded from a previous creation
+     */
+    public int getLoadedEntries() {
+        return this.loaded.size();
+    }
+
+    /**
+     * Returns the entry of a previous creation, it may be used from any
+     * thread as the loaded entries do not change after the journal is opened.
+     *
+     * @param path The path of the entry, not null
+     * @return the entry or null if not found
+     */
+    public FileEntry get(PhantomPath path) {
+        return this.loaded.get(path);
+    }
+
+    /**
+     * Adds a completed file entry, written at the next checkpoint, entries
+     * equal to a loaded one and directories are ignored.
+     *
+     * @param entry The entry, not null
+     */
+    public synchronized void add(FileEntry entry) {
+        Objects.requireNonNull(entry, "entry is null");
+        if (!entry.getType().equals(FileEntryType.FILE)) {
+            return;
+        }
+        FileEntry previous = this.loaded.get(entry.getPath());
+        if (previous != null && sameContent(previous, entry)) {
+            return;
+        }
+        this.pending.add(entry);
+    }
+
+    /**
+     * Writes the pending entries if the last checkpoint was more than
+     * {@link #CHECKPOINT_INTERVAL} milliseconds ago.
+     *
+     * @throws IOException if the segment can't be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (System.currentTimeMillis() - this.lastCheckpoint >= CHECKPOINT_INTERVAL) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the pending entries to a new segment.
+     *
+     * @throws IOException if the segment can't be written
+     */
+    public synchronized void flush() throws IOException {
+        this.lastCheckpoint = System.currentTimeMillis();
+        if (this.closed || this.pending.isEmpty()) {
+            return;
+        }
+        Path segment = this.directory.resolve(String.format("%08d", this.nextSegment) + SEGMENT_EXTENSION);
+        Path temp = Files.createTempFile(this.directory, "segment", ".tmp");
+        try {
+            try (FileEntryWriter writer = new FileEntryWriter(new BufferedWriter(
+                    new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8)), flags())) {
+                for (FileEntry e : this.pending) {
+                    writer.writeFileEntry(e);
+                }
+            }
+            Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        this.nextSegment++;
+        this.pending.clear();
+    }
+
+    /**
+     * Deletes the journal, called when the list was written.
+     *
+     * @throws IOException if the journal can't be deleted
+     */
+    public synchronized void delete() throws IOException {
+        this.closed = true;
+        this.pending.clear();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(this.directory)) {
+            files = list
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_EXTENSION) || p.getFileName().toString().endsWith(".tmp"))
+                    .toList();
+        }
+        for (Path p : files) {
+            Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(this.directory);
+    }
+
+    /**
+     * Writes the pending entries, so the creation can be resumed.
+     *
+     * @throws IOException if the segment can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        this.closed = true;
+    }
+
+}
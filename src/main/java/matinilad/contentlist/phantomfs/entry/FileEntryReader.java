@@ -36,6 +36,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.jfr.ListLoadEvent;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
 
 /**
  *
@@ -53,12 +55,23 @@ public class FileEntryReader implements Closeable {
 
     private final Map<String, Integer> indices = new HashMap<>();
     private boolean indicesPopulated = false;
+    
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    private final ListLoadEvent loadEvent = new ListLoadEvent();
 
     public FileEntryReader(Reader in) {
         Objects.requireNonNull(in, "in is null");
         this.in = in;
     }
 
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
     private String getFieldFromRecord(String[] record, String name) {
         Integer index = this.indices.get(name);
         if (index == null) {
@@ -72,6 +85,24 @@ public class FileEntryReader implements Closeable {
     }
 
     public FileEntry readEntry() throws IOException, IllegalArgumentException, NumberFormatException {
+        this.loadEvent.start();
+        long start = this.metrics.start();
+        FileEntry entry;
+        try {
+            entry = readNextEntry();
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.READER, start);
+        }
+        if (entry != null) {
+            this.metrics.increment(OperationMetrics.Counter.ENTRIES_READ);
+            this.loadEvent.entryRead();
+        } else {
+            this.loadEvent.finish(true);
+        }
+        return entry;
+    }
+
+    private FileEntry readNextEntry() throws IOException, IllegalArgumentException, NumberFormatException {
         if (this.endOfFileFound) {
             return null;
         }
@@ -117,7 +148,11 @@ public class FileEntryReader implements Closeable {
         String files = getFieldFromRecord(record, "files");
         String directories = getFieldFromRecord(record, "directories");
         String sha256 = getFieldFromRecord(record, "sha256");
+        String crc32c = getFieldFromRecord(record, "crc32c");
+        String treeHash = getFieldFromRecord(record, "treehash");
+        String treeLeaves = getFieldFromRecord(record, "treeleaves");
         String sample = getFieldFromRecord(record, "sample");
+        String samplePoints = getFieldFromRecord(record, "samplepoints");
         String meta = getFieldFromRecord(record, "meta");
         
         if (path == null || path.isEmpty()) {
@@ -157,16 +192,32 @@ public class FileEntryReader implements Closeable {
             entry.setDirectories(Integer.parseInt(directories));
         }
         
-        if (sha256 != null || sample != null) {
+        if (sha256 != null || crc32c != null || treeHash != null || treeLeaves != null || sample != null || samplePoints != null) {
             HexFormat hex = HexFormat.of();
 
             if (sha256 != null && !sha256.isEmpty()) {
                 entry.setSha256(hex.parseHex(sha256));
             }
 
+            if (crc32c != null && !crc32c.isEmpty()) {
+                entry.setCrc32c(hex.parseHex(crc32c));
+            }
+
+            if (treeHash != null && !treeHash.isEmpty()) {
+                entry.setTreeHash(hex.parseHex(treeHash));
+            }
+
+            if (treeLeaves != null && !treeLeaves.isEmpty()) {
+                entry.setTreeLeaves(hex.parseHex(treeLeaves));
+            }
+
             if (sample != null && !sample.isEmpty()) {
                 entry.setSample(hex.parseHex(sample));
             }
+
+            if (samplePoints != null && !samplePoints.isEmpty()) {
+                entry.setSamplePoints(hex.parseHex(samplePoints));
+            }
         }
 
         if (meta != null && !meta.isEmpty()) {
@@ -265,6 +316,7 @@ public class FileEntryReader implements Closeable {
 
     @Override
     public void close() throws IOException {
+        this.loadEvent.finish(false);
         this.in.close();
     }
 
@@ -28,12 +28,25 @@ package matinilad.contentlist.phantomfs.entry;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.zip.CRC32C;
+import matinilad.contentlist.phantomfs.jfr.FileHashEvent;
+import matinilad.contentlist.phantomfs.utils.DirectInputStream;
+import matinilad.contentlist.phantomfs.utils.HardlinkTable;
+import matinilad.contentlist.phantomfs.utils.HashCache;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.ReadAheadInputStream;
+import matinilad.contentlist.phantomfs.utils.SamplePoints;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
+import matinilad.contentlist.phantomfs.utils.TreeHash;
 
 /**
  *
@@ -48,6 +61,15 @@ public class FileEntryValidator {
     private final Path rootDirectory;
     private final FileEntry entry;
     private final Path path;
+    
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    private HashCache hashCache = null;
+    private boolean fastOnly = false;
+    private boolean quick = false;
+    private boolean directIO = false;
+    private long resumeOffset = 0;
+    private RateLimiter rateLimiter = null;
+    private HardlinkTable hardlinkTable = null;
 
     public FileEntryValidator(Path rootDirectory, FileEntry entry) {
         this.rootDirectory = Objects.requireNonNull(rootDirectory, "rootDirectory is null");
@@ -67,6 +89,122 @@ public class FileEntryValidator {
     public Path getPath() {
         return path;
     }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+    
+    public HashCache getHashCache() {
+        return hashCache;
+    }
+
+    /**
+     * Sets a cache of previously read files, a file whose size, modification
+     * time and file key did not change is checked against the cached hash
+     * instead of being read again.
+     *
+     * @param hashCache The cache or null to always read the file
+     */
+    public void setHashCache(HashCache hashCache) {
+        this.hashCache = hashCache;
+    }
+    
+    public boolean isFastOnly() {
+        return fastOnly;
+    }
+
+    /**
+     * Checks only the CRC32C checksum of entries that have one, skipping
+     * the much slower SHA-256, entries without a checksum are still fully
+     * hashed.
+     *
+     * @param fastOnly If only the checksum should be checked
+     */
+    public void setFastOnly(boolean fastOnly) {
+        this.fastOnly = fastOnly;
+    }
+    
+    public boolean isQuick() {
+        return quick;
+    }
+
+    /**
+     * Checks only the sample points of entries that have them, reading a
+     * few small regions of the file with positional reads instead of the
+     * whole file, entries without sample points are still fully hashed.
+     *
+     * @param quick If only the sample points should be checked
+     */
+    public void setQuick(boolean quick) {
+        this.quick = quick;
+    }
+    
+    public boolean isDirectIO() {
+        return directIO;
+    }
+
+    /**
+     * Reads the file with direct I/O, bypassing the page cache so validating
+     * reads the data from the storage device instead of a cached copy, the
+     * file is read normally if direct I/O is not supported.
+     *
+     * @param directIO If the page cache should be bypassed
+     * @see DirectInputStream
+     */
+    public void setDirectIO(boolean directIO) {
+        this.directIO = directIO;
+    }
+    
+    public HardlinkTable getHardlinkTable() {
+        return hardlinkTable;
+    }
+
+    /**
+     * Sets a table shared by the validators of a job so files with more than
+     * one hard link are read once, the hashes are reused for the other
+     * links. Not used with the tree hash.
+     *
+     * @param hardlinkTable The table or null to read every link
+     */
+    public void setHardlinkTable(HardlinkTable hardlinkTable) {
+        this.hardlinkTable = hardlinkTable;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets a limiter of the bytes and files read per second, it may be
+     * shared by all the validators of a job.
+     *
+     * @param rateLimiter The limiter or null for no limit
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+    
+    public long getResumeOffset() {
+        return resumeOffset;
+    }
+
+    /**
+     * Resumes the tree hash validation of a entry with stored leaves from a
+     * offset given by a previous {@link #onTreeProgress(long)}, the leaves
+     * before it are trusted and not read again.
+     *
+     * @param resumeOffset The offset, rounded down to a leaf
+     */
+    public void setResumeOffset(long resumeOffset) {
+        if (resumeOffset < 0) {
+            throw new IllegalArgumentException("resume offset is negative");
+        }
+        this.resumeOffset = resumeOffset;
+    }
     
     protected boolean onShouldInterrupt() throws IOException, InterruptedException {
         return Thread.interrupted();
@@ -80,16 +218,97 @@ public class FileEntryValidator {
         
     }
     
+    /**
+     * Called during the tree hash validation of a entry with stored leaves,
+     * every byte before the offset was read and matched the leaves.
+     *
+     * @param verifiedBytes The offset
+     * @throws IOException if the validation should stop with a error
+     * @throws InterruptedException if the validation should be interrupted
+     */
+    protected void onTreeProgress(long verifiedBytes) throws IOException, InterruptedException {
+        
+    }
+    
     protected void onEntryAccepted(FileEntryValidatorReason reason) throws IOException, InterruptedException {
         
     }
     
+    private boolean shouldInterruptScope() {
+        try {
+            return onShouldInterrupt();
+        } catch (IOException ex) {
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+    
     private void checkInterrupt() throws IOException, InterruptedException {
         if (onShouldInterrupt()) {
             throw new InterruptedException();
         }
     }
 
+    private FileEntryValidatorResult validateCached(HashCache.Cached cached, boolean fromCache, byte[] sample, byte[] checksum, byte[] hash, long size) throws IOException, InterruptedException {
+        byte[] otherSample = (sample == null ? null : cached.getSample(sample.length, size));
+        if ((sample != null && otherSample == null)
+                || (checksum != null && cached.getCrc32c() == null)
+                || (hash != null && cached.getSha256() == null)) {
+            return null;
+        }
+        onProgressUpdate(size);
+        if (sample != null) {
+            if (!Arrays.equals(sample, otherSample)) {
+                return new FileEntryValidatorResult(this, FileEntryValidatorReason.SAMPLE, sample, otherSample);
+            }
+            onEntryAccepted(FileEntryValidatorReason.SAMPLE);
+        }
+        if (checksum != null) {
+            byte[] otherChecksum = cached.getCrc32c();
+            if (!Arrays.equals(checksum, otherChecksum)) {
+                return new FileEntryValidatorResult(this, FileEntryValidatorReason.CHECKSUM, checksum, otherChecksum);
+            }
+            onEntryAccepted(FileEntryValidatorReason.CHECKSUM);
+        }
+        if (hash != null) {
+            byte[] otherHash = cached.getSha256();
+            if (!Arrays.equals(hash, otherHash)) {
+                return new FileEntryValidatorResult(this, FileEntryValidatorReason.HASH, hash, otherHash);
+            }
+            onEntryAccepted(FileEntryValidatorReason.HASH);
+        }
+        return new FileEntryValidatorResult(this, FileEntryValidatorReason.SUCCESS, null, null, null, fromCache);
+    }
+
+    private FileEntryValidatorResult validateSamplePoints(byte[] samplePoints, long size) throws IOException, InterruptedException {
+        OperationMetrics m = this.metrics;
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter != null) {
+            limiter.acquireFile();
+        }
+        onProgressUpdate(0);
+        byte[] otherSamplePoints;
+        long start = m.start();
+        try (FileChannel channel = DirectInputStream.openChannel(getPath(), isDirectIO())) {
+            SamplePoints points = new SamplePoints(channel, size);
+            points.setRateLimiter(limiter);
+            otherSamplePoints = points.digest(SamplePoints.decodeDigests(samplePoints).length, SamplePoints.regionSizeOf(samplePoints));
+            m.add(OperationMetrics.Counter.BYTES_READ, points.getBytesRead());
+        } finally {
+            m.stop(OperationMetrics.Timer.READ, start);
+        }
+        onProgressUpdate(size);
+        if (!Arrays.equals(samplePoints, otherSamplePoints)) {
+            return new FileEntryValidatorResult(this, FileEntryValidatorReason.SAMPLE_POINTS,
+                    samplePoints, otherSamplePoints,
+                    SamplePoints.differentRanges(samplePoints, otherSamplePoints, size)
+            );
+        }
+        return null;
+    }
+
     private MessageDigest createSHA256Digest() {
         MessageDigest digest;
         try {
@@ -100,14 +319,70 @@ public class FileEntryValidator {
         return digest;
     }
     
+    private FileEntryValidatorResult validateTree(byte[] treeHash, long size) throws IOException, InterruptedException {
+        OperationMetrics m = this.metrics;
+        int leafCount = TreeHash.leafCount(size);
+        
+        byte[][] expectedLeaves = null;
+        byte[] encoded = getEntry().getTreeLeaves();
+        if (encoded != null && encoded.length == leafCount * TreeHash.HASH_SIZE) {
+            expectedLeaves = TreeHash.decodeLeaves(encoded);
+        }
+        byte[][] finalExpected = expectedLeaves;
+        
+        int firstLeaf = 0;
+        if (expectedLeaves != null) {
+            firstLeaf = (int) Math.min(this.resumeOffset / TreeHash.LEAF_SIZE, leafCount - 1);
+        }
+        
+        onProgressUpdate(TreeHash.leafOffset(firstLeaf));
+        byte[][] leaves;
+        try (FileChannel channel = DirectInputStream.openChannel(getPath(), isDirectIO());
+                TaskExecutor.Scope scope = TaskExecutor.shared().newScope(this::shouldInterruptScope)) {
+            TreeHash tree = new TreeHash(channel, size);
+            tree.setRateLimiter(this.rateLimiter);
+            boolean[] intact = {true};
+            leaves = tree.hashLeaves(scope, firstLeaf, (index, leaf, bytes) -> {
+                checkInterrupt();
+                onProgressUpdate(bytes);
+                if (finalExpected != null && intact[0]) {
+                    intact[0] = Arrays.equals(finalExpected[index], leaf);
+                    if (intact[0]) {
+                        onTreeProgress(bytes);
+                    }
+                }
+            });
+        }
+        long read = size - TreeHash.leafOffset(firstLeaf);
+        m.add(OperationMetrics.Counter.BYTES_READ, read);
+        m.add(OperationMetrics.Counter.BYTES_HASHED, read);
+        
+        for (int i = 0; i < firstLeaf; i++) {
+            leaves[i] = expectedLeaves[i];
+        }
+        byte[] otherTreeHash = TreeHash.root(leaves);
+        if (!Arrays.equals(treeHash, otherTreeHash)) {
+            long[][] ranges = null;
+            if (expectedLeaves != null) {
+                ranges = TreeHash.differentRanges(expectedLeaves, leaves, size);
+            }
+            return new FileEntryValidatorResult(this, FileEntryValidatorReason.TREE_HASH, treeHash, otherTreeHash, ranges);
+        }
+        return null;
+    }
+    
     public FileEntryValidatorResult validate() throws IOException, InterruptedException {
         FileEntry e = getEntry();
         Path f = getPath();
+        OperationMetrics m = this.metrics;
         
         checkInterrupt();
 
         //check if the file exists
-        if (!Files.exists(f)) {
+        long start = m.start();
+        boolean exists = Files.exists(f);
+        m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+        if (!exists) {
             return new FileEntryValidatorResult(this, FileEntryValidatorReason.EXISTENCE, true, false);
         }
         onEntryAccepted(FileEntryValidatorReason.EXISTENCE);
@@ -115,7 +390,13 @@ public class FileEntryValidator {
         checkInterrupt();
         
         //check file type
+        start = m.start();
         FileEntryType otherType = FileEntryType.typeOf(f);
+        m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+        switch (otherType) {
+            case FILE -> m.increment(OperationMetrics.Counter.FILES);
+            case DIRECTORY -> m.increment(OperationMetrics.Counter.DIRECTORIES);
+        }
         if (!e.getType().equals(otherType)) {
             return new FileEntryValidatorResult(this, FileEntryValidatorReason.TYPE, e.getType(), otherType);
         }
@@ -125,7 +406,9 @@ public class FileEntryValidator {
 
         if (otherType.equals(FileEntryType.FILE)) {
             //check file size
+            start = m.start();
             long otherSize = Files.size(f);
+            m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
             onFileSize(otherSize);
             if (otherSize != e.getSize()) {
                 return new FileEntryValidatorResult(this, FileEntryValidatorReason.SIZE, e.getSize(), otherSize);
@@ -134,64 +417,203 @@ public class FileEntryValidator {
             
             checkInterrupt();
             
-            //check file sample and hash
-            MessageDigest digest = createSHA256Digest();
-            onProgressUpdate(0);
-            try (InputStream in = Files.newInputStream(f)) {
+            byte[] sample = e.getSample();
+            byte[] checksum = e.getCrc32c();
+            byte[] hash = e.getSha256();
+            byte[] treeHash = e.getTreeHash();
+            if (this.fastOnly && checksum != null) {
+                hash = null;
+                treeHash = null;
+            } else if (treeHash != null) {
+                //the tree hash is as strong as the sha256 and can be checked in parallel
+                hash = null;
+                checksum = null;
+            }
+            
+            //check the sample points, the only check of a quick validation
+            byte[] samplePoints = e.getSamplePoints();
+            if (samplePoints != null && (this.quick || (hash == null && checksum == null && treeHash == null))) {
+                FileEntryValidatorResult result = validateSamplePoints(samplePoints, otherSize);
+                if (result != null) {
+                    return result;
+                }
+                onEntryAccepted(FileEntryValidatorReason.SAMPLE_POINTS);
+                if (this.quick) {
+                    return new FileEntryValidatorResult(this, FileEntryValidatorReason.SUCCESS, null, null);
+                }
+                
                 checkInterrupt();
-                long count = 0;
+            }
+            
+            //check the cache
+            HashCache cache = this.hashCache;
+            BasicFileAttributes attributes = null;
+            if (cache != null) {
+                start = m.start();
+                attributes = Files.readAttributes(f, BasicFileAttributes.class);
+                m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+                
+                HashCache.Cached cached = cache.get(f, attributes);
+                if (cached != null && treeHash == null) {
+                    FileEntryValidatorResult result = validateCached(cached, true, sample, checksum, hash, otherSize);
+                    if (result != null) {
+                        m.increment(OperationMetrics.Counter.CACHE_HITS);
+                        return result;
+                    }
+                }
+            }
+            
+            HardlinkTable links = this.hardlinkTable;
+            if (links != null && treeHash == null && attributes == null) {
+                start = m.start();
+                attributes = Files.readAttributes(f, BasicFileAttributes.class);
+                m.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+            }
+            try (HardlinkTable.Link link = (links != null && treeHash == null ? links.link(f, attributes) : null)) {
+                if (link != null && link.getCached() != null) {
+                    FileEntryValidatorResult result = validateCached(link.getCached(), false, sample, checksum, hash, otherSize);
+                    if (result != null) {
+                        link.reused();
+                        m.add(OperationMetrics.Counter.HARDLINK_BYTES, otherSize);
+                        return result;
+                    }
+                }
+                
+            
+                RateLimiter limiter = this.rateLimiter;
+                if (limiter != null) {
+                    limiter.acquireFile();
+                }
                 
-                //check sample
-                byte[] sample = e.getSample();
-                if (sample != null) {
-                    byte[] otherSample = new byte[sample.length];
-                    int realSampleSize = 0;
+                //check file sample, checksum and hash in a single pass
+                MessageDigest digest = (hash != null ? createSHA256Digest() : null);
+                CRC32C crc = (checksum != null ? new CRC32C() : null);
+                onProgressUpdate(0);
+                FileHashEvent hashEvent = new FileHashEvent();
+                hashEvent.start();
+                long count = 0;
+                byte[] otherSample = new byte[0];
+                byte[] otherChecksum = null;
+                byte[] otherHash = null;
+                try (InputStream in = (digest != null || crc != null ? ReadAheadInputStream.open(f, otherSize, isDirectIO()) : DirectInputStream.open(f, isDirectIO()))) {
+                    checkInterrupt();
                     
-                    for (int i = 0; i < otherSample.length; i++) {
-                        checkInterrupt();
+                    //check sample
+                    if (sample != null) {
+                        otherSample = new byte[sample.length];
+                        int realSampleSize = 0;
                         
-                        int b = in.read();
-                        if (b == -1) {
-                            break;
+                        for (int i = 0; i < otherSample.length; i++) {
+                            checkInterrupt();
+                            
+                            start = m.start();
+                            int b = in.read();
+                            m.stop(OperationMetrics.Timer.READ, start);
+                            if (b == -1) {
+                                break;
+                            }
+                            otherSample[i] = (byte) b;
+                            realSampleSize++;
+                            count++;
+                            
+                            onProgressUpdate(count);
+                        }
+                        otherSample = Arrays.copyOf(otherSample, realSampleSize);
+                        if (limiter != null) {
+                            limiter.acquireBytes(realSampleSize);
+                        }
+                        start = m.start();
+                        if (digest != null) {
+                            digest.update(otherSample, 0, otherSample.length);
+                        }
+                        if (crc != null) {
+                            crc.update(otherSample, 0, otherSample.length);
                         }
-                        otherSample[i] = (byte) b;
-                        realSampleSize++;
-                        count++;
+                        m.stop(OperationMetrics.Timer.DIGEST, start);
+                        m.add(OperationMetrics.Counter.BYTES_READ, realSampleSize);
                         
-                        onProgressUpdate(count);
-                    }
-                    otherSample = Arrays.copyOf(otherSample, realSampleSize);
-                    digest.update(otherSample, 0, otherSample.length);
-                    
-                    if (!Arrays.equals(sample, otherSample)) {
-                        return new FileEntryValidatorResult(this, FileEntryValidatorReason.SAMPLE, sample, otherSample);
+                        if (!Arrays.equals(sample, otherSample)) {
+                            return new FileEntryValidatorResult(this, FileEntryValidatorReason.SAMPLE, sample, otherSample);
+                        }
+                        onEntryAccepted(FileEntryValidatorReason.SAMPLE);
+                        
+                        checkInterrupt();
                     }
-                    onEntryAccepted(FileEntryValidatorReason.SAMPLE);
                     
-                    checkInterrupt();
-                }
-                
-                //check hash
-                byte[] hash = e.getSha256();
-                if (hash != null) {
-                    byte[] buffer = new byte[1048576];
-                    int r;
-                    while ((r = in.read(buffer, 0, buffer.length)) != -1) {
-                        checkInterrupt();
+                    //check checksum and hash
+                    if (digest != null || crc != null) {
+                        byte[] buffer = new byte[1048576];
+                        int r;
+                        while (true) {
+                            start = m.start();
+                            r = in.read(buffer, 0, buffer.length);
+                            m.stop(OperationMetrics.Timer.READ, start);
+                            if (r == -1) {
+                                break;
+                            }
+                            checkInterrupt();
+                            
+                            count += r;
+                            m.add(OperationMetrics.Counter.BYTES_READ, r);
+                            if (limiter != null) {
+                                limiter.acquireBytes(r);
+                            }
+                            
+                            TaskExecutor executor = TaskExecutor.shared();
+                            executor.acquireCPU();
+                            try {
+                                start = m.start();
+                                if (digest != null) {
+                                    digest.update(buffer, 0, r);
+                                }
+                                if (crc != null) {
+                                    crc.update(buffer, 0, r);
+                                }
+                                m.stop(OperationMetrics.Timer.DIGEST, start);
+                            } finally {
+                                executor.releaseCPU();
+                            }
+                            
+                            onProgressUpdate(count);
+                        }
+                        m.add(OperationMetrics.Counter.BYTES_HASHED, count);
                         
-                        count += r;
-                        digest.update(buffer, 0, r);
+                        if (crc != null) {
+                            otherChecksum = FileEntryFactory.toBytes(crc);
+                            if (!Arrays.equals(checksum, otherChecksum)) {
+                                return new FileEntryValidatorResult(this, FileEntryValidatorReason.CHECKSUM, checksum, otherChecksum);
+                            }
+                            onEntryAccepted(FileEntryValidatorReason.CHECKSUM);
+                        }
                         
-                        onProgressUpdate(count);
+                        if (digest != null) {
+                            start = m.start();
+                            otherHash = digest.digest();
+                            m.stop(OperationMetrics.Timer.DIGEST, start);
+                            if (!Arrays.equals(hash, otherHash)) {
+                                return new FileEntryValidatorResult(this, FileEntryValidatorReason.HASH, hash, otherHash);
+                            }
+                            onEntryAccepted(FileEntryValidatorReason.HASH);
+                        }
+                        
+                        checkInterrupt();
                     }
-                    
-                    byte[] otherHash = digest.digest();
-                    if (!Arrays.equals(hash, otherHash)) {
-                        return new FileEntryValidatorResult(this, FileEntryValidatorReason.HASH, hash, otherHash);
+                } finally {
+                    hashEvent.finish(FileHashEvent.VALIDATE, f, otherSize, count);
+                }
+                
+                if (link != null) {
+                    link.complete(new HashCache.Cached(otherHash, otherChecksum, otherSample));
+                }
+                
+                if (treeHash != null) {
+                    FileEntryValidatorResult result = validateTree(treeHash, otherSize);
+                    if (result != null) {
+                        return result;
                     }
-                    onEntryAccepted(FileEntryValidatorReason.HASH);
-                    
-                    checkInterrupt();
+                    onEntryAccepted(FileEntryValidatorReason.TREE_HASH);
+                } else if (cache != null) {
+                    cache.put(f, attributes, otherHash, otherChecksum, otherSample);
                 }
             }
         }
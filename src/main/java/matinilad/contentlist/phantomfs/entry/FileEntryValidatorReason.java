@@ -31,5 +31,5 @@ package matinilad.contentlist.phantomfs.entry;
  * @author Cien
  */
 public enum FileEntryValidatorReason {
-    EXISTENCE, TYPE, SIZE, SAMPLE, HASH, SUCCESS;
+    EXISTENCE, TYPE, SIZE, SAMPLE, SAMPLE_POINTS, CHECKSUM, TREE_HASH, HASH, SUCCESS;
 }
@@ -40,16 +40,39 @@ public class FileEntryValidatorResult {
     private final FileEntryValidatorReason reason;
     private final Object expectedValue;
     private final Object foundValue;
+    private final long[][] corruptedRanges;
+    private final boolean cached;
 
     public FileEntryValidatorResult(
             FileEntryValidator validator,
             FileEntryValidatorReason reason,
-            Object expectedValue, Object foundValue
+            Object expectedValue, Object foundValue,
+            long[][] corruptedRanges,
+            boolean cached
     ) {
         this.validator = Objects.requireNonNull(validator, "validator is null");
         this.reason = Objects.requireNonNull(reason, "reason is null");
         this.expectedValue = expectedValue;
         this.foundValue = foundValue;
+        this.corruptedRanges = corruptedRanges;
+        this.cached = cached;
+    }
+
+    public FileEntryValidatorResult(
+            FileEntryValidator validator,
+            FileEntryValidatorReason reason,
+            Object expectedValue, Object foundValue,
+            long[][] corruptedRanges
+    ) {
+        this(validator, reason, expectedValue, foundValue, corruptedRanges, false);
+    }
+
+    public FileEntryValidatorResult(
+            FileEntryValidator validator,
+            FileEntryValidatorReason reason,
+            Object expectedValue, Object foundValue
+    ) {
+        this(validator, reason, expectedValue, foundValue, null);
     }
 
     public FileEntryValidator getValidator() {
@@ -68,6 +91,22 @@ public class FileEntryValidatorResult {
         return foundValue;
     }
 
+    /**
+     * @return the byte ranges of the file that changed as {start, end} pairs (end exclusive), or null if unknown
+     */
+    public long[][] getCorruptedRanges() {
+        return corruptedRanges;
+    }
+
+    /**
+     * @return true if the values were compared with the hash cache instead of
+     * the contents of the file, which was not read and is only known to be
+     * unchanged by its size and modification time
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
     public boolean success() {
         return getReason().equals(FileEntryValidatorReason.SUCCESS);
     }
@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.HexFormat;
 import java.util.Objects;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
 
 /**
  *
@@ -45,7 +46,11 @@ public class FileEntryWriter implements Closeable {
         private boolean sizeEnabled = true;
         private boolean filesAndDirectoriesEnabled = true;
         private boolean sha256Enabled = true;
+        private boolean crc32cEnabled = false;
+        private boolean treeHashEnabled = false;
+        private boolean treeLeavesEnabled = false;
         private boolean sampleEnabled = true;
+        private boolean samplePointsEnabled = false;
         private boolean metadataEnabled = true;
 
         public Flags() {
@@ -92,6 +97,30 @@ public class FileEntryWriter implements Closeable {
             return sha256Enabled;
         }
 
+        public void setCrc32cEnabled(boolean crc32cEnabled) {
+            this.crc32cEnabled = crc32cEnabled;
+        }
+
+        public boolean isCrc32cEnabled() {
+            return crc32cEnabled;
+        }
+
+        public void setTreeHashEnabled(boolean treeHashEnabled) {
+            this.treeHashEnabled = treeHashEnabled;
+        }
+
+        public boolean isTreeHashEnabled() {
+            return treeHashEnabled;
+        }
+
+        public void setTreeLeavesEnabled(boolean treeLeavesEnabled) {
+            this.treeLeavesEnabled = treeLeavesEnabled;
+        }
+
+        public boolean isTreeLeavesEnabled() {
+            return treeLeavesEnabled;
+        }
+
         public void setSampleEnabled(boolean sampleEnabled) {
             this.sampleEnabled = sampleEnabled;
         }
@@ -100,6 +129,14 @@ public class FileEntryWriter implements Closeable {
             return sampleEnabled;
         }
 
+        public void setSamplePointsEnabled(boolean samplePointsEnabled) {
+            this.samplePointsEnabled = samplePointsEnabled;
+        }
+
+        public boolean isSamplePointsEnabled() {
+            return samplePointsEnabled;
+        }
+
         public boolean isMetadataEnabled() {
             return metadataEnabled;
         }
@@ -116,6 +153,8 @@ public class FileEntryWriter implements Closeable {
 
     private boolean firstLineWritten = false;
     private boolean headerWritten = false;
+    
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
 
     public FileEntryWriter(Writer out, Flags flags, boolean writeHeader) {
         Objects.requireNonNull(out, "out is null");
@@ -132,6 +171,14 @@ public class FileEntryWriter implements Closeable {
         this(out, new Flags());
     }
 
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
     public Flags getFlags() {
         return flags;
     }
@@ -158,9 +205,21 @@ public class FileEntryWriter implements Closeable {
         if (this.flags.isSha256Enabled()) {
             b.append(",sha256");
         }
+        if (this.flags.isCrc32cEnabled()) {
+            b.append(",crc32c");
+        }
+        if (this.flags.isTreeHashEnabled()) {
+            b.append(",treehash");
+        }
+        if (this.flags.isTreeLeavesEnabled()) {
+            b.append(",treeleaves");
+        }
         if (this.flags.isSampleEnabled()) {
             b.append(",sample");
         }
+        if (this.flags.isSamplePointsEnabled()) {
+            b.append(",samplepoints");
+        }
         if (this.flags.isMetadataEnabled()) {
             b.append(",meta");
         }
@@ -191,6 +250,16 @@ public class FileEntryWriter implements Closeable {
     }
 
     public void writeFileEntry(FileEntry entry) throws IOException {
+        long start = this.metrics.start();
+        try {
+            writeEntry(entry);
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.WRITER, start);
+        }
+        this.metrics.increment(OperationMetrics.Counter.ENTRIES_WRITTEN);
+    }
+
+    private void writeEntry(FileEntry entry) throws IOException {
         writeHeader();
 
         if (this.firstLineWritten) {
@@ -230,6 +299,30 @@ public class FileEntryWriter implements Closeable {
                 b.append(escapeField(hex.formatHex(sha256)));
             }
         }
+        if (this.flags.isCrc32cEnabled()) {
+            b.append(",");
+
+            byte[] crc32c = entry.getCrc32c();
+            if (crc32c != null) {
+                b.append(escapeField(hex.formatHex(crc32c)));
+            }
+        }
+        if (this.flags.isTreeHashEnabled()) {
+            b.append(",");
+
+            byte[] treeHash = entry.getTreeHash();
+            if (treeHash != null) {
+                b.append(escapeField(hex.formatHex(treeHash)));
+            }
+        }
+        if (this.flags.isTreeLeavesEnabled()) {
+            b.append(",");
+
+            byte[] treeLeaves = entry.getTreeLeaves();
+            if (treeLeaves != null) {
+                b.append(escapeField(hex.formatHex(treeLeaves)));
+            }
+        }
         if (this.flags.isSampleEnabled()) {
             b.append(",");
 
@@ -238,6 +331,14 @@ public class FileEntryWriter implements Closeable {
                 b.append(escapeField(hex.formatHex(sample)));
             }
         }
+        if (this.flags.isSamplePointsEnabled()) {
+            b.append(",");
+
+            byte[] samplePoints = entry.getSamplePoints();
+            if (samplePoints != null) {
+                b.append(escapeField(hex.formatHex(samplePoints)));
+            }
+        }
         if (this.flags.isMetadataEnabled()) {
             b.append(",");
             b.append(escapeField(entry.getMetadata().save()));
@@ -247,7 +348,12 @@ public class FileEntryWriter implements Closeable {
 
     @Override
     public void close() throws IOException {
-        this.out.close();
+        long start = this.metrics.start();
+        try {
+            this.out.close();
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.WRITER, start);
+        }
     }
 
 }
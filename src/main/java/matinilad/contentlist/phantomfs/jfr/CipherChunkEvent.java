@@ -0,0 +1,95 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a single chunk processed by the encrypted
+ * streams.
+ * <p>
+ * Disabled by default, enable it with {@code matinilad.contentlist.CipherChunk#enabled=true}.
+ *
+ * @author Cien
+ */
+@Name(CipherChunkEvent.NAME)
+@Label("Cipher Chunk")
+@Category({"ContentList", "PhantomFS"})
+@Description("A chunk encrypted or decrypted by an encrypted stream")
+@Enabled(false)
+@StackTrace(false)
+public class CipherChunkEvent extends Event {
+
+    public static final String NAME = "matinilad.contentlist.CipherChunk";
+
+    public static final String ENCRYPT = "encrypt";
+    public static final String DECRYPT = "decrypt";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Chunk")
+    @Description("Index of the chunk in the stream")
+    long chunk;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public CipherChunkEvent() {
+
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        begin();
+    }
+
+    public void finish(String operation, long chunk, long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.operation = operation;
+        this.chunk = chunk;
+        this.bytes = bytes;
+        commit();
+    }
+
+}
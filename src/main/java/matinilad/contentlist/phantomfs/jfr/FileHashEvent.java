@@ -0,0 +1,111 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.jfr;
+
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a file hashed by the entry factory or validator.
+ * <p>
+ * Disabled by default, enable it with {@code matinilad.contentlist.FileHash#enabled=true}.
+ *
+ * @author Cien
+ */
+@Name(FileHashEvent.NAME)
+@Label("File Hash")
+@Category({"ContentList", "PhantomFS"})
+@Description("A file read and hashed while creating or validating a list")
+@Enabled(false)
+@StackTrace(false)
+public class FileHashEvent extends Event {
+
+    public static final String NAME = "matinilad.contentlist.FileHash";
+
+    public static final String CREATE = "create";
+    public static final String VALIDATE = "validate";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+
+    @Label("Throughput")
+    @DataAmount
+    @Frequency
+    double throughput;
+
+    private transient long startNanos;
+
+    public FileHashEvent() {
+
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        this.startNanos = System.nanoTime();
+        begin();
+    }
+
+    public void finish(String operation, Path path, long size, long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        long elapsed = System.nanoTime() - this.startNanos;
+
+        this.operation = operation;
+        this.path = path.toString();
+        this.size = size;
+        this.bytes = bytes;
+        this.throughput = (elapsed <= 0 ? 0.0 : bytes / (elapsed / 1E9));
+        commit();
+    }
+
+}
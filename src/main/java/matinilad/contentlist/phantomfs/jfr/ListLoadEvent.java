@@ -0,0 +1,96 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the load phase of a list reader, from the first
+ * entry read to the end of the list or the reader being closed.
+ * <p>
+ * Disabled by default, enable it with {@code matinilad.contentlist.ListLoad#enabled=true}.
+ *
+ * @author Cien
+ */
+@Name(ListLoadEvent.NAME)
+@Label("List Load")
+@Category({"ContentList", "PhantomFS"})
+@Description("Entries read from a list until its end or until the reader was closed")
+@Enabled(false)
+@StackTrace(false)
+public class ListLoadEvent extends Event {
+
+    public static final String NAME = "matinilad.contentlist.ListLoad";
+
+    @Label("Entries")
+    long entries;
+
+    @Label("Complete")
+    @Description("If the end of the list was reached")
+    boolean complete;
+
+    private transient boolean started = false;
+
+    public ListLoadEvent() {
+
+    }
+
+    public void start() {
+        if (!isEnabled() || this.started) {
+            return;
+        }
+        this.started = true;
+        begin();
+    }
+
+    public void entryRead() {
+        if (!this.started) {
+            return;
+        }
+        this.entries++;
+    }
+
+    public void finish(boolean complete) {
+        if (!this.started) {
+            return;
+        }
+        this.started = false;
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.complete = complete;
+        commit();
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Input stream that reads a file with direct I/O, bypassing the page cache
+ * of the operating system so reading a large amount of data does not evict
+ * the cached data of other programs.
+ * <p>
+ * Direct I/O requires reads aligned to the block size of the file system,
+ * the file is read in whole aligned blocks into a aligned direct buffer. If
+ * the runtime or the file system does not support direct I/O the file is
+ * read normally.
+ *
+ * @author Cien
+ */
+public class DirectInputStream extends InputStream {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    public static final int MIN_ALIGNMENT = 4096;
+
+    private static final OpenOption DIRECT = findDirectOption();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static OpenOption findDirectOption() {
+        try {
+            Class<?> c = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            return (OpenOption) Enum.valueOf((Class<? extends Enum>) c, "DIRECT");
+        } catch (ClassNotFoundException | IllegalArgumentException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the runtime supports direct I/O, it may still not be
+     * supported by a file system
+     */
+    public static boolean isSupported() {
+        return DIRECT != null;
+    }
+
+    /**
+     * Returns the alignment required for direct reads of a file.
+     *
+     * @param file The file, not null
+     * @return the alignment, a power of two of at least {@link #MIN_ALIGNMENT}
+     */
+    public static int alignment(Path file) {
+        try {
+            long blockSize = Files.getFileStore(file).getBlockSize();
+            if (blockSize > MIN_ALIGNMENT && blockSize <= BUFFER_SIZE && Long.bitCount(blockSize) == 1) {
+                return (int) blockSize;
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            //use the minimum
+        }
+        return MIN_ALIGNMENT;
+    }
+
+    /**
+     * Allocates a direct buffer aligned for direct reads.
+     *
+     * @param size The size of the buffer, a multiple of the alignment
+     * @param alignment The alignment
+     * @return the buffer
+     */
+    public static ByteBuffer allocateAligned(int size, int alignment) {
+        return ByteBuffer.allocateDirect(size + alignment).alignedSlice(alignment);
+    }
+
+    /**
+     * Opens a channel for reading, with direct I/O if requested and
+     * supported.
+     *
+     * @param file The file, not null
+     * @param direct If direct I/O should be used
+     * @return the channel
+     * @throws IOException if the file can't be opened
+     */
+    public static FileChannel openChannel(Path file, boolean direct) throws IOException {
+        Objects.requireNonNull(file, "file is null");
+        if (direct && DIRECT != null) {
+            try {
+                return FileChannel.open(file, StandardOpenOption.READ, DIRECT);
+            } catch (IOException | UnsupportedOperationException ex) {
+                //not supported by the file system, the normal open reports real errors
+            }
+        }
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Opens a file for reading, with direct I/O if requested and supported.
+     *
+     * @param file The file, not null
+     * @param direct If direct I/O should be used
+     * @return the stream
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream open(Path file, boolean direct) throws IOException {
+        Objects.requireNonNull(file, "file is null");
+        if (!direct || DIRECT == null) {
+            return Files.newInputStream(file);
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, DIRECT);
+        } catch (IOException | UnsupportedOperationException ex) {
+            return Files.newInputStream(file);
+        }
+        int alignment = alignment(file);
+        long size;
+        try {
+            size = channel.size();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        //small files do not need a whole zeroed direct buffer
+        int capped = (int) Math.min(BUFFER_SIZE, size);
+        int bufferSize = Math.max(alignment, ((capped + alignment - 1) / alignment) * alignment);
+        return new DirectInputStream(file, channel, alignment, bufferSize);
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int alignment;
+    private final ByteBuffer buffer;
+
+    private InputStream fallback = null;
+    private long position = 0;
+    private boolean endOfFile = false;
+    private final byte[] single = new byte[1];
+
+    private DirectInputStream(Path file, FileChannel channel, int alignment, int bufferSize) {
+        this.file = file;
+        this.channel = channel;
+        this.alignment = alignment;
+        this.buffer = allocateAligned(bufferSize, alignment);
+        this.buffer.limit(0);
+    }
+
+    private boolean fill() throws IOException {
+        if (this.position % this.alignment != 0) {
+            //a unaligned read only happens at the end of the file
+            this.endOfFile = true;
+            return false;
+        }
+        this.buffer.clear();
+        try {
+            while (this.buffer.hasRemaining()) {
+                int r = this.channel.read(this.buffer, this.position + this.buffer.position());
+                if (r <= 0) {
+                    break;
+                }
+                if (this.buffer.position() % this.alignment != 0) {
+                    //only the end of the file can be unaligned
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            if (this.position != 0) {
+                throw ex;
+            }
+            //direct reads were accepted on open but not on read, read normally
+            this.channel.close();
+            this.fallback = Files.newInputStream(this.file);
+            return false;
+        }
+        this.buffer.flip();
+        this.position += this.buffer.remaining();
+        if (!this.buffer.hasRemaining()) {
+            this.endOfFile = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int r = read(this.single, 0, 1);
+        return (r == -1 ? -1 : (this.single[0] & 0xFF));
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (this.fallback != null) {
+            return this.fallback.read(b, off, len);
+        }
+        if (this.endOfFile) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!this.buffer.hasRemaining() && !fill()) {
+            if (this.fallback != null) {
+                return this.fallback.read(b, off, len);
+            }
+            return -1;
+        }
+        int toCopy = Math.min(len, this.buffer.remaining());
+        this.buffer.get(b, off, toCopy);
+        return toCopy;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.fallback != null) {
+            return this.fallback.available();
+        }
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.channel.close();
+        } finally {
+            if (this.fallback != null) {
+                this.fallback.close();
+            }
+        }
+    }
+
+}
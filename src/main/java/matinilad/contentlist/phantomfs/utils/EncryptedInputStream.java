@@ -48,6 +48,7 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import matinilad.contentlist.phantomfs.jfr.CipherChunkEvent;
 import static matinilad.contentlist.phantomfs.utils.EncryptedOutputStream.MAGIC;
 
 /**
@@ -81,6 +82,8 @@ public class EncryptedInputStream extends FilterInputStream {
 
     private boolean closed = false;
     
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    
     public EncryptedInputStream(InputStream in, char[] password, int maxBufferSize) {
         super(Objects.requireNonNull(in, "in is null"));
         this.password = password.clone();
@@ -97,6 +100,14 @@ public class EncryptedInputStream extends FilterInputStream {
         this(in, password, EncryptedOutputStream.MAX_BUFFER_SIZE);
     }
 
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
     private GCMParameterSpec nextIV() {
         byte[] iv = new byte[12];
         for (int i = 0; i < 8; i++) {
@@ -122,7 +133,13 @@ public class EncryptedInputStream extends FilterInputStream {
             PBEKeySpec spec = new PBEKeySpec(this.password, salt, 1_000_000, 256);
             try {
                 SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-                SecretKey secretKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA256");
+                long start = this.metrics.start();
+                SecretKey secretKey;
+                try {
+                    secretKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA256");
+                } finally {
+                    this.metrics.stop(OperationMetrics.Timer.KEY_DERIVATION, start);
+                }
 
                 mac.init(secretKey);
 
@@ -173,7 +190,16 @@ public class EncryptedInputStream extends FilterInputStream {
                 throw new EOFException("invalid buffer size! expected " + encryptedSize);
             }
 
-            byte[] decrypted = this.cipher.doFinal(encrypted);
+            CipherChunkEvent chunkEvent = new CipherChunkEvent();
+            chunkEvent.start();
+            long start = this.metrics.start();
+            byte[] decrypted;
+            try {
+                decrypted = this.cipher.doFinal(encrypted);
+            } finally {
+                this.metrics.stop(OperationMetrics.Timer.CIPHER, start);
+            }
+            chunkEvent.finish(CipherChunkEvent.DECRYPT, this.nonce - 1, decrypted.length - 4);
             this.nextBufferSize
                     = ((decrypted[0] & 0xFF) << 24)
                     | ((decrypted[1] & 0xFF) << 16)
@@ -49,6 +49,7 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import matinilad.contentlist.phantomfs.jfr.CipherChunkEvent;
 
 /**
  *
@@ -77,6 +78,8 @@ public class EncryptedOutputStream extends FilterOutputStream {
     private int currentBufferIndex;
     
     private boolean closed = false;
+    
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
 
     public EncryptedOutputStream(OutputStream out, int bufferSize, byte[] userSalt, char[] password) {
         super(Objects.requireNonNull(out, "out is null"));
@@ -113,6 +116,14 @@ public class EncryptedOutputStream extends FilterOutputStream {
         this(out, null, password);
     }
 
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
     private GCMParameterSpec nextIV() {
         byte[] iv = new byte[12];
         for (int i = 0; i < 8; i++) {
@@ -162,7 +173,13 @@ public class EncryptedOutputStream extends FilterOutputStream {
             PBEKeySpec spec = new PBEKeySpec(this.password, salt, 1_000_000, 256);
             try {
                 SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-                SecretKey secretKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA256");
+                long start = this.metrics.start();
+                SecretKey secretKey;
+                try {
+                    secretKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA256");
+                } finally {
+                    this.metrics.stop(OperationMetrics.Timer.KEY_DERIVATION, start);
+                }
                 
                 mac.init(secretKey);
                 
@@ -203,7 +220,16 @@ public class EncryptedOutputStream extends FilterOutputStream {
                 (byte) (this.currentBufferIndex >>> 8),
                 (byte) (this.currentBufferIndex >>> 0)
             });
-            byte[] encrypted = this.cipher.doFinal(this.lastBuffer, 0, this.lastBufferIndex);
+            CipherChunkEvent chunkEvent = new CipherChunkEvent();
+            chunkEvent.start();
+            long start = this.metrics.start();
+            byte[] encrypted;
+            try {
+                encrypted = this.cipher.doFinal(this.lastBuffer, 0, this.lastBufferIndex);
+            } finally {
+                this.metrics.stop(OperationMetrics.Timer.CIPHER, start);
+            }
+            chunkEvent.finish(CipherChunkEvent.ENCRYPT, this.nonce - 1, this.lastBufferIndex);
             
             if (shouldBeEmpty != null && shouldBeEmpty.length > 0) {
                 this.out.write(shouldBeEmpty);
@@ -0,0 +1,338 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Watches the files being read by a job, using the progress reported by the
+ * factory (like {@code onFileProgress}) to find files that stopped making
+ * progress, and records how long each file took.
+ * <p>
+ * A task reading a file starts a {@link Watch} when it begins and finishes it
+ * when it ends, the thread waiting for the task uses
+ * {@link #await(Path, Future)} which cancels the task once the file made no
+ * progress for the timeout, so a single stalled file on a network or FUSE
+ * mount does not block the rest of the job.
+ *
+ * @author Cien
+ */
+public class FileWatchdog {
+
+    public static final int DEFAULT_SLOWEST = 10;
+
+    private static final long POLL_MILLIS = 100;
+    private static final int BUCKETS = 64;
+
+    /**
+     * How long a file took to be read.
+     *
+     * @param path The file
+     * @param nanos The time from the start to the end of the read
+     * @param bytes The last progress reported for the file
+     * @param deferred If the file stalled before and this was its retry
+     */
+    public record Latency(Path path, long nanos, long bytes, boolean deferred) {
+
+    }
+
+    /**
+     * A file being read, must be finished.
+     */
+    public class Watch {
+
+        private final Path path;
+        private final long started;
+        private volatile long lastProgress;
+        private volatile long bytes = 0;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private Watch(Path path) {
+            this.path = path;
+            this.started = System.nanoTime();
+            this.lastProgress = this.started;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+    }
+
+    private final long timeoutNanos;
+    private final ConcurrentHashMap<Path, Watch> watches = new ConcurrentHashMap<>();
+    private final Set<Path> deferred = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final int slowestCount;
+    private final PriorityQueue<Latency> slowest;
+    private long files = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    /**
+     * Creates a new watchdog.
+     *
+     * @param timeoutMillis The time without progress before a file is
+     * considered stalled, or 0 to only record the latencies
+     * @param slowestCount How many of the slowest files to keep
+     */
+    public FileWatchdog(long timeoutMillis, int slowestCount) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis < 0");
+        }
+        if (slowestCount < 0) {
+            throw new IllegalArgumentException("slowestCount < 0");
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.slowestCount = slowestCount;
+        this.slowest = new PriorityQueue<>(Math.max(1, slowestCount), (o1, o2) -> Long.compare(o1.nanos(), o2.nanos()));
+    }
+
+    public FileWatchdog(long timeoutMillis) {
+        this(timeoutMillis, DEFAULT_SLOWEST);
+    }
+
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos);
+    }
+
+    /**
+     * Starts watching a file, called by the task reading it.
+     *
+     * @param path The file, not null
+     * @return the watch, to be finished when the task ends
+     */
+    public Watch start(Path path) {
+        Objects.requireNonNull(path, "path is null");
+        Watch watch = new Watch(path);
+        this.watches.put(path, watch);
+        return watch;
+    }
+
+    /**
+     * Reports progress of a file being read, ignored if the file is not
+     * watched.
+     *
+     * @param path The file, not null
+     * @param bytes The bytes read so far
+     */
+    public void progress(Path path, long bytes) {
+        Watch watch = this.watches.get(path);
+        if (watch != null) {
+            watch.bytes = bytes;
+            watch.lastProgress = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports that a file being read started or stopped waiting for
+     * something other than the file (like a rate limiter), a file is never
+     * stalled while waiting and its timeout starts again when the wait ends.
+     *
+     * @param path The file, not null
+     * @param waiting true when a wait starts, false when it ends
+     */
+    public void waiting(Path path, boolean waiting) {
+        Watch watch = this.watches.get(path);
+        if (watch != null) {
+            if (waiting) {
+                watch.waiting.incrementAndGet();
+            } else {
+                watch.lastProgress = System.nanoTime();
+                watch.waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Finishes a watch and records the latency of the file, a watch of a
+     * file that was deferred is not recorded, the retry is.
+     *
+     * @param watch The watch, not null
+     */
+    public void finish(Watch watch) {
+        Objects.requireNonNull(watch, "watch is null");
+        if (!this.watches.remove(watch.path, watch)) {
+            return;
+        }
+        long nanos = System.nanoTime() - watch.started;
+        this.buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 1) - 1)));
+        Latency latency = new Latency(watch.path, nanos, watch.bytes, this.deferred.contains(watch.path));
+        synchronized (this.slowest) {
+            this.files++;
+            this.totalNanos += nanos;
+            this.maxNanos = Math.max(this.maxNanos, nanos);
+            if (this.slowestCount == 0) {
+                return;
+            }
+            if (this.slowest.size() < this.slowestCount) {
+                this.slowest.add(latency);
+            } else if (this.slowest.peek().nanos() < nanos) {
+                this.slowest.poll();
+                this.slowest.add(latency);
+            }
+        }
+    }
+
+    /**
+     * @param path The file, not null
+     * @return true if the file is being read and made no progress for the
+     * timeout
+     */
+    public boolean isStalled(Path path) {
+        if (this.timeoutNanos == 0) {
+            return false;
+        }
+        Watch watch = this.watches.get(Objects.requireNonNull(path, "path is null"));
+        return watch != null && watch.waiting.get() <= 0 && (System.nanoTime() - watch.lastProgress) > this.timeoutNanos;
+    }
+
+    /**
+     * Waits for the task reading a file to end, if the file stalls the task
+     * is cancelled (interrupting its thread) and the file is marked as
+     * deferred.
+     *
+     * @param path The file read by the task, not null
+     * @param future The task, not null
+     * @return true if the task ended, false if the file stalled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(Path path, Future<?> future) throws InterruptedException {
+        Objects.requireNonNull(path, "path is null");
+        Objects.requireNonNull(future, "future is null");
+        while (!future.isDone()) {
+            try {
+                future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (isStalled(path)) {
+                    this.deferred.add(path);
+                    Watch watch = this.watches.remove(path);
+                    future.cancel(true);
+                    if (watch == null || !future.isCancelled()) {
+                        //ended just now
+                        this.deferred.remove(path);
+                        return true;
+                    }
+                    return false;
+                }
+            } catch (ExecutionException ex) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param path The file, not null
+     * @return true if the file stalled and its task was cancelled
+     */
+    public boolean isDeferred(Path path) {
+        return this.deferred.contains(Objects.requireNonNull(path, "path is null"));
+    }
+
+    /**
+     * @return the number of files that stalled
+     */
+    public int getDeferred() {
+        return this.deferred.size();
+    }
+
+    /**
+     * @return the number of files recorded
+     */
+    public long getFiles() {
+        synchronized (this.slowest) {
+            return this.files;
+        }
+    }
+
+    public long getAverageNanos() {
+        synchronized (this.slowest) {
+            return (this.files == 0 ? 0 : this.totalNanos / this.files);
+        }
+    }
+
+    public long getMaxNanos() {
+        synchronized (this.slowest) {
+            return this.maxNanos;
+        }
+    }
+
+    /**
+     * Returns a upper bound of a latency percentile, latencies are counted
+     * in power of two buckets so the value is at most twice the real one.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return the upper bound in nanoseconds or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (!(percentile >= 0.0 && percentile <= 100.0)) {
+            throw new IllegalArgumentException("percentile out of range");
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil((percentile / 100.0) * total));
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.buckets.get(i);
+            if (count >= rank) {
+                return Math.min(1L << Math.min(i, 62), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * @return the slowest files recorded, slowest first
+     */
+    public List<Latency> getSlowest() {
+        List<Latency> list;
+        synchronized (this.slowest) {
+            list = new ArrayList<>(this.slowest);
+        }
+        list.sort(Collections.reverseOrder(this.slowest.comparator()));
+        return list;
+    }
+
+}
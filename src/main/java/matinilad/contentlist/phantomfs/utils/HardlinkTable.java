@@ -0,0 +1,184 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of the hashes of files with more than one hard link, shared by all
+ * the threads of a job so the data of each inode is read once and its hashes
+ * are reused by every path linked to it.
+ * <p>
+ * The first path of a inode to be linked owns it and must complete it with
+ * its hashes, other paths of the same inode wait for it. A owner that fails
+ * releases the inode and the paths waiting for it read the file themselves.
+ *
+ * @author Cien
+ */
+public class HardlinkTable {
+
+    private static class Inode {
+
+        final long size;
+        final FileTime modified;
+        final CompletableFuture<HashCache.Cached> hashes = new CompletableFuture<>();
+
+        Inode(long size, FileTime modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * A path linked to a inode, must be closed.
+     */
+    public class Link implements AutoCloseable {
+
+        private final Object key;
+        private final Inode inode;
+        private final boolean owner;
+        private final HashCache.Cached cached;
+
+        private Link(Object key, Inode inode, boolean owner, HashCache.Cached cached) {
+            this.key = key;
+            this.inode = inode;
+            this.owner = owner;
+            this.cached = cached;
+        }
+
+        /**
+         * @return the hashes of the inode read by another path or null if
+         * the file must be read
+         */
+        public HashCache.Cached getCached() {
+            return cached;
+        }
+
+        /**
+         * Counts the hashes of {@link #getCached()} as used instead of
+         * reading the file.
+         */
+        public void reused() {
+            reusedFiles.incrementAndGet();
+            savedBytes.addAndGet(this.inode.size);
+        }
+
+        /**
+         * Completes the inode with the hashes of the file, only done if this
+         * link owns the inode.
+         *
+         * @param hashes The hashes, not null
+         */
+        public void complete(HashCache.Cached hashes) {
+            Objects.requireNonNull(hashes, "hashes is null");
+            if (this.owner) {
+                this.inode.hashes.complete(hashes);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.owner && this.inode.hashes.complete(null)) {
+                //failed, the next path of the inode reads it again
+                inodes.remove(this.key, this.inode);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<Object, Inode> inodes = new ConcurrentHashMap<>();
+    private final AtomicLong reusedFiles = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public HardlinkTable() {
+
+    }
+
+    private static boolean isLinked(Path path) {
+        try {
+            Object links = Files.getAttribute(path, "unix:nlink");
+            return (links instanceof Integer i) && i > 1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Links a path to its inode, waiting if another path of the same inode is
+     * being read.
+     *
+     * @param path The file, not null
+     * @param attributes The attributes of the file, not null
+     * @return the link or null if the file has a single link or no file key
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Link link(Path path, BasicFileAttributes attributes) throws InterruptedException {
+        Objects.requireNonNull(path, "path is null");
+        Objects.requireNonNull(attributes, "attributes is null");
+        Object key = attributes.fileKey();
+        if (key == null || !attributes.isRegularFile() || !isLinked(path)) {
+            return null;
+        }
+        Inode inode = new Inode(attributes.size(), attributes.lastModifiedTime());
+        Inode other = this.inodes.putIfAbsent(key, inode);
+        if (other == null) {
+            return new Link(key, inode, true, null);
+        }
+        if (other.size != inode.size || !other.modified.equals(inode.modified)) {
+            //changed while the job runs
+            return new Link(key, other, false, null);
+        }
+        try {
+            return new Link(key, other, false, other.hashes.get());
+        } catch (ExecutionException ex) {
+            return new Link(key, other, false, null);
+        }
+    }
+
+    /**
+     * @return the number of files whose hashes were reused
+     */
+    public long getReusedFiles() {
+        return reusedFiles.get();
+    }
+
+    /**
+     * @return the bytes that were not read because their hashes were reused
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+}
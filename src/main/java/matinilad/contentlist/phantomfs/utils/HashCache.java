@@ -0,0 +1,422 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent cache of file hashes and samples, keyed by the identity of a
+ * file (path, size, modification time and file key).
+ * <p>
+ * The cache is a memory mapped set associative table: a key selects a set
+ * of {@link #WAYS} fixed size slots and a full set evicts its least recently
+ * used slot, so a lookup never touches more than one set and the file never
+ * grows past the size given when it was created.
+ * <p>
+ * A file is only considered unchanged if all parts of the key match, a file
+ * modified in place without changing its size and modification time will
+ * still hit the cache.
+ * <p>
+ * Slots are written field by field and may straddle pages, so each slot ends
+ * with a CRC32C of its contents written last, a slot torn by a crash fails
+ * the check and is a miss.
+ *
+ * @author Cien
+ */
+public class HashCache implements Closeable {
+
+    public static final String FILE_NAME = "hashcache.bin";
+    public static final int DEFAULT_MAX_ENTRIES = 65536;
+    public static final int MAX_SAMPLE_SIZE = 64;
+    public static final int WAYS = 8;
+
+    private static final int MAGIC = 0x434C4843;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+    private static final int MAX_SETS = (1 << 30) / (WAYS * 160);
+
+    //slot layout
+    private static final int SLOT_SIZE = 160;
+    private static final int PATH_HASH = 0;
+    private static final int FILE_KEY_HASH = 8;
+    private static final int SIZE = 16;
+    private static final int MODIFIED = 24;
+    private static final int LAST_USED = 32;
+    private static final int HAS_SHA256 = 40;
+    private static final int SAMPLE_LENGTH = 41;
+    private static final int SHA256 = 42;
+    private static final int SAMPLE = 74;
+    private static final int HAS_CRC32C = 138;
+    private static final int CRC32C = 139;
+    private static final int CHECKSUM = 156;
+
+    public static class Cached {
+
+        private final byte[] sha256;
+        private final byte[] crc32c;
+        private final byte[] sample;
+
+        public Cached(byte[] sha256, byte[] crc32c, byte[] sample) {
+            this.sha256 = sha256;
+            this.crc32c = crc32c;
+            this.sample = sample;
+        }
+
+        /**
+         * @return the sha256 of the file or null if it was not hashed
+         */
+        public byte[] getSha256() {
+            return sha256;
+        }
+
+        /**
+         * @return the crc32c of the file or null if it was not computed
+         */
+        public byte[] getCrc32c() {
+            return crc32c;
+        }
+
+        /**
+         * @return the first bytes of the file, up to {@link #MAX_SAMPLE_SIZE}
+         */
+        public byte[] getSample() {
+            return sample;
+        }
+
+        /**
+         * Returns the sample of a given size from the cached one
+         *
+         * @param sampleSize The sample size
+         * @param fileSize The size of the file
+         * @return the sample or null if the cached sample is too small
+         */
+        public byte[] getSample(int sampleSize, long fileSize) {
+            int length = (int) Math.min(sampleSize, fileSize);
+            if (this.sample.length < length) {
+                return null;
+            }
+            return Arrays.copyOf(this.sample, length);
+        }
+    }
+
+    private static long hash(String s) {
+        //FNV-1a
+        long h = 0xcbf29ce484222325L;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            h ^= (b & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        return (h == 0 ? 1 : h);
+    }
+
+    private static int setsFor(int maxEntries) {
+        int sets = 1;
+        while (sets * WAYS < maxEntries && sets < MAX_SETS) {
+            sets <<= 1;
+        }
+        return sets;
+    }
+
+    /**
+     * Opens or creates a cache file, a existing file created with a
+     * different size or version is cleared.
+     *
+     * @param file The cache file, not null
+     * @param maxEntries The maximum number of entries, rounded up to a power of two
+     * @return the cache
+     * @throws IOException if the file can't be opened or is in use by another process
+     */
+    public static HashCache open(Path file, int maxEntries) throws IOException {
+        Objects.requireNonNull(file, "file is null");
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries < 1");
+        }
+        int sets = setsFor(maxEntries);
+        long length = HEADER_SIZE + ((long) sets * WAYS * SLOT_SIZE);
+
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw new IOException("hash cache is in use: " + file);
+            }
+
+            boolean valid = false;
+            if (channel.size() == length) {
+                ByteBuffer header = ByteBuffer.allocate(12);
+                channel.read(header, 0);
+                header.flip();
+                valid = header.getInt() == MAGIC && header.getInt() == VERSION && header.getInt() == sets;
+            }
+            if (!valid) {
+                channel.truncate(0);
+            }
+
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            if (!valid) {
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, sets);
+                map.putLong(16, 0);
+            }
+            return new HashCache(file, channel, lock, map, sets);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public static HashCache open(Path file) throws IOException {
+        return open(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer map;
+    private final int sets;
+
+    private long clock;
+    private long hits = 0;
+    private long misses = 0;
+    private boolean closed = false;
+
+    private HashCache(Path file, FileChannel channel, FileLock lock, MappedByteBuffer map, int sets) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.map = map;
+        this.sets = sets;
+        this.clock = map.getLong(16);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getMaxEntries() {
+        return this.sets * WAYS;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private int setOffset(long pathHash) {
+        long mixed = pathHash * 0x9E3779B97F4A7C15L;
+        int set = (int) (mixed >>> 32) & (this.sets - 1);
+        return HEADER_SIZE + (set * WAYS * SLOT_SIZE);
+    }
+
+    private static long fileKeyHash(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return (key == null ? 0 : hash(key.toString()));
+    }
+
+    private static long modified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String pathKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private int checksum(int slot) {
+        //the last used clock is updated on hits and is not checked
+        CRC32C crc = new CRC32C();
+        crc.update(this.map.slice(slot, LAST_USED));
+        crc.update(this.map.slice(slot + HAS_SHA256, CHECKSUM - HAS_SHA256));
+        return (int) crc.getValue();
+    }
+
+    private int find(int set, long pathHash) {
+        for (int i = 0; i < WAYS; i++) {
+            int slot = set + (i * SLOT_SIZE);
+            if (this.map.getLong(slot + PATH_HASH) == pathHash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up a file.
+     *
+     * @param path The file, not null
+     * @param attributes The current attributes of the file, not null
+     * @return the cached hash and sample or null if missing or stale
+     */
+    public synchronized Cached get(Path path, BasicFileAttributes attributes) {
+        Objects.requireNonNull(path, "path is null");
+        Objects.requireNonNull(attributes, "attributes is null");
+        if (this.closed) {
+            return null;
+        }
+
+        long pathHash = hash(pathKey(path));
+        int slot = find(setOffset(pathHash), pathHash);
+        if (slot == -1
+                || this.map.getLong(slot + FILE_KEY_HASH) != fileKeyHash(attributes)
+                || this.map.getLong(slot + SIZE) != attributes.size()
+                || this.map.getLong(slot + MODIFIED) != modified(attributes)
+                || this.map.getInt(slot + CHECKSUM) != checksum(slot)) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        this.map.putLong(slot + LAST_USED, ++this.clock);
+
+        byte[] sha256 = null;
+        if (this.map.get(slot + HAS_SHA256) != 0) {
+            sha256 = new byte[32];
+            this.map.get(slot + SHA256, sha256);
+        }
+        byte[] crc32c = null;
+        if (this.map.get(slot + HAS_CRC32C) != 0) {
+            crc32c = new byte[4];
+            this.map.get(slot + CRC32C, crc32c);
+        }
+        byte[] sample = new byte[this.map.get(slot + SAMPLE_LENGTH) & 0xFF];
+        this.map.get(slot + SAMPLE, sample);
+        return new Cached(sha256, crc32c, sample);
+    }
+
+    /**
+     * Stores the hash and sample of a file, evicting the least recently used
+     * entry of its set if needed.
+     *
+     * @param path The file, not null
+     * @param attributes The attributes of the file when it was read, not null
+     * @param sha256 The sha256 of the file, or null if it was not hashed
+     * @param crc32c The crc32c of the file, or null if it was not computed
+     * @param sample The first bytes of the file, not null, only the first {@link #MAX_SAMPLE_SIZE} are kept
+     */
+    public synchronized void put(Path path, BasicFileAttributes attributes, byte[] sha256, byte[] crc32c, byte[] sample) {
+        Objects.requireNonNull(path, "path is null");
+        Objects.requireNonNull(attributes, "attributes is null");
+        Objects.requireNonNull(sample, "sample is null");
+        if (sha256 != null && sha256.length != 32) {
+            throw new IllegalArgumentException("invalid sha256 length");
+        }
+        if (crc32c != null && crc32c.length != 4) {
+            throw new IllegalArgumentException("invalid crc32c length");
+        }
+        if (this.closed) {
+            return;
+        }
+
+        long pathHash = hash(pathKey(path));
+        int set = setOffset(pathHash);
+        int slot = find(set, pathHash);
+        if (slot == -1) {
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < WAYS; i++) {
+                int other = set + (i * SLOT_SIZE);
+                if (this.map.getLong(other + PATH_HASH) == 0) {
+                    slot = other;
+                    break;
+                }
+                long used = this.map.getLong(other + LAST_USED);
+                if (used < oldest) {
+                    oldest = used;
+                    slot = other;
+                }
+            }
+        }
+
+        int sampleLength = Math.min(sample.length, MAX_SAMPLE_SIZE);
+        this.map.putLong(slot + PATH_HASH, pathHash);
+        this.map.putLong(slot + FILE_KEY_HASH, fileKeyHash(attributes));
+        this.map.putLong(slot + SIZE, attributes.size());
+        this.map.putLong(slot + MODIFIED, modified(attributes));
+        this.map.putLong(slot + LAST_USED, ++this.clock);
+        this.map.put(slot + HAS_SHA256, (byte) (sha256 != null ? 1 : 0));
+        if (sha256 != null) {
+            this.map.put(slot + SHA256, sha256);
+        }
+        this.map.put(slot + HAS_CRC32C, (byte) (crc32c != null ? 1 : 0));
+        if (crc32c != null) {
+            this.map.put(slot + CRC32C, crc32c);
+        }
+        this.map.put(slot + SAMPLE_LENGTH, (byte) sampleLength);
+        this.map.put(slot + SAMPLE, sample, 0, sampleLength);
+        this.map.putInt(slot + CHECKSUM, checksum(slot));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        if (this.closed) {
+            return;
+        }
+        byte[] empty = new byte[SLOT_SIZE * WAYS];
+        for (int i = 0; i < this.sets; i++) {
+            this.map.put(HEADER_SIZE + (i * empty.length), empty);
+        }
+        this.clock = 0;
+        this.map.putLong(16, 0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.map.putLong(16, this.clock);
+            this.map.force();
+        } finally {
+            try {
+                this.lock.release();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+
+}
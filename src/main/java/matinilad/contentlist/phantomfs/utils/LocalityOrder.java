@@ -0,0 +1,123 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Orders a batch of files by their location on the device so they can be
+ * read with less seeking on spinning disks, the results are still expected
+ * to be reported in the original order.
+ * <p>
+ * The location is the inode number taken from the file key of the
+ * attributes, which on most file systems of unix like systems follows the
+ * allocation order of the data. Files without a known location, like on
+ * file systems without file keys, keep the original order, which already
+ * groups the files of a directory together.
+ *
+ * @author Cien
+ */
+public class LocalityOrder {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    //the file key of unix like systems is printed as (dev=...,ino=...)
+    private static final Pattern DEVICE = Pattern.compile("dev=([0-9a-fA-F]+)");
+    private static final Pattern INODE = Pattern.compile("ino=([0-9]+)");
+
+    private static final long[] UNKNOWN = new long[0];
+
+    /**
+     * Returns the location of a file.
+     *
+     * @param attributes The attributes of the file or null
+     * @return the device and inode numbers or null if unknown
+     */
+    public static long[] locationOf(BasicFileAttributes attributes) {
+        if (attributes == null || !attributes.isRegularFile()) {
+            return null;
+        }
+        Object key = attributes.fileKey();
+        if (key == null) {
+            return null;
+        }
+        String s = key.toString();
+        Matcher device = DEVICE.matcher(s);
+        Matcher inode = INODE.matcher(s);
+        if (!device.find() || !inode.find()) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseUnsignedLong(device.group(1), 16), Long.parseUnsignedLong(inode.group(1))};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the order the files should be read in.
+     *
+     * @param attributes The attributes of each file, a element may be null
+     * @return the indices of the files in read order
+     */
+    public static int[] order(List<BasicFileAttributes> attributes) {
+        Objects.requireNonNull(attributes, "attributes is null");
+        long[][] locations = new long[attributes.size()][];
+        for (int i = 0; i < locations.length; i++) {
+            long[] location = locationOf(attributes.get(i));
+            locations[i] = (location == null ? UNKNOWN : location);
+        }
+        Integer[] indices = new Integer[locations.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        //stable, files without a location go first in their original order
+        Arrays.sort(indices, (a, b) -> {
+            long[] x = locations[a];
+            long[] y = locations[b];
+            if (x.length != y.length) {
+                return Integer.compare(x.length, y.length);
+            }
+            return Arrays.compareUnsigned(x, y);
+        });
+        int[] order = new int[indices.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = indices[i];
+        }
+        return order;
+    }
+
+    private LocalityOrder() {
+
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counters and timers for list operations, used to tell where
+ * the time of a create, open or validate goes.
+ * <p>
+ * Components hold a reference to {@link #DISABLED} by default, which makes
+ * every call a no-op without reading the clock.
+ *
+ * @author Cien
+ */
+public class OperationMetrics {
+
+    public static enum Timer {
+        LIST("Directory listing"),
+        ATTRIBUTES("File attributes"),
+        READ("File reading"),
+        DIGEST("Hashing"),
+        READER("List reading"),
+        WRITER("List writing"),
+        CIPHER("Encryption"),
+        KEY_DERIVATION("Key derivation"),
+        THROTTLE("Throttling");
+
+        private final String description;
+
+        private Timer(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static enum Counter {
+        FILES("Files"),
+        DIRECTORIES("Directories"),
+        BYTES_READ("Bytes read"),
+        BYTES_HASHED("Bytes hashed"),
+        ENTRIES_READ("Entries read"),
+        ENTRIES_WRITTEN("Entries written"),
+        CACHE_HITS("Hash cache hits"),
+        HARDLINK_BYTES("Bytes reused from hard links"),
+        JOURNAL_HITS("Files resumed from the journal"),
+        DEFERRED("Files deferred after stalling"),
+        ERRORS("Errors");
+
+        private final String description;
+
+        private Counter(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final Timer[] TIMERS = Timer.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    public static final OperationMetrics DISABLED = new OperationMetrics(null, false);
+
+    private final String name;
+    private final boolean enabled;
+
+    private final LongAdder[] timerNanos = new LongAdder[TIMERS.length];
+    private final LongAdder[] timerCalls = new LongAdder[TIMERS.length];
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+
+    private final long startTime;
+    private final long startMillis;
+    private volatile long endTime = -1;
+
+    private OperationMetrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        for (int i = 0; i < this.timerNanos.length; i++) {
+            this.timerNanos[i] = new LongAdder();
+            this.timerCalls[i] = new LongAdder();
+        }
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] = new LongAdder();
+        }
+        this.startTime = System.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    public OperationMetrics(String name) {
+        this(Objects.requireNonNull(name, "name is null"), true);
+    }
+
+    public static OperationMetrics orDisabled(OperationMetrics metrics) {
+        if (metrics == null) {
+            return DISABLED;
+        }
+        return metrics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long start() {
+        if (!this.enabled) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    public void stop(Timer timer, long start) {
+        if (!this.enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        this.timerNanos[timer.ordinal()].add(elapsed);
+        this.timerCalls[timer.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long value) {
+        if (!this.enabled) {
+            return;
+        }
+        this.counters[counter.ordinal()].add(value);
+    }
+
+    public void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    public long getNanos(Timer timer) {
+        return this.timerNanos[timer.ordinal()].sum();
+    }
+
+    public long getCalls(Timer timer) {
+        return this.timerCalls[timer.ordinal()].sum();
+    }
+
+    public long getCount(Counter counter) {
+        return this.counters[counter.ordinal()].sum();
+    }
+
+    public void finish() {
+        if (this.endTime == -1) {
+            this.endTime = System.nanoTime();
+        }
+    }
+
+    public boolean isFinished() {
+        return this.endTime != -1;
+    }
+
+    public long getElapsedNanos() {
+        long end = this.endTime;
+        if (end == -1) {
+            end = System.nanoTime();
+        }
+        return end - this.startTime;
+    }
+
+    private static double perSecond(long value, long nanos) {
+        if (nanos <= 0) {
+            return 0.0;
+        }
+        return value / (nanos / 1E9);
+    }
+
+    private static String formatBytes(double bytes) {
+        String[] units = {"B", "KiB", "MiB", "GiB", "TiB"};
+        int unit = 0;
+        while (bytes >= 1024.0 && unit < units.length - 1) {
+            bytes /= 1024.0;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.2f %s", bytes, units[unit]);
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1E6);
+    }
+
+    public String toReport() {
+        long elapsed = getElapsedNanos();
+        long files = getCount(Counter.FILES);
+        long hashed = getCount(Counter.BYTES_HASHED);
+
+        StringBuilder b = new StringBuilder();
+        b.append(this.name == null ? "Metrics" : this.name).append(" - ").append(formatMillis(elapsed)).append(System.lineSeparator());
+        for (Counter c : COUNTERS) {
+            long value = getCount(c);
+            if (value == 0) {
+                continue;
+            }
+            b.append("  ").append(c.getDescription()).append(": ");
+            if (c == Counter.BYTES_READ || c == Counter.BYTES_HASHED) {
+                b.append(formatBytes(value));
+            } else {
+                b.append(value);
+            }
+            b.append(System.lineSeparator());
+        }
+        b.append(String.format(Locale.ROOT, "  Throughput: %.2f files/s, %s/s%n",
+                perSecond(files, elapsed),
+                formatBytes(perSecond(hashed, elapsed))
+        ));
+        for (Timer t : TIMERS) {
+            long calls = getCalls(t);
+            if (calls == 0) {
+                continue;
+            }
+            long nanos = getNanos(t);
+            double share = (elapsed <= 0 ? 0.0 : (nanos * 100.0) / elapsed);
+            b.append(String.format(Locale.ROOT, "  %s: %s (%.1f%%, %d calls)%n",
+                    t.getDescription(), formatMillis(nanos), share, calls
+            ));
+        }
+        return b.toString();
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder b = new StringBuilder();
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> b.append("\\\"");
+                case '\\' -> b.append("\\\\");
+                case '\n' -> b.append("\\n");
+                case '\r' -> b.append("\\r");
+                case '\t' -> b.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        b.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+                }
+            }
+        }
+        b.append('"');
+        return b.toString();
+    }
+
+    public String toJson() {
+        long elapsed = getElapsedNanos();
+
+        StringBuilder b = new StringBuilder();
+        b.append("{\n");
+        b.append("  \"name\": ").append(this.name == null ? "null" : jsonString(this.name)).append(",\n");
+        b.append("  \"startTime\": ").append(this.startMillis).append(",\n");
+        b.append("  \"elapsedNanos\": ").append(elapsed).append(",\n");
+        b.append("  \"filesPerSecond\": ").append(String.format(Locale.ROOT, "%.3f",
+                perSecond(getCount(Counter.FILES), elapsed))).append(",\n");
+        b.append("  \"bytesHashedPerSecond\": ").append(String.format(Locale.ROOT, "%.3f",
+                perSecond(getCount(Counter.BYTES_HASHED), elapsed))).append(",\n");
+        b.append("  \"counters\": {\n");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            Counter c = COUNTERS[i];
+            b.append("    ").append(jsonString(c.name().toLowerCase(Locale.ROOT))).append(": ").append(getCount(c));
+            b.append(i == COUNTERS.length - 1 ? "\n" : ",\n");
+        }
+        b.append("  },\n");
+        b.append("  \"timers\": {\n");
+        for (int i = 0; i < TIMERS.length; i++) {
+            Timer t = TIMERS[i];
+            b.append("    ").append(jsonString(t.name().toLowerCase(Locale.ROOT))).append(": {");
+            b.append("\"nanos\": ").append(getNanos(t)).append(", ");
+            b.append("\"calls\": ").append(getCalls(t)).append("}");
+            b.append(i == TIMERS.length - 1 ? "\n" : ",\n");
+        }
+        b.append("  }\n");
+        b.append("}\n");
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toReport();
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the files, directories and bytes a {@link PathStream} would output
+ * using only directory listings and file attributes, so the total work of a
+ * list creation is known before (or while) the files are hashed.
+ * <p>
+ * The counters can be read from any thread while the scan is running.
+ *
+ * @author Cien
+ */
+public class PathScanner {
+
+    private static class InterruptedScanException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public InterruptedScanException(InterruptedException cause) {
+            super(cause);
+        }
+    }
+
+    private final PathStream stream;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile boolean finished = false;
+
+    public PathScanner(PathStream stream) {
+        this.stream = Objects.requireNonNull(stream, "stream is null");
+    }
+
+    public PathStream getStream() {
+        return stream;
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getDirectories() {
+        return directories.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return true if the scan completed, the counters are the final totals
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    protected boolean onShouldInterrupt() {
+        return Thread.interrupted();
+    }
+
+    protected void onProgress(long files, long directories, long bytes) {
+
+    }
+
+    protected void onFinished() {
+
+    }
+
+    public void scan() throws InterruptedException {
+        try {
+            this.stream.stream((e) -> {
+                if (onShouldInterrupt()) {
+                    throw new InterruptedScanException(new InterruptedException("interrupted"));
+                }
+                if (e.getError() != null) {
+                    this.errors.incrementAndGet();
+                    return;
+                }
+                BasicFileAttributes attributes = e.getAttributes();
+                if (attributes.isDirectory()) {
+                    this.directories.incrementAndGet();
+                } else {
+                    this.files.incrementAndGet();
+                    this.bytes.addAndGet(attributes.size());
+                }
+                onProgress(this.files.get(), this.directories.get(), this.bytes.get());
+            });
+        } catch (InterruptedScanException ex) {
+            throw (InterruptedException) ex.getCause();
+        }
+        this.finished = true;
+        onFinished();
+    }
+
+    /**
+     * Starts a daemon thread scanning the paths in the background.
+     *
+     * @return the started thread, interrupt it to stop the scan
+     */
+    public Thread scanInBackground() {
+        Thread thread = new Thread(() -> {
+            try {
+                scan();
+            } catch (InterruptedException ex) {
+                //stopped
+            }
+        }, "Path Scanner");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+}
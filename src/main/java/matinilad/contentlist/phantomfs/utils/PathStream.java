@@ -27,18 +27,29 @@
 package matinilad.contentlist.phantomfs.utils;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 /**
  *
@@ -46,6 +57,12 @@ import java.util.stream.Stream;
  */
 public class PathStream {
 
+    /**
+     * How many directory listings may be fetched ahead of the consumer per
+     * thread, bounding the memory used by the parallel mode.
+     */
+    public static final int PREFETCH_PER_THREAD = 16;
+
     private static final boolean LINUX_OS;
 
     static {
@@ -63,11 +80,17 @@ public class PathStream {
         private final Path root;
         private final Path path;
         private final IOException error;
+        private final BasicFileAttributes attributes;
 
-        public Entry(Path root, Path path, IOException error) {
+        public Entry(Path root, Path path, IOException error, BasicFileAttributes attributes) {
             this.root = root;
             this.path = path;
             this.error = error;
+            this.attributes = attributes;
+        }
+
+        public Entry(Path root, Path path, IOException error) {
+            this(root, path, error, null);
         }
 
         public Path getRoot() {
@@ -81,10 +104,47 @@ public class PathStream {
         public IOException getError() {
             return error;
         }
+
+        /**
+         * @return the attributes of the path read while listing its parent, null on errors
+         */
+        public BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+    }
+
+    private static class Child {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+        private final IOException error;
+
+        public Child(Path path, BasicFileAttributes attributes, IOException error) {
+            this.path = path;
+            this.attributes = attributes;
+            this.error = error;
+        }
+    }
+
+    private static class Listing {
+
+        private final List<Child> children;
+        private final IOException error;
+
+        public Listing(List<Child> children, IOException error) {
+            this.children = children;
+            this.error = error;
+        }
     }
 
     private final Path[] inputs;
     private final boolean hiddenFilesEnabled;
+    
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    private int parallelism = 1;
+    
+    private ExecutorService executor = null;
+    private final Map<Path, Future<Listing>> prefetched = new HashMap<>();
 
     public PathStream(Path[] input, boolean hiddenFilesEnabled) {
         this.inputs = Objects.requireNonNull(input, "inputs is null").clone();
@@ -102,118 +162,278 @@ public class PathStream {
         return hiddenFilesEnabled;
     }
 
-    private List<Path> preprocess(List<Path> input, Consumer<Entry> consumer) {
-        List<Path> realFiles = new ArrayList<>();
-        for (Path e : input) {
-            Path real;
-            try {
-                real = e.toRealPath();
-            } catch (IOException ex) {
-                consumer.accept(new Entry(null, e, ex));
-                continue;
-            }
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many directories may be listed at the same time, with more
+     * than one thread the listings of directories not yet reached are fetched
+     * in the background; the consumer is still called from the streaming
+     * thread in the exact same order.
+     *
+     * @param parallelism The number of listing threads, 1 for sequential
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1");
+        }
+        this.parallelism = parallelism;
+    }
 
-            Path parent = real.getParent();
-            if (parent == null) {
-                try {
-                    List<Path> files = new ArrayList<>();
-                    try (Stream<Path> stream = Files.list(real)) {
-                        stream.forEach((c) -> {
-                            files.add(c);
-                        });
+    private static ThreadFactory newThreadFactory() {
+        //virtual threads when the runtime has them, listings are mostly waiting
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "PathStream Listing ", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            AtomicInteger counter = new AtomicInteger();
+            return (r) -> {
+                Thread t = new Thread(r, "PathStream Listing " + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+    private List<Child> list(Path directory) throws IOException {
+        List<Child> output = new ArrayList<>();
+        long start = this.metrics.start();
+        try {
+            //a walk with depth 1 hands out the attributes read by the listing
+            //itself (cached by the directory stream on some platforms)
+            //instead of a stat per child
+            Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    output.add(new Child(file, attrs, null));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (file.equals(directory)) {
+                        throw exc;
                     }
-                    realFiles.addAll(files);
-                } catch (IOException ex) {
-                    consumer.accept(new Entry(null, real, ex));
-                    continue;
-                } catch (UncheckedIOException ex) {
-                    consumer.accept(new Entry(null, real, ex.getCause()));
-                    continue;
+                    output.add(new Child(file, null, exc));
+                    return FileVisitResult.CONTINUE;
                 }
-                continue;
-            }
 
-            realFiles.add(real);
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.LIST, start);
+        }
+        return output;
+    }
+
+    private Child resolve(Path path) {
+        long start = this.metrics.start();
+        try {
+            Path real = path.toRealPath();
+            return new Child(real, Files.readAttributes(real, BasicFileAttributes.class), null);
+        } catch (IOException ex) {
+            return new Child(path, null, ex);
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.ATTRIBUTES, start);
+        }
+    }
+
+    private Child resolveListed(Child child) {
+        if (child.error != null || !child.attributes.isSymbolicLink()) {
+            //the parent is a real path, so is the child unless it is a link
+            return child;
+        }
+        return resolve(child.path);
+    }
+
+    private boolean isHidden(Child child) throws IOException {
+        if (child.attributes instanceof DosFileAttributes dos) {
+            return dos.isHidden();
+        }
+        long start = this.metrics.start();
+        try {
+            return Files.isHidden(child.path);
+        } finally {
+            this.metrics.stop(OperationMetrics.Timer.ATTRIBUTES, start);
         }
+    }
 
-        List<Path> directories = new ArrayList<>();
-        List<Path> files = new ArrayList<>();
+    private List<Child> preprocess(List<Child> input, Consumer<Entry> consumer) {
+        List<Child> directories = new ArrayList<>();
+        List<Child> files = new ArrayList<>();
+
+        for (Child child : input) {
+            if (child.error != null) {
+                consumer.accept(new Entry(null, child.path, child.error));
+                continue;
+            }
 
-        for (Path real : realFiles) {
             try {
-                if (!isHiddenFilesEnabled() && Files.isHidden(real)) {
-                    consumer.accept(new Entry(null, real, new IOException("hidden file")));
+                if (!isHiddenFilesEnabled() && isHidden(child)) {
+                    consumer.accept(new Entry(null, child.path, new IOException("hidden file")));
                     continue;
                 }
             } catch (IOException ex) {
-                consumer.accept(new Entry(null, real, ex));
+                consumer.accept(new Entry(null, child.path, ex));
                 continue;
             }
 
-            if (Files.isDirectory(real)) {
-                directories.add(real);
-            } else if (Files.isRegularFile(real)) {
-                files.add(real);
+            if (child.attributes.isDirectory()) {
+                directories.add(child);
+            } else if (child.attributes.isRegularFile()) {
+                files.add(child);
             } else {
-                consumer.accept(new Entry(null, real, new IOException("not a file or directory")));
+                consumer.accept(new Entry(null, child.path, new IOException("not a file or directory")));
             }
         }
 
-        Comparator<Path> comparator = (o1, o2) -> {
+        Comparator<Child> comparator = (o1, o2) -> {
             return String.CASE_INSENSITIVE_ORDER
-                    .compare(o1.getFileName().toString(), o2.getFileName().toString());
+                    .compare(o1.path.getFileName().toString(), o2.path.getFileName().toString());
         };
 
         files.sort(comparator);
         directories.sort(comparator);
 
-        List<Path> output = new ArrayList<>();
+        List<Child> output = new ArrayList<>();
         output.addAll(directories);
         output.addAll(files);
         return output;
     }
 
-    private void process(Consumer<Entry> consumer, Path root, Path path) {
-        consumer.accept(new Entry(root, path, null));
+    private Listing fetch(Path directory) {
+        List<Child> children;
+        try {
+            children = list(directory);
+        } catch (IOException ex) {
+            return new Listing(new ArrayList<>(), ex);
+        }
+        for (int i = 0; i < children.size(); i++) {
+            children.set(i, resolveListed(children.get(i)));
+        }
+        return new Listing(children, null);
+    }
 
-        if (Files.isDirectory(path)) {
-            List<Path> files = new ArrayList<>();
-            try {
-                try (Stream<Path> stream = Files.list(path)) {
-                    stream.forEach((c) -> {
-                        files.add(c);
-                    });
-                }
-            } catch (IOException ex) {
-                files.clear();
-                consumer.accept(new Entry(null, path, ex));
-            } catch (UncheckedIOException ex) {
-                files.clear();
-                consumer.accept(new Entry(null, path, ex.getCause()));
+    private void prefetch(List<Child> children) {
+        if (this.executor == null) {
+            return;
+        }
+        int window = this.parallelism * PREFETCH_PER_THREAD;
+        for (Child c : children) {
+            if (this.prefetched.size() >= window) {
+                return;
+            }
+            if (c.attributes.isDirectory()) {
+                this.prefetched.put(c.path, this.executor.submit(() -> fetch(c.path)));
             }
-            
-            List<Path> preprocessed = preprocess(files, consumer);
-            for (Path p : preprocessed) {
-                process(consumer, root, p);
+        }
+    }
+
+    private Listing take(Path directory) {
+        Future<Listing> future = this.prefetched.remove(directory);
+        if (future == null) {
+            return fetch(directory);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            //the consumer decides what to do with the interrupt
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return fetch(directory);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            if (ex.getCause() instanceof Error e) {
+                throw e;
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private List<Child> listChildren(Path directory, Consumer<Entry> consumer) {
+        Listing listing = take(directory);
+        if (listing.error != null) {
+            consumer.accept(new Entry(null, directory, listing.error));
+        }
+        return listing.children;
+    }
+
+    private void process(Consumer<Entry> consumer, Path root, Child child) {
+        consumer.accept(new Entry(root, child.path, null, child.attributes));
+
+        if (child.attributes.isDirectory()) {
+            List<Child> preprocessed = preprocess(listChildren(child.path, consumer), consumer);
+            prefetch(preprocessed);
+            for (Child c : preprocessed) {
+                process(consumer, root, c);
             }
         }
     }
 
     public void stream(Consumer<Entry> consumer) {
+        if (this.parallelism > 1) {
+            this.executor = Executors.newFixedThreadPool(this.parallelism, newThreadFactory());
+        }
+        try {
+            streamInputs(consumer);
+        } finally {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+                this.executor = null;
+            }
+            this.prefetched.clear();
+        }
+    }
+
+    private void streamInputs(Consumer<Entry> consumer) {
         Set<String> names = new HashSet<>();
 
-        List<Path> preprocessed = preprocess(Arrays.asList(this.inputs), consumer);
-        for (Path e : preprocessed) {
-            String name = e.getFileName().toString();
+        List<Child> resolved = new ArrayList<>();
+        for (Path input : this.inputs) {
+            Child child = resolve(input);
+            if (child.error == null && child.path.getParent() == null) {
+                resolved.addAll(listChildren(child.path, consumer));
+                continue;
+            }
+            resolved.add(child);
+        }
+
+        List<Child> preprocessed = preprocess(resolved, consumer);
+        prefetch(preprocessed);
+        for (Child e : preprocessed) {
+            String name = e.path.getFileName().toString();
             if (!LINUX_OS) {
                 name = name.toLowerCase();
             }
             if (!names.add(name)) {
-                consumer.accept(new Entry(null, e, new IOException("duplicated filename")));
+                Future<Listing> future = this.prefetched.remove(e.path);
+                if (future != null) {
+                    future.cancel(true);
+                }
+                consumer.accept(new Entry(null, e.path, new IOException("duplicated filename")));
                 continue;
             }
 
-            process(consumer, e.getParent(), e);
+            process(consumer, e.path.getParent(), e);
         }
     }
 }
@@ -0,0 +1,388 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the bytes and files per second read by a job, shared
+ * by all of its worker threads.
+ * <p>
+ * The limits can be changed while the job runs and a schedule of time windows
+ * can slow down or pause the job at certain times of the day, a window
+ * multiplies the limits by its factor, a factor of zero pauses the job.
+ *
+ * @author Cien
+ */
+public class RateLimiter {
+
+    /**
+     * Time window of a schedule, written as
+     * {@code [days@]HH:mm-HH:mm=factor}, for example
+     * {@code mon-fri@09:00-18:00=0.25}. A window ending before it starts
+     * wraps around midnight, the days are the days it starts on.
+     */
+    public static class Window {
+
+        private final Set<DayOfWeek> days;
+        private final LocalTime start;
+        private final LocalTime end;
+        private final double factor;
+
+        public Window(Set<DayOfWeek> days, LocalTime start, LocalTime end, double factor) {
+            Objects.requireNonNull(days, "days is null");
+            this.start = Objects.requireNonNull(start, "start is null");
+            this.end = Objects.requireNonNull(end, "end is null");
+            if (!(factor >= 0.0)) {
+                throw new IllegalArgumentException("factor is negative");
+            }
+            this.days = (days.isEmpty() ? EnumSet.allOf(DayOfWeek.class) : EnumSet.copyOf(days));
+            this.factor = factor;
+        }
+
+        public Set<DayOfWeek> getDays() {
+            return EnumSet.copyOf(this.days);
+        }
+
+        public LocalTime getStart() {
+            return start;
+        }
+
+        public LocalTime getEnd() {
+            return end;
+        }
+
+        public double getFactor() {
+            return factor;
+        }
+
+        public boolean contains(LocalDateTime time) {
+            LocalTime t = time.toLocalTime();
+            DayOfWeek day = time.getDayOfWeek();
+            if (this.start.isBefore(this.end)) {
+                return this.days.contains(day) && !t.isBefore(this.start) && t.isBefore(this.end);
+            }
+            if (!t.isBefore(this.start)) {
+                return this.days.contains(day);
+            }
+            return t.isBefore(this.end) && this.days.contains(day.minus(1));
+        }
+
+        private static DayOfWeek parseDay(String s) {
+            String lower = s.trim().toLowerCase(Locale.ROOT);
+            if (lower.length() >= 3) {
+                for (DayOfWeek d : DayOfWeek.values()) {
+                    if (d.name().toLowerCase(Locale.ROOT).startsWith(lower)) {
+                        return d;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Not a day: " + s);
+        }
+
+        private static Set<DayOfWeek> parseDays(String s) {
+            Set<DayOfWeek> set = EnumSet.noneOf(DayOfWeek.class);
+            int dash = s.indexOf('-');
+            if (dash == -1) {
+                set.add(parseDay(s));
+                return set;
+            }
+            DayOfWeek day = parseDay(s.substring(0, dash));
+            DayOfWeek last = parseDay(s.substring(dash + 1));
+            set.add(day);
+            while (!day.equals(last)) {
+                day = day.plus(1);
+                set.add(day);
+            }
+            return set;
+        }
+
+        public static Window parse(String s) {
+            Objects.requireNonNull(s, "s is null");
+            String window = s.trim();
+            Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+            int at = window.indexOf('@');
+            if (at != -1) {
+                days = parseDays(window.substring(0, at));
+                window = window.substring(at + 1);
+            }
+            int equals = window.indexOf('=');
+            int dash = window.indexOf('-');
+            if (equals == -1 || dash == -1 || dash > equals) {
+                throw new IllegalArgumentException("Not a window: " + s);
+            }
+            try {
+                LocalTime start = LocalTime.parse(window.substring(0, dash).trim());
+                LocalTime end = LocalTime.parse(window.substring(dash + 1, equals).trim());
+                double factor = Double.parseDouble(window.substring(equals + 1).trim());
+                return new Window(days, start, end, factor);
+            } catch (DateTimeParseException | NumberFormatException ex) {
+                throw new IllegalArgumentException("Not a window: " + s, ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.days + "@" + this.start + "-" + this.end + "=" + this.factor;
+        }
+    }
+
+    /**
+     * Parses a comma separated list of windows.
+     *
+     * @param s The schedule, not null
+     * @return the windows, the first window containing a time is used
+     * @throws IllegalArgumentException if a window is invalid
+     */
+    public static Window[] parseSchedule(String s) {
+        Objects.requireNonNull(s, "s is null");
+        List<Window> windows = new ArrayList<>();
+        for (String w : s.split(",")) {
+            if (!w.isBlank()) {
+                windows.add(Window.parse(w));
+            }
+        }
+        return windows.toArray(Window[]::new);
+    }
+
+    /**
+     * Listens to the waits of a caller, to tell a throttled or paused file
+     * from one that stalled.
+     */
+    public interface WaitListener {
+
+        /**
+         * @param waiting true when the caller starts waiting, false when it
+         * stops
+         */
+        void onWait(boolean waiting);
+    }
+
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static class Bucket {
+
+        double tokens = 0.0;
+        long lastRefill = System.nanoTime();
+
+        void refill(double rate) {
+            long now = System.nanoTime();
+            double added = ((now - this.lastRefill) / 1E9) * rate;
+            this.lastRefill = now;
+            //allows a burst of at most one second
+            this.tokens = Math.min(rate, this.tokens + added);
+        }
+    }
+
+    private final Bucket bytes = new Bucket();
+    private final Bucket files = new Bucket();
+
+    private volatile long bytesPerSecond = 0;
+    private volatile long filesPerSecond = 0;
+    private volatile boolean paused = false;
+    private volatile Window[] schedule = new Window[0];
+    private volatile OperationMetrics metrics = OperationMetrics.DISABLED;
+
+    public RateLimiter() {
+
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Sets the bytes per second, can be called while the job runs.
+     *
+     * @param bytesPerSecond The bytes per second or zero for no limit
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytes per second is negative");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getFilesPerSecond() {
+        return filesPerSecond;
+    }
+
+    /**
+     * Sets the files per second, can be called while the job runs.
+     *
+     * @param filesPerSecond The files per second or zero for no limit
+     */
+    public void setFilesPerSecond(long filesPerSecond) {
+        if (filesPerSecond < 0) {
+            throw new IllegalArgumentException("files per second is negative");
+        }
+        this.filesPerSecond = filesPerSecond;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public Window[] getSchedule() {
+        return schedule.clone();
+    }
+
+    public void setSchedule(Window[] schedule) {
+        Objects.requireNonNull(schedule, "schedule is null");
+        for (int i = 0; i < schedule.length; i++) {
+            if (schedule[i] == null) {
+                throw new NullPointerException("window at index " + i + " is null");
+            }
+        }
+        this.schedule = schedule.clone();
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = OperationMetrics.orDisabled(metrics);
+    }
+
+    /**
+     * @return the factor of the schedule at the current time, zero if paused
+     */
+    public double getCurrentFactor() {
+        if (this.paused) {
+            return 0.0;
+        }
+        Window[] windows = this.schedule;
+        if (windows.length == 0) {
+            return 1.0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Window w : windows) {
+            if (w.contains(now)) {
+                return w.getFactor();
+            }
+        }
+        return 1.0;
+    }
+
+    private void acquire(Bucket bucket, long amount, boolean forBytes, WaitListener listener) throws InterruptedException {
+        OperationMetrics m = this.metrics;
+        long time = 0;
+        boolean waited = false;
+        boolean taken = false;
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                double factor = getCurrentFactor();
+                long limit = (forBytes ? this.bytesPerSecond : this.filesPerSecond);
+                long wait;
+                if (factor <= 0.0) {
+                    wait = MAX_WAIT_NANOS;
+                } else if (limit == 0) {
+                    return;
+                } else {
+                    double rate = limit * factor;
+                    synchronized (bucket) {
+                        bucket.refill(rate);
+                        if (!taken) {
+                            bucket.tokens -= amount;
+                            taken = true;
+                        }
+                        if (bucket.tokens >= 0.0) {
+                            return;
+                        }
+                        wait = Math.min(MAX_WAIT_NANOS, (long) ((-bucket.tokens / rate) * 1E9));
+                    }
+                }
+                if (!waited) {
+                    time = m.start();
+                    waited = true;
+                    if (listener != null) {
+                        listener.onWait(true);
+                    }
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.max(wait, 1));
+            }
+        } finally {
+            if (waited) {
+                m.stop(OperationMetrics.Timer.THROTTLE, time);
+                if (listener != null) {
+                    listener.onWait(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the bytes can be read.
+     *
+     * @param amount The amount of bytes
+     * @param listener The listener of the wait or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireBytes(long amount, WaitListener listener) throws InterruptedException {
+        if (amount <= 0) {
+            return;
+        }
+        acquire(this.bytes, amount, true, listener);
+    }
+
+    public void acquireBytes(long amount) throws InterruptedException {
+        acquireBytes(amount, null);
+    }
+
+    /**
+     * Waits until a file can be read.
+     *
+     * @param listener The listener of the wait or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireFile(WaitListener listener) throws InterruptedException {
+        acquire(this.files, 1, false, listener);
+    }
+
+    public void acquireFile() throws InterruptedException {
+        acquireFile(null);
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Input stream that reads ahead on the I/O executor, so the disk keeps
+ * reading while the caller is hashing.
+ * <p>
+ * A background reader fills a ring of reused buffers and hands them to the
+ * caller through two sequence counters, one written only by the reader and
+ * one only by the caller, so neither side takes a lock and each one only
+ * parks when the ring is full or empty.
+ *
+ * @author Cien
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int DEFAULT_BUFFERS = 4;
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final long PARK_NANOS = 1_000_000;
+
+    /**
+     * Opens a file, reading ahead if it is larger than two buffers and there
+     * is more than one processor, otherwise the file is read directly as the
+     * read ahead would only add overhead.
+     *
+     * @param file The file, not null
+     * @param size The expected size of the file
+     * @return the stream
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream open(Path file, long size) throws IOException {
+        return open(file, size, false);
+    }
+
+    /**
+     * Opens a file like {@link #open(java.nio.file.Path, long)}, optionally
+     * reading it with direct I/O.
+     *
+     * @param file The file, not null
+     * @param size The expected size of the file
+     * @param direct If the page cache should be bypassed, see
+     * {@link DirectInputStream}
+     * @return the stream
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream open(Path file, long size, boolean direct) throws IOException {
+        InputStream in = DirectInputStream.open(file, direct);
+        if (size <= DEFAULT_BUFFER_SIZE * 2L || Runtime.getRuntime().availableProcessors() < 2) {
+            return in;
+        }
+        return new ReadAheadInputStream(in, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+    }
+
+    private static class Slot {
+
+        final byte[] data;
+        int length = 0;
+        IOException error = null;
+
+        Slot(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    private final InputStream in;
+    private final Slot[] slots;
+    private final Future<?> task;
+
+    //written only by the reader
+    private volatile long produced = 0;
+    //written only by the caller
+    private volatile long consumed = 0;
+    private volatile boolean closed = false;
+    private volatile Thread reader = null;
+    private volatile Thread caller = null;
+
+    private final byte[] single = new byte[1];
+    private int position = 0;
+    private boolean endOfFile = false;
+
+    public ReadAheadInputStream(InputStream in, int buffers, int bufferSize) {
+        this.in = Objects.requireNonNull(in, "in is null");
+        if (buffers < 2) {
+            throw new IllegalArgumentException("at least two buffers are required");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("buffer size < 1");
+        }
+        this.slots = new Slot[buffers];
+        for (int i = 0; i < buffers; i++) {
+            this.slots[i] = new Slot(bufferSize);
+        }
+        this.task = TaskExecutor.shared().getIOExecutor().submit(this::readAhead);
+    }
+
+    private void readAhead() {
+        this.reader = Thread.currentThread();
+        while (!this.closed) {
+            long sequence = this.produced;
+            while (sequence - this.consumed >= this.slots.length) {
+                if (this.closed) {
+                    return;
+                }
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+
+            Slot slot = this.slots[(int) (sequence % this.slots.length)];
+            boolean last = false;
+            try {
+                int length = 0;
+                while (length < slot.data.length) {
+                    int r = this.in.read(slot.data, length, slot.data.length - length);
+                    if (r == -1) {
+                        last = true;
+                        break;
+                    }
+                    length += r;
+                }
+                slot.length = length;
+                slot.error = null;
+            } catch (IOException ex) {
+                slot.length = 0;
+                slot.error = ex;
+                last = true;
+            }
+            if (last && slot.length != 0) {
+                //publish the data first, the end of file goes in the next slot
+                this.produced = sequence + 1;
+                LockSupport.unpark(this.caller);
+                sequence++;
+                while (sequence - this.consumed >= this.slots.length) {
+                    if (this.closed) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                slot = this.slots[(int) (sequence % this.slots.length)];
+                slot.length = 0;
+                slot.error = null;
+            }
+            this.produced = sequence + 1;
+            LockSupport.unpark(this.caller);
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    private Slot current() throws IOException {
+        if (this.closed) {
+            throw new IOException("stream closed");
+        }
+        long sequence = this.consumed;
+        if (this.produced == sequence) {
+            this.caller = Thread.currentThread();
+            while (this.produced == sequence) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("interrupted");
+                }
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+        Slot slot = this.slots[(int) (sequence % this.slots.length)];
+        if (slot.error != null) {
+            throw slot.error;
+        }
+        return slot;
+    }
+
+    private void release() {
+        this.position = 0;
+        this.consumed = this.consumed + 1;
+        LockSupport.unpark(this.reader);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int r = read(this.single, 0, 1);
+        return (r == -1 ? -1 : (this.single[0] & 0xFF));
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (this.endOfFile) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        Slot slot = current();
+        if (slot.length == 0) {
+            this.endOfFile = true;
+            release();
+            return -1;
+        }
+        int toCopy = Math.min(len, slot.length - this.position);
+        System.arraycopy(slot.data, this.position, b, off, toCopy);
+        this.position += toCopy;
+        if (this.position == slot.length) {
+            release();
+        }
+        return toCopy;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.closed || this.endOfFile || this.produced == this.consumed) {
+            return 0;
+        }
+        Slot slot = this.slots[(int) (this.consumed % this.slots.length)];
+        return Math.max(0, slot.length - this.position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.task.cancel(false);
+        LockSupport.unpark(this.reader);
+        this.in.close();
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Short digests of a few regions spread over a file: the head, evenly spaced
+ * blocks in the middle and the tail.
+ * <p>
+ * Each region is hashed as {@code SHA-256(offset || data)} truncated to
+ * {@link #DIGEST_SIZE} bytes, with the offset as 8 big endian bytes. The
+ * offsets are rounded down to {@link DirectInputStream#MIN_ALIGNMENT} and only
+ * depend on the size of the file, the number of regions and the region size,
+ * so they are encoded as the region size (4 big endian bytes) followed by the
+ * digests. Checking them reads a tiny part of the file with positional reads
+ * and catches most corruption that is not limited to a few bytes.
+ *
+ * @author Cien
+ */
+public class SamplePoints {
+
+    public static final int DEFAULT_COUNT = 8;
+    public static final int DEFAULT_REGION_SIZE = 4096;
+    public static final int DIGEST_SIZE = 8;
+    /**
+     * The minimum number of regions when creating, the head and the tail, as
+     * a single region is the whole file.
+     */
+    public static final int MIN_COUNT = 2;
+    public static final int MAX_COUNT = 1024;
+
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * Computes the offsets of the regions of a file, the first one is at the
+     * start of the file and the last one ends at (or near) its end, a file
+     * smaller than the regions has less of them.
+     *
+     * @param size The size of the file
+     * @param count The maximum number of regions, at least 1, a single region
+     * is the whole file so new digests use at least {@link #MIN_COUNT}
+     * @param regionSize The size of each region, at least 1
+     * @return the offsets
+     */
+    public static long[] offsets(long size, int count, int regionSize) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size is negative");
+        }
+        if (count < 1 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("count must be between 1 and " + MAX_COUNT);
+        }
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("region size must be at least 1");
+        }
+        if (size <= regionSize) {
+            return new long[]{0};
+        }
+        long last = size - regionSize;
+        //regions at least a alignment apart, so no two of them start at the same offset
+        long regions = Math.min(count, (size + regionSize - 1) / regionSize);
+        regions = Math.min(regions, last / DirectInputStream.MIN_ALIGNMENT + 1);
+        if (regions == 1) {
+            return new long[]{0};
+        }
+        long[] offsets = new long[(int) regions];
+        for (int i = 0; i < regions; i++) {
+            long offset = (long) ((double) last * i / (regions - 1));
+            offsets[i] = (offset / DirectInputStream.MIN_ALIGNMENT) * DirectInputStream.MIN_ALIGNMENT;
+        }
+        return offsets;
+    }
+
+    /**
+     * @param offsets The offsets of the regions
+     * @param index The index of the region
+     * @param size The size of the file
+     * @param regionSize The size of each region
+     * @return the length of the region, the last one always ends at the end
+     * of the file
+     */
+    public static long regionLength(long[] offsets, int index, long size, int regionSize) {
+        if (index == offsets.length - 1) {
+            return Math.max(0, size - offsets[index]);
+        }
+        return Math.max(0, Math.min(regionSize, size - offsets[index]));
+    }
+
+    public static byte[] encode(int regionSize, byte[][] digests) {
+        ByteBuffer encoded = ByteBuffer.allocate(HEADER_SIZE + digests.length * DIGEST_SIZE);
+        encoded.putInt(regionSize);
+        for (byte[] d : digests) {
+            encoded.put(d, 0, DIGEST_SIZE);
+        }
+        return encoded.array();
+    }
+
+    public static boolean isValid(byte[] encoded) {
+        if (encoded == null || encoded.length < HEADER_SIZE + DIGEST_SIZE
+                || (encoded.length - HEADER_SIZE) % DIGEST_SIZE != 0
+                || (encoded.length - HEADER_SIZE) / DIGEST_SIZE > MAX_COUNT) {
+            return false;
+        }
+        return regionSizeOf(encoded) > 0;
+    }
+
+    public static int regionSizeOf(byte[] encoded) {
+        return ByteBuffer.wrap(encoded).getInt(0);
+    }
+
+    public static byte[][] decodeDigests(byte[] encoded) {
+        if (!isValid(encoded)) {
+            throw new IllegalArgumentException("invalid sample points");
+        }
+        byte[][] digests = new byte[(encoded.length - HEADER_SIZE) / DIGEST_SIZE][];
+        for (int i = 0; i < digests.length; i++) {
+            int offset = HEADER_SIZE + i * DIGEST_SIZE;
+            digests[i] = Arrays.copyOfRange(encoded, offset, offset + DIGEST_SIZE);
+        }
+        return digests;
+    }
+
+    /**
+     * Compares two encoded sample points of a file and returns the byte
+     * ranges of the regions that differ.
+     *
+     * @param expected The expected sample points, valid
+     * @param found The sample points found, valid
+     * @param size The size of the file
+     * @return the ranges as {start, end} pairs, end exclusive
+     */
+    public static long[][] differentRanges(byte[] expected, byte[] found, long size) {
+        byte[][] expectedDigests = decodeDigests(expected);
+        byte[][] foundDigests = decodeDigests(found);
+        int regionSize = regionSizeOf(expected);
+        long[] offsets = offsets(size, expectedDigests.length, regionSize);
+        List<long[]> ranges = new ArrayList<>();
+        for (int i = 0; i < offsets.length; i++) {
+            if (i < foundDigests.length && Arrays.equals(expectedDigests[i], foundDigests[i])) {
+                continue;
+            }
+            long end = offsets[i] + Math.max(regionLength(offsets, i, size, regionSize), 1);
+            ranges.add(new long[]{offsets[i], end});
+        }
+        return ranges.toArray(long[][]::new);
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private RateLimiter rateLimiter = null;
+    private RateLimiter.WaitListener waitListener = null;
+    private long bytesRead = 0;
+
+    /**
+     * @param channel A channel open for reading, not null
+     * @param size The size of the file
+     */
+    public SamplePoints(FileChannel channel, long size) {
+        this.channel = Objects.requireNonNull(channel, "channel is null");
+        this.size = size;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RateLimiter.WaitListener getWaitListener() {
+        return waitListener;
+    }
+
+    /**
+     * @param waitListener The listener of the waits on the limiter or null
+     */
+    public void setWaitListener(RateLimiter.WaitListener waitListener) {
+        this.waitListener = waitListener;
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private byte[] digestRegion(MessageDigest digest, ByteBuffer buffer, long offset, long length) throws IOException, InterruptedException {
+        digest.update(ByteBuffer.allocate(8).putLong(0, offset));
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = end - position;
+            //aligned so the channel may be opened with direct I/O
+            long aligned = ((remaining + DirectInputStream.MIN_ALIGNMENT - 1) / DirectInputStream.MIN_ALIGNMENT) * DirectInputStream.MIN_ALIGNMENT;
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), aligned));
+            int r = this.channel.read(buffer, position);
+            if (r <= 0) {
+                throw new IOException("file is smaller than expected");
+            }
+            buffer.flip();
+            if (buffer.remaining() > remaining) {
+                buffer.limit((int) remaining);
+            }
+            position += buffer.remaining();
+            this.bytesRead += buffer.remaining();
+            if (this.rateLimiter != null) {
+                this.rateLimiter.acquireBytes(buffer.remaining(), this.waitListener);
+            }
+            digest.update(buffer);
+        }
+        return Arrays.copyOf(digest.digest(), DIGEST_SIZE);
+    }
+
+    /**
+     * Reads and hashes the regions of the file.
+     *
+     * @param count The maximum number of regions
+     * @param regionSize The size of each region
+     * @return the encoded sample points
+     * @throws IOException if a read fails
+     * @throws InterruptedException if interrupted
+     */
+    public byte[] digest(int count, int regionSize) throws IOException, InterruptedException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        long[] offsets = offsets(this.size, count, regionSize);
+        int bufferSize = (int) Math.min(
+                ((regionSize + DirectInputStream.MIN_ALIGNMENT - 1L) / DirectInputStream.MIN_ALIGNMENT) * DirectInputStream.MIN_ALIGNMENT,
+                DirectInputStream.BUFFER_SIZE
+        );
+        ByteBuffer buffer = DirectInputStream.allocateAligned(bufferSize, DirectInputStream.MIN_ALIGNMENT);
+        byte[][] digests = new byte[offsets.length][];
+        for (int i = 0; i < offsets.length; i++) {
+            digests[i] = digestRegion(digest, buffer, offsets[i], regionLength(offsets, i, this.size, regionSize));
+        }
+        return encode(regionSize, digests);
+    }
+
+}
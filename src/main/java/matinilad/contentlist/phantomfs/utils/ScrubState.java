@@ -0,0 +1,278 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import matinilad.contentlist.phantomfs.entry.FileEntry;
+import matinilad.contentlist.phantomfs.entry.FileEntryType;
+
+/**
+ * Persistent last verified time of the entries of a list, used to validate
+ * a list a part at a time (a rolling scrub).
+ * <p>
+ * Each run selects the least recently verified files that fit in a byte
+ * budget, so running it with a budget of the total size of the list divided
+ * by N covers the whole list every N runs. The state is kept as a 64 bit hash
+ * of the entry path and a timestamp, 16 bytes per file, and is rewritten
+ * atomically so a interrupted run keeps what was saved before it.
+ *
+ * @author Cien
+ */
+public class ScrubState {
+
+    public static final String DIRECTORY_NAME = "scrub";
+    public static final long CHECKPOINT_INTERVAL = 30 * 1000;
+
+    private static final int MAGIC = 0x434C5353;
+    private static final int VERSION = 1;
+
+    private static long hash(String s) {
+        //FNV-1a
+        long h = 0xcbf29ce484222325L;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            h ^= (b & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long keyOf(FileEntry entry) {
+        return hash(entry.getPath().toString());
+    }
+
+    /**
+     * Returns the state file of a list validated against a root directory,
+     * the same list validated against different roots has different states.
+     *
+     * @param directory The directory of the states, not null
+     * @param list The list file, not null
+     * @param root The root directory, not null
+     * @return the state file
+     */
+    public static Path fileFor(Path directory, Path list, Path root) {
+        Objects.requireNonNull(directory, "directory is null");
+        Objects.requireNonNull(list, "list is null");
+        Objects.requireNonNull(root, "root is null");
+        long h = hash(list.toAbsolutePath().normalize().toString() + "\n" + root.toAbsolutePath().normalize().toString());
+        return directory.resolve(String.format("%016x.bin", h));
+    }
+
+    /**
+     * Opens a state file, a missing, invalid or truncated file is read as a
+     * empty state.
+     *
+     * @param file The state file, not null
+     * @return the state
+     * @throws IOException if the file exists but can't be read
+     */
+    public static ScrubState open(Path file) throws IOException {
+        Objects.requireNonNull(file, "file is null");
+        ScrubState state = new ScrubState(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return state;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                long time = in.readLong();
+                state.verified.put(key, time);
+            }
+        } catch (NoSuchFileException | EOFException ex) {
+            //a new or incomplete state
+        }
+        return state;
+    }
+
+    private final Path file;
+    private final Map<Long, Long> verified = new HashMap<>();
+    private long lastSave = System.currentTimeMillis();
+    private long filesVerified = 0;
+    private long bytesVerified = 0;
+
+    private ScrubState(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @param entry The entry, not null
+     * @return the time the entry was last verified in milliseconds or 0 if never
+     */
+    public synchronized long getLastVerified(FileEntry entry) {
+        Long time = this.verified.get(keyOf(entry));
+        return (time == null ? 0 : time);
+    }
+
+    public synchronized void setVerified(FileEntry entry, long time) {
+        this.verified.put(keyOf(entry), time);
+        if (entry.getType().equals(FileEntryType.FILE)) {
+            this.filesVerified++;
+            this.bytesVerified += entry.getSize();
+        }
+    }
+
+    /**
+     * @return the number of files verified since the state was opened
+     */
+    public synchronized long getFilesVerified() {
+        return filesVerified;
+    }
+
+    /**
+     * @return the size of the files verified since the state was opened
+     */
+    public synchronized long getBytesVerified() {
+        return bytesVerified;
+    }
+
+    /**
+     * Forgets the entries that are not in the list anymore.
+     *
+     * @param entries All the entries of the list, not null
+     */
+    public synchronized void retain(List<FileEntry> entries) {
+        Set<Long> keys = new HashSet<>();
+        for (FileEntry e : entries) {
+            keys.add(keyOf(e));
+        }
+        this.verified.keySet().retainAll(keys);
+    }
+
+    /**
+     * Selects the entries to validate in a run, the files are sorted by the
+     * time they were last verified (never verified first, then the list
+     * order) and taken until the budget is reached, the last one may go over
+     * it so every run covers at least the budget. Directories are always
+     * selected as they are not read.
+     *
+     * @param entries All the entries of the list, not null
+     * @param byteBudget The maximum number of bytes of the selected files
+     * @return the selected entries, least recently verified first
+     */
+    public synchronized List<FileEntry> select(List<FileEntry> entries, long byteBudget) {
+        //looked up once, not on every comparison
+        long[] times = new long[entries.size()];
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = getLastVerified(entries.get(i));
+            order[i] = i;
+        }
+        //stable, so entries verified at the same time keep the list order
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        List<FileEntry> selected = new ArrayList<>();
+        long bytes = 0;
+        for (int i : order) {
+            FileEntry e = entries.get(i);
+            if (!e.getType().equals(FileEntryType.FILE)) {
+                selected.add(e);
+                continue;
+            }
+            if (bytes >= byteBudget) {
+                continue;
+            }
+            bytes += e.getSize();
+            selected.add(e);
+        }
+        return selected;
+    }
+
+    /**
+     * @param entries All the entries of the list, not null
+     * @return the oldest verification time of the files or 0 if a file was never verified
+     */
+    public synchronized long getOldest(List<FileEntry> entries) {
+        long oldest = Long.MAX_VALUE;
+        for (FileEntry e : entries) {
+            if (e.getType().equals(FileEntryType.FILE)) {
+                oldest = Math.min(oldest, getLastVerified(e));
+            }
+        }
+        return (oldest == Long.MAX_VALUE ? 0 : oldest);
+    }
+
+    /**
+     * Writes the state to a temporary file and moves it over the state file.
+     *
+     * @throws IOException if the state can't be written
+     */
+    public synchronized void save() throws IOException {
+        Path parent = this.file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, this.file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.verified.size());
+                for (Map.Entry<Long, Long> e : this.verified.entrySet()) {
+                    out.writeLong(e.getKey());
+                    out.writeLong(e.getValue());
+                }
+            }
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        this.lastSave = System.currentTimeMillis();
+    }
+
+    /**
+     * Saves the state if it was not saved in the last
+     * {@link #CHECKPOINT_INTERVAL} milliseconds.
+     *
+     * @throws IOException if the state can't be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (System.currentTimeMillis() - this.lastSave >= CHECKPOINT_INTERVAL) {
+            save();
+        }
+    }
+
+}
@@ -0,0 +1,792 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import matinilad.contentlist.phantomfs.PhantomPath;
+import matinilad.contentlist.phantomfs.entry.FileEntry;
+import matinilad.contentlist.phantomfs.entry.FileEntryType;
+import matinilad.contentlist.phantomfs.entry.FileEntryWriter;
+
+/**
+ * Generates synthetic file lists, the same settings and seed always generate the same entries in the same order.
+ *
+ * @author Cien
+ */
+public class SyntheticListGenerator {
+
+    public static final long BASE_TIME = 1_600_000_000_000L;
+    public static final long TIME_RANGE = 365L * 24L * 60L * 60L * 1000L;
+
+    public static final int DUPLICATE_POOL_SIZE = 4096;
+    public static final PhantomPath METADATA_TAG = PhantomPath.of("/generated/tag.txt");
+
+    private static final int CONTENT_BUFFER_SIZE = 65536;
+    private static final int ZERO_CHECKPOINT_BLOCKS = 1024;
+    private static final char[] NAME_CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final String[] EXTENSIONS = {"txt", "bin", "jpg", "png", "mp3", "mp4", "zip", "pdf"};
+
+    public static enum Distribution {
+        /**
+         * Always the maximum
+         */
+        FIXED,
+        /**
+         * Any value between the minimum and maximum with the same chance
+         */
+        UNIFORM,
+        /**
+         * Small values are more common, every power of two has the same chance
+         */
+        LOG_UNIFORM,
+        /**
+         * Values close to the middle are more common
+         */
+        NORMAL;
+
+        public long sample(Random random, long min, long max) {
+            if (max <= min) {
+                return min;
+            }
+            switch (this) {
+                case FIXED -> {
+                    return max;
+                }
+                case UNIFORM -> {
+                    return min + (long) (random.nextDouble() * (max - min + 1.0));
+                }
+                case LOG_UNIFORM -> {
+                    double bits = random.nextDouble() * (Math.log(max - min + 1.0) / Math.log(2.0));
+                    return Math.min(min + (long) Math.pow(2.0, bits) - 1, max);
+                }
+                case NORMAL -> {
+                    double middle = (min + max) / 2.0;
+                    double value = middle + random.nextGaussian() * ((max - min) / 6.0);
+                    return Math.min(Math.max(Math.round(value), min), max);
+                }
+            }
+            throw new IllegalStateException("unknown distribution");
+        }
+    }
+
+    public static enum Content {
+        /**
+         * Hashes and samples are random, files created on disk will not match the list
+         */
+        RANDOM_HASHES,
+        /**
+         * Files are filled with zeros, files created on disk are sparse and match the list
+         */
+        ZEROS,
+        /**
+         * Files are filled with pseudo random bytes, files created on disk match the list
+         */
+        PSEUDO_RANDOM
+    }
+
+    private static class Directory {
+
+        final PhantomPath path;
+        final int depth;
+        int files = 0;
+        int directories = 0;
+
+        Directory(PhantomPath path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+    }
+
+    private static class Item {
+
+        final FileEntry entry;
+        final long contentSeed;
+
+        Item(FileEntry entry, long contentSeed) {
+            this.entry = entry;
+            this.contentSeed = contentSeed;
+        }
+    }
+
+    private static class ContentInfo {
+
+        final long size;
+        final long contentSeed;
+        byte[] sha256 = null;
+        byte[] sample = null;
+
+        ContentInfo(long size, long contentSeed) {
+            this.size = size;
+            this.contentSeed = contentSeed;
+        }
+    }
+
+    private long seed = 0;
+    private int maxDepth = 8;
+    private int directoriesPerDirectory = 8;
+    private int filesPerDirectory = 16;
+    private int minNameLength = 4;
+    private int maxNameLength = 16;
+    private Distribution nameLengthDistribution = Distribution.UNIFORM;
+    private long minFileSize = 0;
+    private long maxFileSize = 16 * 1024 * 1024;
+    private Distribution fileSizeDistribution = Distribution.LOG_UNIFORM;
+    private double duplicateRatio = 0.0;
+    private double metadataRatio = 0.0;
+    private Content content = Content.RANDOM_HASHES;
+    private int sampleSize = 32;
+    private boolean sha256Enabled = true;
+    private String name = null;
+    private String author = null;
+    private String description = null;
+
+    public SyntheticListGenerator() {
+
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("max depth is negative");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public int getDirectoriesPerDirectory() {
+        return directoriesPerDirectory;
+    }
+
+    public void setDirectoriesPerDirectory(int directoriesPerDirectory) {
+        if (directoriesPerDirectory < 0) {
+            throw new IllegalArgumentException("directories per directory is negative");
+        }
+        this.directoriesPerDirectory = directoriesPerDirectory;
+    }
+
+    public int getFilesPerDirectory() {
+        return filesPerDirectory;
+    }
+
+    public void setFilesPerDirectory(int filesPerDirectory) {
+        if (filesPerDirectory < 0) {
+            throw new IllegalArgumentException("files per directory is negative");
+        }
+        this.filesPerDirectory = filesPerDirectory;
+    }
+
+    public int getMinNameLength() {
+        return minNameLength;
+    }
+
+    public int getMaxNameLength() {
+        return maxNameLength;
+    }
+
+    public void setNameLength(int minNameLength, int maxNameLength) {
+        if (minNameLength < 1) {
+            throw new IllegalArgumentException("min name length < 1");
+        }
+        if (maxNameLength < minNameLength) {
+            throw new IllegalArgumentException("max name length < min name length");
+        }
+        this.minNameLength = minNameLength;
+        this.maxNameLength = maxNameLength;
+    }
+
+    public Distribution getNameLengthDistribution() {
+        return nameLengthDistribution;
+    }
+
+    public void setNameLengthDistribution(Distribution nameLengthDistribution) {
+        this.nameLengthDistribution = Objects.requireNonNull(nameLengthDistribution, "name length distribution is null");
+    }
+
+    public long getMinFileSize() {
+        return minFileSize;
+    }
+
+    public void setMinFileSize(long minFileSize) {
+        if (minFileSize < 0) {
+            throw new IllegalArgumentException("min file size is negative");
+        }
+        this.minFileSize = minFileSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("max file size is negative");
+        }
+        this.maxFileSize = maxFileSize;
+    }
+
+    public Distribution getFileSizeDistribution() {
+        return fileSizeDistribution;
+    }
+
+    public void setFileSizeDistribution(Distribution fileSizeDistribution) {
+        this.fileSizeDistribution = Objects.requireNonNull(fileSizeDistribution, "file size distribution is null");
+    }
+
+    public double getDuplicateRatio() {
+        return duplicateRatio;
+    }
+
+    /**
+     * Sets the chance of a file having the same size and contents of a recently generated file.
+     *
+     * @param duplicateRatio the chance, from 0 to 1
+     */
+    public void setDuplicateRatio(double duplicateRatio) {
+        if (!(duplicateRatio >= 0.0 && duplicateRatio <= 1.0)) {
+            throw new IllegalArgumentException("duplicate ratio must be between 0 and 1");
+        }
+        this.duplicateRatio = duplicateRatio;
+    }
+
+    public double getMetadataRatio() {
+        return metadataRatio;
+    }
+
+    /**
+     * Sets the chance of a entry having a generated metadata value at {@link #METADATA_TAG}.
+     *
+     * @param metadataRatio the chance, from 0 to 1
+     */
+    public void setMetadataRatio(double metadataRatio) {
+        if (!(metadataRatio >= 0.0 && metadataRatio <= 1.0)) {
+            throw new IllegalArgumentException("metadata ratio must be between 0 and 1");
+        }
+        this.metadataRatio = metadataRatio;
+    }
+
+    public Content getContent() {
+        return content;
+    }
+
+    public void setContent(Content content) {
+        this.content = Objects.requireNonNull(content, "content is null");
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("sample size is negative");
+        }
+        this.sampleSize = sampleSize;
+    }
+
+    public boolean isSha256Enabled() {
+        return sha256Enabled;
+    }
+
+    public void setSha256Enabled(boolean sha256Enabled) {
+        this.sha256Enabled = sha256Enabled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    protected boolean onShouldInterrupt() {
+        return Thread.interrupted();
+    }
+
+    private void checkInterrupt() throws InterruptedException {
+        if (onShouldInterrupt()) {
+            throw new InterruptedException("interrupted");
+        }
+    }
+
+    private String randomName(Random random, int index) {
+        int length = (int) this.nameLengthDistribution.sample(random, this.minNameLength, this.maxNameLength);
+        StringBuilder b = new StringBuilder(length + 8);
+        for (int i = 0; i < length; i++) {
+            b.append(NAME_CHARACTERS[random.nextInt(NAME_CHARACTERS.length)]);
+        }
+        //the index keeps names unique inside a directory
+        b.append('_').append(Integer.toString(index, 36));
+        return b.toString();
+    }
+
+    private void randomTimestamps(Random random, FileEntry entry) {
+        long created = BASE_TIME + (long) (random.nextDouble() * TIME_RANGE);
+        long modified = created + (long) (random.nextDouble() * TIME_RANGE);
+        long access = modified + (long) (random.nextDouble() * TIME_RANGE);
+        entry.setCreated(created);
+        entry.setModified(modified);
+        entry.setAccess(access);
+    }
+
+    private void randomMetadata(Random random, FileEntry entry) {
+        //always draw the same amount of numbers, so the ratio does not change the rest of the list
+        double chance = random.nextDouble();
+        long value = random.nextLong();
+        if (chance < this.metadataRatio) {
+            entry.getMetadata().writeString(METADATA_TAG, Long.toString(value, 36));
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static MessageDigest cloneDigest(MessageDigest digest) throws IOException {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private void computeZeroHashes(ContentInfo info, List<MessageDigest> zeroStates) throws IOException {
+        info.sample = new byte[(int) Math.min(this.sampleSize, info.size)];
+        if (!this.sha256Enabled) {
+            return;
+        }
+        //the state after every ZERO_CHECKPOINT_BLOCKS buffers of zeros is kept, so a file only hashes the rest
+        byte[] zeros = new byte[CONTENT_BUFFER_SIZE];
+        if (zeroStates.isEmpty()) {
+            zeroStates.add(newDigest());
+        }
+        long blocks = info.size / CONTENT_BUFFER_SIZE;
+        long checkpoint = blocks / ZERO_CHECKPOINT_BLOCKS;
+        while (zeroStates.size() <= checkpoint) {
+            MessageDigest next = cloneDigest(zeroStates.get(zeroStates.size() - 1));
+            for (int i = 0; i < ZERO_CHECKPOINT_BLOCKS; i++) {
+                next.update(zeros);
+            }
+            zeroStates.add(next);
+        }
+        MessageDigest digest = cloneDigest(zeroStates.get((int) checkpoint));
+        for (long i = checkpoint * ZERO_CHECKPOINT_BLOCKS; i < blocks; i++) {
+            digest.update(zeros);
+        }
+        digest.update(zeros, 0, (int) (info.size % CONTENT_BUFFER_SIZE));
+        info.sha256 = digest.digest();
+    }
+
+    private void computeHashes(ContentInfo info) throws IOException {
+        int sample = (int) Math.min(this.sampleSize, info.size);
+        if (this.content == Content.RANDOM_HASHES) {
+            Random random = new Random(info.contentSeed);
+            if (this.sha256Enabled) {
+                info.sha256 = new byte[32];
+                random.nextBytes(info.sha256);
+            }
+            info.sample = new byte[sample];
+            random.nextBytes(info.sample);
+            return;
+        }
+
+        MessageDigest digest = newDigest();
+        Random random = new Random(info.contentSeed);
+        byte[] buffer = new byte[CONTENT_BUFFER_SIZE];
+        info.sample = new byte[sample];
+        long remaining = info.size;
+        boolean first = true;
+        while (remaining > 0) {
+            int length = (int) Math.min(buffer.length, remaining);
+            random.nextBytes(buffer);
+            if (first) {
+                System.arraycopy(buffer, 0, info.sample, 0, sample);
+                first = false;
+            }
+            if (!this.sha256Enabled) {
+                break;
+            }
+            digest.update(buffer, 0, length);
+            remaining -= length;
+        }
+        if (this.sha256Enabled) {
+            info.sha256 = digest.digest();
+        }
+    }
+
+    private class Generator implements Iterator<Item> {
+
+        private final long count;
+        private final boolean hashes;
+        private final Random random = new Random(getSeed());
+        private final Deque<Directory> stack = new ArrayDeque<>();
+        private final ContentInfo[] pool = new ContentInfo[DUPLICATE_POOL_SIZE];
+        private final List<MessageDigest> zeroStates = new ArrayList<>();
+
+        private long poolSize = 0;
+        private long generated = 0;
+        private Item next = null;
+
+        Generator(long count, boolean hashes) {
+            this.count = count;
+            this.hashes = hashes;
+        }
+
+        private ContentInfo newContent() {
+            double chance = this.random.nextDouble();
+            long contentSeed = this.random.nextLong();
+            if (this.poolSize > 0 && chance < getDuplicateRatio()) {
+                int index = (int) ((this.random.nextLong() & Long.MAX_VALUE) % Math.min(this.poolSize, this.pool.length));
+                return this.pool[index];
+            }
+            long size = getFileSizeDistribution().sample(this.random, getMinFileSize(), getMaxFileSize());
+            ContentInfo info = new ContentInfo(size, contentSeed);
+            this.pool[(int) (this.poolSize % this.pool.length)] = info;
+            this.poolSize++;
+            return info;
+        }
+
+        private Item newFile(Directory parent) throws IOException {
+            int index = parent.files++;
+            String fileName = randomName(this.random, index) + "." + EXTENSIONS[this.random.nextInt(EXTENSIONS.length)];
+            FileEntry entry = new FileEntry(parent.path.resolve(fileName), FileEntryType.FILE);
+            randomTimestamps(this.random, entry);
+            randomMetadata(this.random, entry);
+            ContentInfo info = newContent();
+            entry.setSize(info.size);
+            if (this.hashes) {
+                if (info.sample == null) {
+                    if (getContent() == Content.ZEROS) {
+                        computeZeroHashes(info, this.zeroStates);
+                    } else {
+                        computeHashes(info);
+                    }
+                }
+                entry.setSha256(info.sha256);
+                entry.setSample(info.sample);
+            }
+            return new Item(entry, info.contentSeed);
+        }
+
+        private Item newDirectory(Directory parent) {
+            int index = parent.directories++;
+            PhantomPath path = parent.path.resolve(randomName(this.random, index));
+            FileEntry entry = new FileEntry(path, FileEntryType.DIRECTORY);
+            randomTimestamps(this.random, entry);
+            randomMetadata(this.random, entry);
+            this.stack.push(new Directory(path, parent.depth + 1));
+            return new Item(entry, 0);
+        }
+
+        private Item findNext() throws IOException {
+            if (this.generated >= this.count) {
+                return null;
+            }
+            if (this.generated == 0) {
+                PhantomPath root = PhantomPath.of("/");
+                this.stack.push(new Directory(root, 0));
+                FileEntry entry = new FileEntry(root, FileEntryType.DIRECTORY);
+                randomTimestamps(this.random, entry);
+                if (getName() != null) {
+                    entry.getMetadata().writeString(FileEntry.METADATA_NAME, getName());
+                }
+                if (getAuthor() != null) {
+                    entry.getMetadata().writeString(FileEntry.METADATA_AUTHOR, getAuthor());
+                }
+                if (getDescription() != null) {
+                    entry.getMetadata().writeString(FileEntry.METADATA_DESCRIPTION, getDescription());
+                }
+                return new Item(entry, 0);
+            }
+            while (!this.stack.isEmpty()) {
+                Directory top = this.stack.peek();
+                if (top.files < getFilesPerDirectory()) {
+                    return newFile(top);
+                }
+                if (top.depth < getMaxDepth() && top.directories < getDirectoriesPerDirectory()) {
+                    return newDirectory(top);
+                }
+                this.stack.pop();
+            }
+            return null;
+        }
+
+        public boolean hasNextItem() throws IOException {
+            if (this.next == null) {
+                this.next = findNext();
+                if (this.next != null) {
+                    this.generated++;
+                }
+            }
+            return this.next != null;
+        }
+
+        public Item nextItem() throws IOException {
+            if (!hasNextItem()) {
+                throw new NoSuchElementException();
+            }
+            Item e = this.next;
+            this.next = null;
+            return e;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return hasNextItem();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public Item next() {
+            try {
+                return nextItem();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Generates entries depth first, starting with the root directory, directory sizes and counts are left as zero, use {@link #generate(long, boolean)} or {@link matinilad.contentlist.phantomfs.PhantomFileSystem#validate()} to compute them.
+     *
+     * <p>
+     * Less entries are generated if the tree is full before the count is reached.</p>
+     *
+     * @param count The maximum number of entries
+     * @return a lazy iterator over the entries
+     */
+    public Iterator<FileEntry> generate(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count is negative");
+        }
+        Generator generator = new Generator(count, true);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return generator.hasNext();
+            }
+
+            @Override
+            public FileEntry next() {
+                return generator.next().entry;
+            }
+        };
+    }
+
+    /**
+     * Generates entries depth first, like {@link #generate(long)}, but can compute the sizes and counts of directories by generating the list twice, only the directory totals are kept in memory.
+     *
+     * @param count The maximum number of entries
+     * @param directoryTotals If the sizes and counts of directories should be computed
+     * @return a lazy iterator over the entries
+     */
+    public Iterator<FileEntry> generate(long count, boolean directoryTotals) {
+        if (!directoryTotals) {
+            return generate(count);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("count is negative");
+        }
+
+        Map<PhantomPath, long[]> totals = new HashMap<>();
+        Generator first = new Generator(count, false);
+        while (first.hasNext()) {
+            FileEntry e = first.next().entry;
+            if (e.getPath().isRoot()) {
+                continue;
+            }
+            boolean directory = e.getType().equals(FileEntryType.DIRECTORY);
+            PhantomPath parent = e.getPath();
+            do {
+                parent = parent.getParent();
+                long[] t = totals.computeIfAbsent(parent, (p) -> new long[3]);
+                if (directory) {
+                    t[2]++;
+                } else {
+                    t[0] += e.getSize();
+                    t[1]++;
+                }
+            } while (!parent.isRoot());
+        }
+
+        Iterator<FileEntry> second = generate(count);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return second.hasNext();
+            }
+
+            @Override
+            public FileEntry next() {
+                FileEntry e = second.next();
+                long[] t = totals.remove(e.getPath());
+                if (t != null) {
+                    e.setSize(t[0]);
+                    e.setFiles((int) Math.min(t[1], Integer.MAX_VALUE));
+                    e.setDirectories((int) Math.min(t[2], Integer.MAX_VALUE));
+                }
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Writes the generated list, with directory totals, to a writer.
+     *
+     * @param writer The writer, not null
+     * @param count The maximum number of entries
+     * @return the number of entries written
+     * @throws IOException if writing failed
+     * @throws InterruptedException if interrupted
+     */
+    public long writeList(FileEntryWriter writer, long count) throws IOException, InterruptedException {
+        Objects.requireNonNull(writer, "writer is null");
+        long written = 0;
+        Iterator<FileEntry> it = generate(count, true);
+        while (it.hasNext()) {
+            checkInterrupt();
+            writer.writeFileEntry(it.next());
+            written++;
+        }
+        return written;
+    }
+
+    private void writeContent(Path path, long size, long contentSeed, byte[] buffer) throws IOException {
+        if (this.content == Content.ZEROS) {
+            try (SeekableByteChannel channel = Files.newByteChannel(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SPARSE)) {
+                if (size > 0) {
+                    //only the last byte is written, everything before it is a hole
+                    channel.position(size - 1);
+                    channel.write(ByteBuffer.wrap(new byte[1]));
+                }
+            }
+            return;
+        }
+        Random random = new Random(contentSeed);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int length = (int) Math.min(buffer.length, remaining);
+                random.nextBytes(buffer);
+                out.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    /**
+     * Creates the generated entries as real files and directories inside a directory, the files match the list unless the content is {@link Content#RANDOM_HASHES}, with {@link Content#ZEROS} the files are sparse.
+     *
+     * @param directory The directory, must exist
+     * @param count The maximum number of entries
+     * @return the number of entries created
+     * @throws IOException if a file could not be written
+     * @throws InterruptedException if interrupted
+     */
+    public long createTree(Path directory, long count) throws IOException, InterruptedException {
+        Objects.requireNonNull(directory, "directory is null");
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("not a directory: " + directory);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("count is negative");
+        }
+        byte[] buffer = new byte[CONTENT_BUFFER_SIZE];
+        long created = 0;
+        Generator generator = new Generator(count, false);
+        while (generator.hasNextItem()) {
+            checkInterrupt();
+            Item item = generator.nextItem();
+            FileEntry e = item.entry;
+            Path path = e.getPath().resolveToPath(directory);
+            if (e.getType().equals(FileEntryType.DIRECTORY)) {
+                Files.createDirectories(path);
+            } else {
+                writeContent(path, e.getSize(), item.contentSeed, buffer);
+                Files.setLastModifiedTime(path, FileTime.fromMillis(e.getModified()));
+            }
+            created++;
+        }
+        return created;
+    }
+
+}
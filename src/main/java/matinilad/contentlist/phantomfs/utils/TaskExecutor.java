@@ -0,0 +1,416 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Shared execution layer for the front ends.
+ * <p>
+ * Blocking file work (listing, metadata, reading) runs on the I/O executor,
+ * which uses virtual threads when the runtime has them and a cached pool of
+ * daemon threads otherwise. Hashing runs on the CPU executor, a pool bounded
+ * to the number of processors, so many concurrent files never oversubscribe
+ * the cores.
+ * <p>
+ * Work forked in a {@link Scope} never outlives it: closing the scope, a
+ * failure or the scope's interrupt hook (the same {@code onShouldInterrupt}
+ * hooks used by the factories and validators) cancels every unfinished task.
+ *
+ * @author Cien
+ */
+public class TaskExecutor {
+
+    private static final long INTERRUPT_POLL_MILLIS = 100;
+
+    private static volatile TaskExecutor shared = null;
+
+    public static TaskExecutor shared() {
+        TaskExecutor s = shared;
+        if (s == null) {
+            synchronized (TaskExecutor.class) {
+                s = shared;
+                if (s == null) {
+                    s = new TaskExecutor(Runtime.getRuntime().availableProcessors());
+                    shared = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    private static ThreadFactory newDaemonFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return (r) -> {
+            Thread t = new Thread(r, name + " " + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A forked task that knows when its thread left it, a cancelled future is
+     * done at once while the task may still be running.
+     */
+    private static class Fork<T> extends FutureTask<T> {
+
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        Fork(Callable<T> task) {
+            super(task);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                this.exited.countDown();
+            }
+        }
+    }
+
+    public class Scope implements AutoCloseable {
+
+        private final BooleanSupplier shouldInterrupt;
+        private final List<Future<?>> forks = new ArrayList<>();
+        private volatile boolean cancelled = false;
+
+        private Scope(BooleanSupplier shouldInterrupt) {
+            this.shouldInterrupt = shouldInterrupt;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private <T> Future<T> fork(ExecutorService executor, Callable<T> task) {
+            Objects.requireNonNull(task, "task is null");
+            if (this.cancelled) {
+                throw new CancellationException("scope is cancelled");
+            }
+            Fork<T> future = new Fork<>(task);
+            executor.execute(future);
+            synchronized (this.forks) {
+                this.forks.removeIf(Future::isDone);
+                this.forks.add(future);
+            }
+            return future;
+        }
+
+        /**
+         * Forks a task doing blocking file I/O.
+         *
+         * @param <T> The result type
+         * @param task The task, not null
+         * @return the future of the task
+         */
+        public <T> Future<T> forkIO(Callable<T> task) {
+            return fork(TaskExecutor.this.io, task);
+        }
+
+        /**
+         * Forks a CPU bound task, like hashing a file, a task forked from a
+         * thread of the CPU executor runs inline so nested work can never wait
+         * for a thread its own caller is holding.
+         *
+         * @param <T> The result type
+         * @param task The task, not null
+         * @return the future of the task
+         */
+        public <T> Future<T> forkCPU(Callable<T> task) {
+            if (isCPUThread()) {
+                Objects.requireNonNull(task, "task is null");
+                FutureTask<T> inline = new FutureTask<>(task);
+                inline.run();
+                return inline;
+            }
+            return fork(TaskExecutor.this.cpu, task);
+        }
+
+        /**
+         * Waits for a forked task, checking the interrupt hook while waiting.
+         *
+         * @param <T> The result type
+         * @param future A future forked in this scope
+         * @return the result of the task
+         * @throws IOException if the task failed with a IOException or a checked exception
+         * @throws InterruptedException if the hook or the thread was interrupted, the scope is cancelled
+         */
+        public <T> T join(Future<T> future) throws IOException, InterruptedException {
+            while (true) {
+                if (this.shouldInterrupt.getAsBoolean()) {
+                    cancel();
+                    throw new InterruptedException("interrupted");
+                }
+                try {
+                    return future.get(INTERRUPT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    //check the hook again
+                } catch (InterruptedException ex) {
+                    cancel();
+                    throw ex;
+                } catch (CancellationException ex) {
+                    throw new InterruptedException("cancelled");
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException io) {
+                        throw io;
+                    }
+                    if (cause instanceof InterruptedException in) {
+                        cancel();
+                        throw in;
+                    }
+                    if (cause instanceof RuntimeException r) {
+                        throw r;
+                    }
+                    if (cause instanceof Error e) {
+                        throw e;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        }
+
+        /**
+         * Waits for a forked task to end without taking its result, checking
+         * the interrupt hook while waiting; a failure of the task is left for
+         * {@link #join(Future)}.
+         *
+         * @param future A future forked in this scope
+         * @throws InterruptedException if the hook or the thread was interrupted
+         */
+        public void await(Future<?> future) throws InterruptedException {
+            while (!future.isDone()) {
+                if (this.shouldInterrupt.getAsBoolean()) {
+                    cancel();
+                    throw new InterruptedException("interrupted");
+                }
+                try {
+                    future.get(INTERRUPT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException | CancellationException ex) {
+                    //checked again
+                } catch (InterruptedException ex) {
+                    cancel();
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * Waits until the thread of a forked task left it, even if the future
+         * was cancelled, checking the interrupt hook while waiting.
+         *
+         * @param future A future forked in this scope
+         * @throws InterruptedException if the hook or the thread was interrupted, the scope is cancelled
+         */
+        public void awaitExit(Future<?> future) throws InterruptedException {
+            if (!(future instanceof Fork<?> fork)) {
+                await(future);
+                return;
+            }
+            while (true) {
+                if (this.shouldInterrupt.getAsBoolean()) {
+                    cancel();
+                    throw new InterruptedException("interrupted");
+                }
+                try {
+                    if (fork.exited.await(INTERRUPT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException ex) {
+                    cancel();
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * Cancels and interrupts every unfinished task of this scope.
+         */
+        public void cancel() {
+            this.cancelled = true;
+            synchronized (this.forks) {
+                for (Future<?> f : this.forks) {
+                    f.cancel(true);
+                }
+                this.forks.clear();
+            }
+        }
+
+        @Override
+        public void close() {
+            cancel();
+        }
+    }
+
+    private final ThreadLocal<Boolean> cpuThread = ThreadLocal.withInitial(() -> false);
+    private final Semaphore cpuPermits;
+    private final int cpuThreads;
+    private final ExecutorService cpu;
+    private final ExecutorService io;
+    private final boolean virtualThreads;
+
+    public TaskExecutor(int cpuThreads) {
+        if (cpuThreads < 1) {
+            throw new IllegalArgumentException("cpuThreads < 1");
+        }
+        this.cpuThreads = cpuThreads;
+        //fair, so a reader is never passed over by the others indefinitely
+        this.cpuPermits = new Semaphore(cpuThreads, true);
+        ThreadFactory cpuFactory = newDaemonFactory("ContentList CPU");
+        this.cpu = Executors.newFixedThreadPool(cpuThreads, (r) -> cpuFactory.newThread(() -> {
+            this.cpuThread.set(true);
+            r.run();
+        }));
+        ExecutorService virtual = newVirtualExecutor();
+        if (virtual != null) {
+            this.io = virtual;
+            this.virtualThreads = true;
+        } else {
+            this.io = Executors.newCachedThreadPool(newDaemonFactory("ContentList I/O"));
+            this.virtualThreads = false;
+        }
+    }
+
+    public int getCPUThreads() {
+        return cpuThreads;
+    }
+
+    /**
+     * @return true if the current thread belongs to the CPU executor
+     */
+    public boolean isCPUThread() {
+        return this.cpuThread.get();
+    }
+
+    /**
+     * Waits for a free core before hashing a buffer that was just read, on
+     * any thread, so files read on many I/O threads and leaves hashed on the
+     * CPU executor are never hashed on more cores than the CPU executor has;
+     * the core must be released with {@link #releaseCPU()}, the work done
+     * while holding it must never wait for other work.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireCPU() throws InterruptedException {
+        acquireCPU(null);
+    }
+
+    /**
+     * Same as {@link #acquireCPU()}, but calls the listener if no core is
+     * free, before and after waiting.
+     *
+     * @param listener The listener of the wait or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireCPU(RateLimiter.WaitListener listener) throws InterruptedException {
+        //timed so the fairness is respected, unlike tryAcquire()
+        if (this.cpuPermits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            return;
+        }
+        if (listener != null) {
+            listener.onWait(true);
+        }
+        try {
+            this.cpuPermits.acquire();
+        } finally {
+            if (listener != null) {
+                listener.onWait(false);
+            }
+        }
+    }
+
+    /**
+     * Releases a core acquired with {@link #acquireCPU()}.
+     */
+    public void releaseCPU() {
+        this.cpuPermits.release();
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public ExecutorService getCPUExecutor() {
+        return cpu;
+    }
+
+    public ExecutorService getIOExecutor() {
+        return io;
+    }
+
+    /**
+     * Starts a long running background job, like opening or validating a
+     * list, cancel the returned future to interrupt it.
+     *
+     * @param job The job, not null
+     * @return the future of the job
+     */
+    public Future<?> start(Runnable job) {
+        return this.io.submit(Objects.requireNonNull(job, "job is null"));
+    }
+
+    public Scope newScope(BooleanSupplier shouldInterrupt) {
+        return new Scope(Objects.requireNonNull(shouldInterrupt, "shouldInterrupt is null"));
+    }
+
+    public Scope newScope() {
+        return newScope(() -> false);
+    }
+
+    public void shutdown() {
+        this.cpu.shutdownNow();
+        this.io.shutdownNow();
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.phantomfs.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+/**
+ * Block tree (Merkle) SHA-256 of a file.
+ * <p>
+ * The file is split in {@link #LEAF_SIZE} leaves, each leaf is hashed as
+ * {@code SHA-256(0x00 || data)} and pairs of nodes are combined as
+ * {@code SHA-256(0x01 || left || right)} until a single root is left, a odd
+ * node at the end of a level is promoted to the next one unchanged. A empty
+ * file has a single empty leaf.
+ * <p>
+ * Unlike a plain SHA-256 the leaves are independent, so they can be hashed in
+ * parallel, validated from the middle of the file and compared one by one to
+ * find exactly which ranges of a file changed.
+ *
+ * @author Cien
+ */
+public class TreeHash {
+
+    public static final int LEAF_SIZE = 16 * 1024 * 1024;
+    public static final int HASH_SIZE = 32;
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    public static interface LeafListener {
+
+        /**
+         * Called in order for every leaf hashed.
+         *
+         * @param index The index of the leaf
+         * @param leaf The hash of the leaf
+         * @param bytes The number of bytes hashed so far, including skipped leaves
+         * @throws IOException if the hashing should stop with a error
+         * @throws InterruptedException if the hashing should be interrupted
+         */
+        public void onLeaf(int index, byte[] leaf, long bytes) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Builds the leaves of a tree hash from data read sequentially, so a
+     * tree hash can be computed in the same pass as other digests.
+     */
+    public static class Builder {
+
+        private final MessageDigest digest = newDigest();
+        private final List<byte[]> leaves = new ArrayList<>();
+        private long leafBytes = 0;
+
+        public Builder() {
+            this.digest.update((byte) 0x00);
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, data.length);
+            while (length > 0) {
+                int toHash = (int) Math.min(length, LEAF_SIZE - this.leafBytes);
+                this.digest.update(data, offset, toHash);
+                this.leafBytes += toHash;
+                offset += toHash;
+                length -= toHash;
+                if (this.leafBytes == LEAF_SIZE) {
+                    this.leaves.add(this.digest.digest());
+                    this.digest.update((byte) 0x00);
+                    this.leafBytes = 0;
+                }
+            }
+        }
+
+        /**
+         * @return the leaves of all data written
+         */
+        public byte[][] finish() {
+            if (this.leafBytes != 0 || this.leaves.isEmpty()) {
+                this.leaves.add(this.digest.digest());
+                this.digest.update((byte) 0x00);
+                this.leafBytes = 0;
+            }
+            return this.leaves.toArray(byte[][]::new);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public static int leafCount(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size is negative");
+        }
+        long count = Math.max(1, (size + LEAF_SIZE - 1) / LEAF_SIZE);
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("file is too large");
+        }
+        return (int) count;
+    }
+
+    public static long leafOffset(int index) {
+        return ((long) index) * LEAF_SIZE;
+    }
+
+    public static long leafLength(int index, long size) {
+        return Math.max(0, Math.min(LEAF_SIZE, size - leafOffset(index)));
+    }
+
+    /**
+     * Combines the leaves into the root hash.
+     *
+     * @param leaves The leaves, not null, not empty
+     * @return the root hash
+     */
+    public static byte[] root(byte[][] leaves) {
+        Objects.requireNonNull(leaves, "leaves is null");
+        if (leaves.length == 0) {
+            throw new IllegalArgumentException("leaves is empty");
+        }
+        MessageDigest digest = newDigest();
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int left = i * 2;
+                if (left + 1 >= level.length) {
+                    next[i] = level[left];
+                    continue;
+                }
+                digest.update((byte) 0x01);
+                digest.update(level[left]);
+                digest.update(level[left + 1]);
+                next[i] = digest.digest();
+            }
+            level = next;
+        }
+        return level[0].clone();
+    }
+
+    public static byte[] encodeLeaves(byte[][] leaves) {
+        byte[] encoded = new byte[leaves.length * HASH_SIZE];
+        for (int i = 0; i < leaves.length; i++) {
+            System.arraycopy(leaves[i], 0, encoded, i * HASH_SIZE, HASH_SIZE);
+        }
+        return encoded;
+    }
+
+    public static byte[][] decodeLeaves(byte[] encoded) {
+        if (encoded.length % HASH_SIZE != 0) {
+            throw new IllegalArgumentException("invalid leaves length");
+        }
+        byte[][] leaves = new byte[encoded.length / HASH_SIZE][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = Arrays.copyOfRange(encoded, i * HASH_SIZE, (i + 1) * HASH_SIZE);
+        }
+        return leaves;
+    }
+
+    /**
+     * Compares two leaf lists and returns the byte ranges that differ,
+     * adjacent ranges are merged.
+     *
+     * @param expected The expected leaves
+     * @param found The leaves found
+     * @param size The size of the file
+     * @return the ranges as {start, end} pairs, end exclusive
+     */
+    public static long[][] differentRanges(byte[][] expected, byte[][] found, long size) {
+        List<long[]> ranges = new ArrayList<>();
+        int count = Math.max(expected.length, found.length);
+        for (int i = 0; i < count; i++) {
+            if (i < expected.length && i < found.length && Arrays.equals(expected[i], found[i])) {
+                continue;
+            }
+            long start = leafOffset(i);
+            long end = start + Math.max(leafLength(i, size), 1);
+            long[] last = (ranges.isEmpty() ? null : ranges.get(ranges.size() - 1));
+            if (last != null && last[1] == start) {
+                last[1] = end;
+            } else {
+                ranges.add(new long[]{start, end});
+            }
+        }
+        return ranges.toArray(long[][]::new);
+    }
+
+    private static byte[] hashLeaf(FileChannel channel, int index, long size, RateLimiter limiter, RateLimiter.WaitListener waitListener) throws IOException, InterruptedException {
+        MessageDigest digest = newDigest();
+        digest.update((byte) 0x00);
+        //aligned so the channel may be opened with direct I/O
+        ByteBuffer buffer = DirectInputStream.allocateAligned(READ_BUFFER_SIZE, DirectInputStream.MIN_ALIGNMENT);
+        long position = leafOffset(index);
+        long end = position + leafLength(index, size);
+        while (position < end) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = end - position;
+            long aligned = ((remaining + DirectInputStream.MIN_ALIGNMENT - 1) / DirectInputStream.MIN_ALIGNMENT) * DirectInputStream.MIN_ALIGNMENT;
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), aligned));
+            int r = channel.read(buffer, position);
+            if (r <= 0) {
+                throw new IOException("file is smaller than expected");
+            }
+            buffer.flip();
+            if (buffer.remaining() > remaining) {
+                buffer.limit((int) remaining);
+            }
+            position += buffer.remaining();
+            if (limiter != null) {
+                limiter.acquireBytes(buffer.remaining(), waitListener);
+            }
+            TaskExecutor executor = TaskExecutor.shared();
+            executor.acquireCPU(waitListener);
+            try {
+                digest.update(buffer);
+            } finally {
+                executor.releaseCPU();
+            }
+        }
+        return digest.digest();
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final int leafCount;
+    private RateLimiter rateLimiter = null;
+    private RateLimiter.WaitListener waitListener = null;
+
+    /**
+     * @param channel A channel open for reading, not null
+     * @param size The size of the file
+     */
+    public TreeHash(FileChannel channel, long size) {
+        this.channel = Objects.requireNonNull(channel, "channel is null");
+        this.size = size;
+        this.leafCount = leafCount(size);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets a limiter shared by all the leaves hashed in parallel.
+     *
+     * @param rateLimiter The limiter or null for no limit
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RateLimiter.WaitListener getWaitListener() {
+        return waitListener;
+    }
+
+    /**
+     * Sets a listener of the waits on the limiter, called from the threads
+     * hashing the leaves.
+     *
+     * @param waitListener The listener or null
+     */
+    public void setWaitListener(RateLimiter.WaitListener waitListener) {
+        this.waitListener = waitListener;
+    }
+
+    /**
+     * Reports the file as waiting while it has leaves queued on the CPU
+     * executor but none of them is running, queued behind the leaves of other
+     * files.
+     */
+    private static class QueueWait {
+
+        private final RateLimiter.WaitListener listener;
+        private int queued = 0;
+        private int running = 0;
+        private boolean waiting = false;
+        private boolean closed = false;
+
+        QueueWait(RateLimiter.WaitListener listener) {
+            this.listener = listener;
+        }
+
+        private void update() {
+            boolean w = !this.closed && this.queued > 0 && this.running == 0;
+            if (w != this.waiting) {
+                this.waiting = w;
+                this.listener.onWait(w);
+            }
+        }
+
+        synchronized void queued() {
+            this.queued++;
+            update();
+        }
+
+        synchronized void started() {
+            this.queued--;
+            this.running++;
+            update();
+        }
+
+        synchronized void finished() {
+            this.running--;
+            update();
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            update();
+        }
+    }
+
+    /**
+     * Hashes the leaves in parallel on the CPU executor of the scope, the
+     * listener is called in order on the calling thread; while the leaves of
+     * the file are queued behind the ones of other files the wait listener is
+     * told that the file is waiting.
+     *
+     * @param scope The scope to fork the work in, not null
+     * @param firstLeaf The first leaf to hash, the ones before it are left null
+     * @param listener The listener or null
+     * @return the leaves
+     * @throws IOException if a read fails
+     * @throws InterruptedException if interrupted
+     */
+    public byte[][] hashLeaves(TaskExecutor.Scope scope, int firstLeaf, LeafListener listener) throws IOException, InterruptedException {
+        Objects.requireNonNull(scope, "scope is null");
+        Objects.checkIndex(firstLeaf, this.leafCount);
+
+        byte[][] leaves = new byte[this.leafCount][];
+        int window = TaskExecutor.shared().getCPUThreads() * 2;
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        int next = firstLeaf;
+        int done = firstLeaf;
+        long bytes = leafOffset(firstLeaf);
+        QueueWait queue = (this.waitListener == null ? null : new QueueWait(this.waitListener));
+        try {
+            while (done < this.leafCount) {
+                while (next < this.leafCount && pending.size() < window) {
+                    int index = next++;
+                    if (queue == null) {
+                        pending.add(scope.forkCPU(() -> hashLeaf(this.channel, index, this.size, this.rateLimiter, this.waitListener)));
+                        continue;
+                    }
+                    queue.queued();
+                    pending.add(scope.forkCPU(() -> {
+                        queue.started();
+                        try {
+                            return hashLeaf(this.channel, index, this.size, this.rateLimiter, this.waitListener);
+                        } finally {
+                            queue.finished();
+                        }
+                    }));
+                }
+                byte[] leaf = scope.join(pending.poll());
+                leaves[done] = leaf;
+                bytes += leafLength(done, this.size);
+                if (listener != null) {
+                    listener.onLeaf(done, leaf, bytes);
+                }
+                done++;
+            }
+        } finally {
+            if (queue != null) {
+                queue.close();
+            }
+        }
+        return leaves;
+    }
+
+    public byte[][] hashLeaves(TaskExecutor.Scope scope) throws IOException, InterruptedException {
+        return hashLeaves(scope, 0, null);
+    }
+
+}
@@ -71,6 +71,46 @@ public interface SpaceUnit {
         return b.toString();
     }
     
+    /**
+     * Parses a amount of bytes with a optional suffix of any unit, like
+     * {@code 512}, {@code 50MB} or {@code 1.5 GiB}, a single letter like
+     * {@code 50M} is read as a decimal unit.
+     *
+     * @param s The amount, not null
+     * @return the bytes
+     * @throws NumberFormatException if the amount is invalid
+     */
+    public static long parse(String s) {
+        String value = s.trim();
+        int end = value.length();
+        while (end > 0 && Character.isLetter(value.charAt(end - 1))) {
+            end--;
+        }
+        String number = value.substring(0, end).trim();
+        String suffix = value.substring(end);
+        long multiplier = 1;
+        if (!suffix.isEmpty()) {
+            multiplier = -1;
+            for (SpaceUnit[] units : new SpaceUnit[][]{DecimalSpaceUnit.values(), BinarySpaceUnit.values()}) {
+                for (SpaceUnit u : units) {
+                    if (u.getSuffix().equalsIgnoreCase(suffix)
+                            || (units[0] instanceof DecimalSpaceUnit && u.getSuffix().length() == 2
+                            && u.getSuffix().substring(0, 1).equalsIgnoreCase(suffix))) {
+                        multiplier = u.getSize();
+                    }
+                }
+            }
+            if (multiplier == -1) {
+                throw new NumberFormatException("Unknown unit: " + suffix);
+            }
+        }
+        double amount = Double.parseDouble(number);
+        if (!(amount >= 0.0) || Double.isInfinite(amount)) {
+            throw new NumberFormatException("Not a positive amount: " + number);
+        }
+        return (long) (amount * multiplier);
+    }
+    
     public SpaceUnit[] getSpaceUnits();
 
     public long getSize();
@@ -0,0 +1,117 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.ui;
+
+/**
+ * Exponentially smoothed throughput of a growing counter, used for transfer
+ * speeds and estimated times that stay stable over long operations.
+ * <p>
+ * The smoothing is time based: a sample taken after {@code dt} seconds weights
+ * {@code 1 - exp(-dt / timeConstant)}, so irregular update intervals do not
+ * bias the estimate.
+ *
+ * @author Cien
+ */
+public class ThroughputEstimator {
+
+    public static final double DEFAULT_TIME_CONSTANT = 10.0;
+    public static final double MIN_SAMPLE_INTERVAL = 0.5;
+
+    private final double timeConstant;
+
+    private long lastTime = -1;
+    private long lastValue = 0;
+    private double rate = Double.NaN;
+
+    public ThroughputEstimator(double timeConstant) {
+        if (!(timeConstant > 0.0)) {
+            throw new IllegalArgumentException("time constant must be positive");
+        }
+        this.timeConstant = timeConstant;
+    }
+
+    public ThroughputEstimator() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    public double getTimeConstant() {
+        return timeConstant;
+    }
+
+    public synchronized void reset() {
+        this.lastTime = -1;
+        this.lastValue = 0;
+        this.rate = Double.NaN;
+    }
+
+    /**
+     * Feeds the current value of the counter, samples closer than
+     * {@link #MIN_SAMPLE_INTERVAL} seconds to the previous one are ignored.
+     *
+     * @param value The current total, e.g. bytes processed so far
+     */
+    public synchronized void update(long value) {
+        long now = System.nanoTime();
+        if (this.lastTime == -1) {
+            this.lastTime = now;
+            this.lastValue = value;
+            return;
+        }
+        double elapsed = (now - this.lastTime) / 1E9d;
+        if (elapsed < MIN_SAMPLE_INTERVAL) {
+            return;
+        }
+        double instant = Math.max(value - this.lastValue, 0) / elapsed;
+        if (Double.isNaN(this.rate)) {
+            this.rate = instant;
+        } else {
+            double alpha = 1.0 - Math.exp(-elapsed / this.timeConstant);
+            this.rate += alpha * (instant - this.rate);
+        }
+        this.lastTime = now;
+        this.lastValue = value;
+    }
+
+    /**
+     * @return the smoothed rate per second or NaN if not known yet
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @param remaining The amount left
+     * @return the estimated seconds left, NaN or infinite if unknown
+     */
+    public synchronized double estimateSeconds(long remaining) {
+        if (remaining <= 0) {
+            return 0.0;
+        }
+        return remaining / this.rate;
+    }
+
+}
@@ -136,6 +136,17 @@ public class UIUtils {
         return out.toString(StandardCharsets.UTF_8);
     }
     
+    public static String formatRanges(long[][] ranges) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < ranges.length; i++) {
+            if (i != 0) {
+                b.append(", ");
+            }
+            b.append('[').append(ranges[i][0]).append(", ").append(ranges[i][1]).append(')');
+        }
+        return b.toString();
+    }
+
     public static String getFailureReason(FileEntryValidatorResult result) {
         if (result.success()) {
             return null;
@@ -158,6 +169,21 @@ public class UIUtils {
             case SAMPLE -> {
                 reasonText = "Wrong sample; Expected " + hex.formatHex((byte[]) expected) + "; Found " + hex.formatHex((byte[]) found);
             }
+            case SAMPLE_POINTS -> {
+                reasonText = "Wrong sample points; Expected " + hex.formatHex((byte[]) expected) + "; Found " + hex.formatHex((byte[]) found);
+                if (result.getCorruptedRanges() != null) {
+                    reasonText += "; Corrupted ranges: " + formatRanges(result.getCorruptedRanges());
+                }
+            }
+            case CHECKSUM -> {
+                reasonText = "Wrong checksum; Expected " + hex.formatHex((byte[]) expected) + "; Found " + hex.formatHex((byte[]) found);
+            }
+            case TREE_HASH -> {
+                reasonText = "Wrong tree hash; Expected " + hex.formatHex((byte[]) expected) + "; Found " + hex.formatHex((byte[]) found);
+                if (result.getCorruptedRanges() != null) {
+                    reasonText += "; Corrupted ranges: " + formatRanges(result.getCorruptedRanges());
+                }
+            }
             case HASH -> {
                 reasonText = "Wrong hash; Expected " + hex.formatHex((byte[]) expected) + "; Found " + hex.formatHex((byte[]) found);
             }
@@ -14,6 +14,7 @@ public class CLInterface {
         out.println("Available commands:");
         out.println("-create - Creates a new list");
         out.println("-validate - Validates a directory");
+        out.println("-generate - Generates a synthetic list for testing");
     }
 
     public static void run(PrintStream out, String[] args) throws Exception {
@@ -34,6 +35,9 @@ public class CLInterface {
             case "-validate" -> {
                 return ValidateCommand.run(System.in, out, Arrays.copyOfRange(args, 1, args.length));
             }
+            case "-generate" -> {
+                return GenerateCommand.run(System.in, out, Arrays.copyOfRange(args, 1, args.length));
+            }
             default -> {
                 if (!args[0].equalsIgnoreCase("-help")) {
                     out.println("Invalid option: " + args[0]);
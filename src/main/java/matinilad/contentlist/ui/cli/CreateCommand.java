@@ -37,22 +37,48 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.zip.GZIPOutputStream;
 import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.PhantomPath;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
 import matinilad.contentlist.phantomfs.entry.FileEntryFactory;
+import matinilad.contentlist.phantomfs.entry.FileEntryJournal;
 import matinilad.contentlist.phantomfs.entry.FileEntryMetadata;
+import matinilad.contentlist.phantomfs.entry.FileEntryType;
 import matinilad.contentlist.phantomfs.entry.FileEntryWriter;
 import matinilad.contentlist.phantomfs.utils.EncryptedOutputStream;
+import matinilad.contentlist.phantomfs.utils.FileWatchdog;
+import matinilad.contentlist.phantomfs.utils.HardlinkTable;
+import matinilad.contentlist.phantomfs.utils.HashCache;
+import matinilad.contentlist.phantomfs.utils.LocalityOrder;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.PathScanner;
 import matinilad.contentlist.phantomfs.utils.PathStream;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.SamplePoints;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
 import matinilad.contentlist.phantomfs.utils.TempFileList;
+import matinilad.contentlist.ui.SpaceUnit;
+import matinilad.contentlist.ui.ThroughputEstimator;
 import matinilad.contentlist.ui.UIUtils;
+import matinilad.contentlist.ui.cfg.Configuration;
 
 /**
  *
@@ -60,6 +86,23 @@ import matinilad.contentlist.ui.UIUtils;
  */
 public class CreateCommand {
 
+    private static class PendingEntry {
+
+        final Path root;
+        final Path file;
+        final Callable<FileEntry> task;
+        final Future<FileEntry> future;
+        final boolean retry;
+
+        PendingEntry(Path root, Path file, Callable<FileEntry> task, Future<FileEntry> future, boolean retry) {
+            this.root = root;
+            this.file = file;
+            this.task = task;
+            this.future = future;
+            this.retry = retry;
+        }
+    }
+
     private static void printHelp(PrintStream out) {
         out.println("Arguments (Can be used in any order):");
         out.println("-out [file] - Sets the output file [REQUIRED!]");
@@ -72,7 +115,30 @@ public class CreateCommand {
         out.println("-encrypt - Encrypts the file with a password");
         out.println("-replace - Replaces the output file without asking, if it already exists");
         out.println("-hidden - Includes hidden files");
+        out.println("-prescan - Counts files and bytes before hashing, for progress and estimated time in verbose mode");
+        out.println("-crc32c - Adds a CRC32C checksum column, for fast corruption checks with -fastOnly when validating");
+        out.println("-treeHash - Adds a block tree hash column, validated in parallel inside each file");
+        out.println("-treeLeaves - Also stores the tree leaves, to find corrupted ranges and resume validation of large files");
         out.println("-sampleSize [size] - Sets the sample size for files");
+        out.println("-samplePoints [regions] - Adds short digests of regions spread over each file (like " + SamplePoints.DEFAULT_COUNT + "), for quick checks with -quick when validating");
+        out.println("-samplePointSize [bytes] - Sets the size of each sample point region (default " + SamplePoints.DEFAULT_REGION_SIZE + ")");
+        out.println("-listingThreads [threads] - Lists directories in parallel, useful on slow or network file systems (default 1)");
+        out.println("-threads [threads] - Reads files in parallel, hashing uses at most one thread per processor, the output keeps the listing order (default 1)");
+        out.println("-locality - Hashes files in batches ordered by their location on disk, reducing seeks on hard disks");
+        out.println("-hardlinks - Reads files with more than one hard link once, reusing the hashes for the other links");
+        out.println("-stallTimeout [seconds] - Defers files that make no progress for this long and retries them at the end, after their stalled read returned, so a stalled file does not block the others");
+        out.println("-deferredThreads [threads] - Retries the deferred files in parallel (default 1)");
+        out.println("-latency - Prints how long files took to be read and the slowest files when done");
+        out.println("-journal - Saves the hashed files to a journal next to the output, running again with -journal after a interruption resumes from it");
+        out.println("-hashCache - Reuses hashes of files that did not change since they were last read");
+        out.println("-hashCacheSize [entries] - Sets the maximum number of files in the hash cache (default " + HashCache.DEFAULT_MAX_ENTRIES + ")");
+        out.println("-maxSpeed [bytes/s] - Limits the bytes read per second, like 50MB or 20MiB");
+        out.println("-maxFiles [files/s] - Limits the files read per second");
+        out.println("-schedule [windows] - Slows down or pauses at certain times, like mon-fri@09:00-18:00=0.25,12:00-13:00=0");
+        out.println("When limited, type speed [bytes/s], files [files/s], pause or resume while running to change the limits");
+        out.println("-direct - Reads files with direct I/O, bypassing the page cache, if supported by the file system");
+        out.println("-metrics - Prints a timing breakdown of the operation when done");
+        out.println("-report [file] - Writes the operation metrics as json to a file");
         out.println("-disable [type/timestamps/size/filesAndDirectories/sha256/sample/metadata]");
         out.println("  Blocks a file attribute from being written into the csv");
         out.println("  A comma can be used for multiple attributes in a single argument");
@@ -100,7 +166,25 @@ public class CreateCommand {
         boolean encrypt = false;
         boolean replace = false;
         boolean hiddenFiles = false;
+        boolean printMetrics = false;
+        boolean prescan = false;
+        Path reportFile = null;
         int sampleSize = 32;
+        int samplePoints = 0;
+        int samplePointSize = SamplePoints.DEFAULT_REGION_SIZE;
+        int listingThreads = 1;
+        int hashThreads = 1;
+        boolean hashCache = false;
+        boolean directIO = false;
+        boolean locality = false;
+        boolean hardlinks = false;
+        boolean useJournal = false;
+        boolean latency = false;
+        int stallTimeout = 0;
+        int deferredThreads = 1;
+        RateLimiter rateLimiter = new RateLimiter();
+        boolean rateLimited = false;
+        int hashCacheSize = HashCache.DEFAULT_MAX_ENTRIES;
         FileEntryWriter.Flags flags = new FileEntryWriter.Flags();
 
         for (int i = 0; i < args.length; i++) {
@@ -127,6 +211,51 @@ public class CreateCommand {
                     hiddenFiles = true;
                     continue;
                 }
+                case "-metrics" -> {
+                    printMetrics = true;
+                    continue;
+                }
+                case "-prescan" -> {
+                    prescan = true;
+                    continue;
+                }
+                case "-crc32c" -> {
+                    flags.setCrc32cEnabled(true);
+                    continue;
+                }
+                case "-treehash" -> {
+                    flags.setTreeHashEnabled(true);
+                    continue;
+                }
+                case "-treeleaves" -> {
+                    flags.setTreeHashEnabled(true);
+                    flags.setTreeLeavesEnabled(true);
+                    continue;
+                }
+                case "-hashcache" -> {
+                    hashCache = true;
+                    continue;
+                }
+                case "-direct" -> {
+                    directIO = true;
+                    continue;
+                }
+                case "-locality" -> {
+                    locality = true;
+                    continue;
+                }
+                case "-hardlinks" -> {
+                    hardlinks = true;
+                    continue;
+                }
+                case "-journal" -> {
+                    useJournal = true;
+                    continue;
+                }
+                case "-latency" -> {
+                    latency = true;
+                    continue;
+                }
             }
 
             if (nextArgument == null) {
@@ -194,6 +323,12 @@ public class CreateCommand {
                         }
                     }
                 }
+                case "-report" -> {
+                    reportFile = parseReportFile(out, nextArgument);
+                    if (reportFile == null) {
+                        return -1;
+                    }
+                }
                 case "-samplesize" -> {
                     try {
                         sampleSize = Integer.parseInt(nextArgument);
@@ -207,40 +342,107 @@ public class CreateCommand {
                         return -1;
                     }
                 }
-                case "-disable" -> {
-                    String[] split = nextArgument.split(",");
-                    if (split.length == 0) {
-                        out.println("Disable argument is empty: " + nextArgument);
+                case "-samplepoints" -> {
+                    try {
+                        samplePoints = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
                         return -1;
                     }
-                    for (String s : split) {
-                        switch (s.toLowerCase()) {
-                            case "type" -> {
-                                flags.setTypeEnabled(false);
-                            }
-                            case "timestamps" -> {
-                                flags.setTimestampsEnabled(false);
-                            }
-                            case "size" -> {
-                                flags.setSizeEnabled(false);
-                            }
-                            case "filesanddirectories" -> {
-                                flags.setFilesAndDirectoriesEnabled(false);
-                            }
-                            case "sha256" -> {
-                                flags.setSha256Enabled(false);
-                            }
-                            case "sample" -> {
-                                flags.setSampleEnabled(false);
-                            }
-                            case "metadata" -> {
-                                flags.setMetadataEnabled(false);
-                            }
-                            default -> {
-                                out.println("Unknown disable option: " + s);
-                                return -1;
-                            }
-                        }
+                    if (samplePoints != 0 && (samplePoints < SamplePoints.MIN_COUNT || samplePoints > SamplePoints.MAX_COUNT)) {
+                        out.println("Sample points must be 0 or between " + SamplePoints.MIN_COUNT + " and " + SamplePoints.MAX_COUNT);
+                        return -1;
+                    }
+                    flags.setSamplePointsEnabled(samplePoints > 0);
+                }
+                case "-samplepointsize" -> {
+                    try {
+                        samplePointSize = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (samplePointSize < 1) {
+                        out.println("Sample point size must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-listingthreads" -> {
+                    try {
+                        listingThreads = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (listingThreads < 1) {
+                        out.println("Listing threads must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-maxspeed", "-maxfiles", "-schedule" -> {
+                    if (!parseRateLimit(out, rateLimiter, argument, nextArgument)) {
+                        return -1;
+                    }
+                    rateLimited = true;
+                }
+                case "-hashcachesize" -> {
+                    try {
+                        hashCacheSize = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (hashCacheSize < 1) {
+                        out.println("Hash cache size must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-threads" -> {
+                    try {
+                        hashThreads = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (hashThreads < 1) {
+                        out.println("Threads must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-stalltimeout" -> {
+                    try {
+                        stallTimeout = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (stallTimeout < 0) {
+                        out.println("Stall timeout is negative");
+                        return -1;
+                    }
+                }
+                case "-deferredthreads" -> {
+                    try {
+                        deferredThreads = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (deferredThreads < 1) {
+                        out.println("Deferred threads must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-disable" -> {
+                    if (!parseDisable(out, flags, nextArgument)) {
+                        return -1;
                     }
                 }
             }
@@ -290,6 +492,26 @@ public class CreateCommand {
             sampleSize = 0;
         }
 
+        if (useJournal && encrypt) {
+            out.println("The journal is not encrypted, it can't be used with -encrypt");
+            return -1;
+        }
+        
+        FileEntryJournal journal = null;
+        if (useJournal) {
+            try {
+                journal = FileEntryJournal.open(FileEntryJournal.directoryFor(outputFile));
+            } catch (IOException ex) {
+                out.println("Failed to open the journal");
+                ex.printStackTrace(out);
+                return -1;
+            }
+            if (verbose && journal.getLoadedEntries() != 0) {
+                out.println("Resuming from " + journal.getLoadedEntries() + " files in " + journal.getDirectory());
+            }
+        }
+        FileEntryJournal finalJournal = journal;
+
         TempFileList temp = new TempFileList();
         try {
             if (outputFile.getParent() != null) {
@@ -300,75 +522,254 @@ public class CreateCommand {
                 char[] password = null;
                 try {
                     if (encrypt) {
-                        Console console = System.console();
-                        if (console == null) {
-                            out.println("Console is not available for password reading");
+                        password = readNewPassword(out);
+                        if (password == null) {
                             return -1;
                         }
-                        while (true) {
-                            char[] pass = console.readPassword("[%s]", "Password:");
-                            try {
-                                if (pass == null || pass.length == 0) {
-                                    out.println("Password is empty, try again");
-                                    continue;
-                                }
-                                char[] confirmPass = console.readPassword("[%s]", "Confirm Password:");
-                                try {
-                                    if (!Arrays.equals(pass, confirmPass)) {
-                                        out.println("Passwords are not equal, try again");
-                                        continue;
-                                    }
-                                } finally {
-                                    if (confirmPass != null) {
-                                        Arrays.fill(confirmPass, '\0');
-                                    }
-                                }
-                                password = pass.clone();
-                            } finally {
-                                if (pass != null) {
-                                    Arrays.fill(pass, '\0');
-                                }
-                            }
-                            break;
-                        }
-                        out.println("Type random characters below or leave empty to skip.");
-                        out.print("[Salt:]");
-                        String salt = scanner.nextLine();
-                        if (salt != null && salt.length() > 0) {
-                            userSalt = salt.getBytes(StandardCharsets.UTF_8);
-                        }
+                        userSalt = readSalt(out, scanner);
                     }
 
                     boolean finalVerbose = verbose;
+                    boolean finalLocality = locality;
 
                     AtomicInteger errorCount = new AtomicInteger(0);
+                    
+                    OperationMetrics metrics = OperationMetrics.DISABLED;
+                    if (printMetrics || reportFile != null) {
+                        metrics = new OperationMetrics("Create " + outputFile.getFileName());
+                    }
+                    OperationMetrics finalMetrics = metrics;
 
                     PhantomFileSystem fs = new PhantomFileSystem();
-                    FileEntryFactory factory = new FileEntryFactory();
+                    FileWatchdog watchdog = null;
+                    if (latency || stallTimeout > 0) {
+                        watchdog = new FileWatchdog(stallTimeout * 1000L);
+                    }
+                    FileWatchdog finalWatchdog = watchdog;
+                    boolean watched = (stallTimeout > 0);
+                    FileEntryFactory factory = new FileEntryFactory() {
+                        @Override
+                        protected void onFileProgress(Path path, long currentCount, long totalBytes) {
+                            if (finalWatchdog != null) {
+                                finalWatchdog.progress(path, currentCount);
+                            }
+                        }
+
+                        @Override
+                        protected void onFileWaiting(Path path, boolean waiting) {
+                            if (finalWatchdog != null) {
+                                finalWatchdog.waiting(path, waiting);
+                            }
+                        }
+                    };
                     factory.setSampleSize(sampleSize);
+                    factory.setSamplePoints(samplePoints);
+                    factory.setSamplePointSize(samplePointSize);
                     factory.setSha256Enabled(flags.isSha256Enabled());
+                    factory.setCrc32cEnabled(flags.isCrc32cEnabled());
+                    factory.setTreeHashEnabled(flags.isTreeHashEnabled());
+                    factory.setDirectIO(directIO);
+                    factory.setMetrics(metrics);
+                    rateLimiter.setMetrics(metrics);
+                    factory.setRateLimiter(rateLimited ? rateLimiter : null);
+                    Future<?> rateControl = (rateLimited ? controlRateLimiter(out, scanner, rateLimiter) : null);
+                    HashCache cache = (hashCache ? openHashCache(out, hashCacheSize) : null);
+                    factory.setHashCache(cache);
+                    HardlinkTable links = (hardlinks ? new HardlinkTable() : null);
+                    factory.setHardlinkTable(links);
+                    factory.setJournal(journal);
                     PathStream stream = new PathStream(inputFiles.toArray(Path[]::new), hiddenFiles);
-                    stream.stream((e) -> {
-                        Path file = e.getPath();
+                    stream.setMetrics(metrics);
+                    stream.setParallelism(listingThreads);
+                    
+                    PathScanner pathScanner = null;
+                    if (prescan) {
+                        PathStream scanStream = new PathStream(inputFiles.toArray(Path[]::new), hiddenFiles);
+                        scanStream.setParallelism(listingThreads);
+                        pathScanner = new PathScanner(scanStream);
+                        pathScanner.scan();
+                        out.println("Found " + pathScanner.getFiles() + " files and " + pathScanner.getDirectories()
+                                + " directories with " + UIUtils.formatBytes(pathScanner.getBytes()) + " in total");
+                    }
+                    PathScanner finalScanner = pathScanner;
+                    AtomicLong processedBytes = new AtomicLong(0);
+                    ThroughputEstimator throughput = new ThroughputEstimator();
+                    
+                    //same check as the default onShouldInterrupt of the factory
+                    TaskExecutor.Scope scope = TaskExecutor.shared().newScope(Thread::interrupted);
+                    ArrayDeque<PendingEntry> pending = new ArrayDeque<>();
+                    int window = (hashThreads == 1 ? 0 : hashThreads);
+                    Function<Callable<FileEntry>, Future<FileEntry>> submit = (task) -> {
+                        if (window == 0 && !watched) {
+                            FutureTask<FileEntry> inline = new FutureTask<>(task);
+                            inline.run();
+                            return inline;
+                        }
+                        //hashing waits for a core inside the task, reads are not capped by the processors
+                        return scope.forkIO(task);
+                    };
+                    ArrayDeque<PendingEntry> deferred = new ArrayDeque<>();
+                    Consumer<PendingEntry> complete = (p) -> {
                         try {
-                            if (e.getError() != null) {
-                                throw e.getError();
-                            }
-                            if (finalVerbose) {
-                                if (Files.isRegularFile(file)) {
-                                    long size = Files.size(file);
-                                    out.print("[" + UIUtils.formatBytesShort(size) + "] ");
+                            if (watched && !p.retry && (!finalWatchdog.await(p.file, p.future) || finalWatchdog.isDeferred(p.file))) {
+                                //keeps its place in the list until the retry
+                                fs.reserveFile(FileEntryFactory.toPhantomPath(p.root, p.file));
+                                deferred.add(p);
+                                finalMetrics.increment(OperationMetrics.Counter.DEFERRED);
+                                if (finalVerbose) {
+                                    out.println("Stalled for " + (finalWatchdog.getTimeoutMillis() / 1000) + "s, deferred: " + p.file);
                                 }
-                                out.println(file.toString());
+                                return;
+                            }
+                            FileEntry entry = scope.join(p.future);
+                            if (entry.getType().equals(FileEntryType.FILE)) {
+                                processedBytes.addAndGet(entry.getSize());
                             }
-                            FileEntry entry = factory.newFileEntry(e.getRoot(), file);
                             fs.writeEntry(entry);
+                            if (finalJournal != null) {
+                                finalJournal.add(entry);
+                            }
                         } catch (Throwable t) {
+                            if (p.retry) {
+                                fs.releaseFile(FileEntryFactory.toPhantomPath(p.root, p.file));
+                            }
                             errorCount.incrementAndGet();
-                            out.println("File rejected: " + file);
+                            finalMetrics.increment(OperationMetrics.Counter.ERRORS);
+                            out.println("File rejected: " + p.file);
                             t.printStackTrace(out);
                         }
-                    });
+                        if (finalJournal != null) {
+                            try {
+                                finalJournal.checkpoint();
+                            } catch (IOException ex) {
+                                out.println("Failed to write the journal");
+                                ex.printStackTrace(out);
+                            }
+                        }
+                    };
+                    
+                    //read in location order, written in listing order
+                    List<Path> batchRoots = new ArrayList<>();
+                    List<Path> batchFiles = new ArrayList<>();
+                    List<Callable<FileEntry>> batchTasks = new ArrayList<>();
+                    List<BasicFileAttributes> batchAttributes = new ArrayList<>();
+                    Runnable flushBatch = () -> {
+                        List<Future<FileEntry>> futures = new ArrayList<>(Collections.nCopies(batchTasks.size(), null));
+                        ArrayDeque<Integer> reading = new ArrayDeque<>();
+                        try {
+                            for (int i : LocalityOrder.order(batchAttributes)) {
+                                futures.set(i, submit.apply(batchTasks.get(i)));
+                                reading.add(i);
+                                while (reading.size() > window) {
+                                    int r = reading.poll();
+                                    if (watched) {
+                                        finalWatchdog.await(batchFiles.get(r), futures.get(r));
+                                    } else {
+                                        scope.await(futures.get(r));
+                                    }
+                                }
+                            }
+                        } catch (InterruptedException ex) {
+                            //the remaining files are rejected when joined
+                            scope.cancel();
+                            for (int i = 0; i < futures.size(); i++) {
+                                if (futures.get(i) == null) {
+                                    futures.set(i, CompletableFuture.failedFuture(ex));
+                                }
+                            }
+                        }
+                        for (int i = 0; i < futures.size(); i++) {
+                            complete.accept(new PendingEntry(batchRoots.get(i), batchFiles.get(i), batchTasks.get(i), futures.get(i), false));
+                        }
+                        batchRoots.clear();
+                        batchFiles.clear();
+                        batchTasks.clear();
+                        batchAttributes.clear();
+                    };
+                    
+                    try (scope; cache) {
+                        stream.stream((e) -> {
+                            Path file = e.getPath();
+                            Callable<FileEntry> task = () -> {
+                                if (e.getError() != null) {
+                                    throw e.getError();
+                                }
+                                if (finalWatchdog == null) {
+                                    return factory.newFileEntry(e.getRoot(), file, e.getAttributes());
+                                }
+                                FileWatchdog.Watch watch = finalWatchdog.start(file);
+                                try {
+                                    return factory.newFileEntry(e.getRoot(), file, e.getAttributes());
+                                } finally {
+                                    finalWatchdog.finish(watch);
+                                }
+                            };
+                            if (finalVerbose && e.getError() == null) {
+                                if (finalScanner != null) {
+                                    long done = processedBytes.get();
+                                    throughput.update(done);
+                                    double estimate = throughput.estimateSeconds(finalScanner.getBytes() - done);
+                                    out.print("[" + UIUtils.formatPercentage(done, finalScanner.getBytes()) + ", "
+                                            + (Double.isFinite(estimate) ? UIUtils.formatTimeCountdown((long) estimate) : "--") + "] ");
+                                }
+                                if (e.getAttributes().isRegularFile()) {
+                                    long size = e.getAttributes().size();
+                                    out.print("[" + UIUtils.formatBytesShort(size) + "] ");
+                                }
+                                out.println(file.toString());
+                            }
+                            
+                            if (finalLocality) {
+                                batchRoots.add(e.getRoot());
+                                batchFiles.add(file);
+                                batchTasks.add(task);
+                                batchAttributes.add(e.getAttributes());
+                                if (batchTasks.size() >= LocalityOrder.DEFAULT_BATCH_SIZE) {
+                                    flushBatch.run();
+                                }
+                                return;
+                            }
+                            
+                            Future<FileEntry> future;
+                            if (e.getError() != null) {
+                                FutureTask<FileEntry> inline = new FutureTask<>(task);
+                                inline.run();
+                                future = inline;
+                            } else {
+                                future = submit.apply(task);
+                            }
+                            pending.add(new PendingEntry(e.getRoot(), file, task, future, false));
+                            
+                            while (pending.size() > window) {
+                                complete.accept(pending.poll());
+                            }
+                        });
+                        while (!pending.isEmpty()) {
+                            complete.accept(pending.poll());
+                        }
+                        flushBatch.run();
+                        
+                        //stalled files are retried without a timeout, they no longer block anything
+                        if (!deferred.isEmpty() && finalVerbose) {
+                            out.println("Retrying " + deferred.size() + " deferred files");
+                        }
+                        while (!deferred.isEmpty()) {
+                            PendingEntry p = deferred.poll();
+                            //the cancelled read may still be blocked, never read the same file twice at once
+                            scope.awaitExit(p.future);
+                            pending.add(new PendingEntry(p.root, p.file, p.task, scope.forkIO(p.task), true));
+                            while (pending.size() >= deferredThreads) {
+                                complete.accept(pending.poll());
+                            }
+                        }
+                        while (!pending.isEmpty()) {
+                            complete.accept(pending.poll());
+                        }
+                    } finally {
+                        if (rateControl != null) {
+                            rateControl.cancel(true);
+                        }
+                    }
                     fs.validate();
 
                     FileEntry rootEntry = fs.getEntry(PhantomPath.of("/"));
@@ -385,28 +786,58 @@ public class CreateCommand {
 
                     OutputStream toOutput = fileOut;
                     if (password != null) {
-                        toOutput = new GZIPOutputStream(new EncryptedOutputStream(fileOut, userSalt, password));
+                        EncryptedOutputStream encrypted = new EncryptedOutputStream(fileOut, userSalt, password);
+                        encrypted.setMetrics(metrics);
+                        toOutput = new GZIPOutputStream(encrypted);
                         Arrays.fill(password, '\0');
                     }
                     
                     try (FileEntryWriter writer = new FileEntryWriter(new OutputStreamWriter(toOutput, StandardCharsets.UTF_8), flags)) {
+                        writer.setMetrics(metrics);
                         FileEntry[] entries = fs.listEntries();
                         for (FileEntry e : entries) {
                             writer.writeFileEntry(e);
                         }
                     }
                     
+                    if (journal != null) {
+                        try {
+                            journal.delete();
+                        } catch (IOException ex) {
+                            out.println("Failed to delete the journal " + journal.getDirectory());
+                            ex.printStackTrace(out);
+                        }
+                    }
+                    
                     if (verbose) {
                         out.println("Total size: " + UIUtils.formatBytes(rootEntry.getSize()));
                         out.println("Files: " + rootEntry.getFiles());
                         out.println("Directories: " + rootEntry.getDirectories());
                         out.println("Errors: " + errorCount.get());
+                        if (cache != null) {
+                            out.println("Hash cache hits: " + cache.getHits() + " of " + (cache.getHits() + cache.getMisses()));
+                        }
+                        if (links != null) {
+                            printHardlinks(out, links);
+                        }
                     } else {
                         if (errorCount.get() != 0) {
                             out.println("Errors: " + errorCount.get());
                         }
                     }
                     
+                    if (watchdog != null && (verbose || latency)) {
+                        printLatency(out, watchdog);
+                    }
+                    
+                    metrics.finish();
+                    if (printMetrics) {
+                        out.print(metrics.toReport());
+                    }
+                    if (reportFile != null) {
+                        writeReport(out, metrics, reportFile);
+                    }
+                    
                     return errorCount.get();
                 } finally {
                     if (password != null) {
@@ -417,7 +848,246 @@ public class CreateCommand {
         } catch (Throwable t) {
             temp.deleteFiles();
             throw t;
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ex) {
+                    out.println("Failed to write the journal");
+                    ex.printStackTrace(out);
+                }
+            }
+        }
+    }
+
+    static void printLatency(PrintStream out, FileWatchdog watchdog) {
+        out.println("Latency: average " + formatNanos(watchdog.getAverageNanos())
+                + ", p50 <= " + formatNanos(watchdog.getPercentileNanos(50))
+                + ", p99 <= " + formatNanos(watchdog.getPercentileNanos(99))
+                + ", max " + formatNanos(watchdog.getMaxNanos())
+                + " (" + watchdog.getFiles() + " files)");
+        if (watchdog.getDeferred() != 0) {
+            out.println("Deferred: " + watchdog.getDeferred() + " files stalled for more than " + (watchdog.getTimeoutMillis() / 1000) + "s");
+        }
+        List<FileWatchdog.Latency> slowest = watchdog.getSlowest();
+        if (!slowest.isEmpty()) {
+            out.println("Slowest files:");
+            for (FileWatchdog.Latency l : slowest) {
+                out.println("  " + formatNanos(l.nanos()) + " [" + UIUtils.formatBytesShort(l.bytes()) + "] " + l.path()
+                        + (l.deferred() ? " (deferred)" : ""));
+            }
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000_000L) {
+            return String.format(Locale.ROOT, "%.2fs", nanos / 1E9);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1E6);
+    }
+
+    static HashCache openHashCache(PrintStream out, int maxEntries) {
+        try {
+            return HashCache.open(Configuration.getPath().resolve(HashCache.FILE_NAME), maxEntries);
+        } catch (IOException ex) {
+            out.println("Hash cache is not available, all files will be read");
+            ex.printStackTrace(out);
+            return null;
+        }
+    }
+
+    static boolean parseRateLimit(PrintStream out, RateLimiter limiter, String argument, String value) {
+        switch (argument) {
+            case "-maxspeed" -> {
+                try {
+                    limiter.setBytesPerSecond(SpaceUnit.parse(value));
+                } catch (NumberFormatException ex) {
+                    out.println("Not a size: " + value);
+                    ex.printStackTrace(out);
+                    return false;
+                }
+            }
+            case "-maxfiles" -> {
+                try {
+                    long files = Long.parseLong(value);
+                    if (files < 0) {
+                        out.println("Files per second can't be negative");
+                        return false;
+                    }
+                    limiter.setFilesPerSecond(files);
+                } catch (NumberFormatException ex) {
+                    out.println("Not a integer: " + value);
+                    ex.printStackTrace(out);
+                    return false;
+                }
+            }
+            case "-schedule" -> {
+                try {
+                    limiter.setSchedule(RateLimiter.parseSchedule(value));
+                } catch (IllegalArgumentException ex) {
+                    out.println("Invalid schedule: " + value);
+                    ex.printStackTrace(out);
+                    return false;
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads commands changing the limits from the input while a job runs.
+     *
+     * @param out The output
+     * @param scanner The input
+     * @param limiter The limiter of the job
+     * @return the task reading the input, to be cancelled when the job ends
+     */
+    static Future<?> controlRateLimiter(PrintStream out, Scanner scanner, RateLimiter limiter) {
+        return TaskExecutor.shared().start(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    String[] command = scanner.nextLine().trim().split("\\s+", 2);
+                    String argument = (command.length > 1 ? command[1] : null);
+                    switch (command[0].toLowerCase()) {
+                        case "speed" -> {
+                            if (argument != null && parseRateLimit(out, limiter, "-maxspeed", argument)) {
+                                long speed = limiter.getBytesPerSecond();
+                                out.println("Speed limit: " + (speed == 0 ? "none" : UIUtils.formatSpeed(speed)));
+                            }
+                        }
+                        case "files" -> {
+                            if (argument != null && parseRateLimit(out, limiter, "-maxfiles", argument)) {
+                                long files = limiter.getFilesPerSecond();
+                                out.println("Files limit: " + (files == 0 ? "none" : files + " files/s"));
+                            }
+                        }
+                        case "pause" -> {
+                            limiter.setPaused(true);
+                            out.println("Paused");
+                        }
+                        case "resume" -> {
+                            limiter.setPaused(false);
+                            out.println("Resumed");
+                        }
+                        case "" -> {
+                        }
+                        default -> {
+                            out.println("Commands: speed [bytes/s], files [files/s], pause, resume");
+                        }
+                    }
+                }
+            } catch (NoSuchElementException | IllegalStateException ex) {
+                //input closed
+            }
+        });
+    }
+
+    static void printHardlinks(PrintStream out, HardlinkTable links) {
+        out.println("Hard links: " + links.getReusedFiles() + " files not read, "
+                + UIUtils.formatBytes(links.getSavedBytes()) + " saved");
+    }
+
+    static Path parseReportFile(PrintStream out, String argument) {
+        try {
+            return Path.of(argument).toAbsolutePath().normalize();
+        } catch (InvalidPathException ex) {
+            out.println("Invalid report path: " + argument);
+            ex.printStackTrace(out);
+            return null;
+        }
+    }
+
+    static void writeReport(PrintStream out, OperationMetrics metrics, Path reportFile) {
+        try {
+            Files.writeString(reportFile, metrics.toJson(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            out.println("Failed to write report to " + reportFile);
+            ex.printStackTrace(out);
+        }
+    }
+
+    static boolean parseDisable(PrintStream out, FileEntryWriter.Flags flags, String argument) {
+        String[] split = argument.split(",");
+        if (split.length == 0) {
+            out.println("Disable argument is empty: " + argument);
+            return false;
+        }
+        for (String s : split) {
+            switch (s.toLowerCase()) {
+                case "type" -> {
+                    flags.setTypeEnabled(false);
+                }
+                case "timestamps" -> {
+                    flags.setTimestampsEnabled(false);
+                }
+                case "size" -> {
+                    flags.setSizeEnabled(false);
+                }
+                case "filesanddirectories" -> {
+                    flags.setFilesAndDirectoriesEnabled(false);
+                }
+                case "sha256" -> {
+                    flags.setSha256Enabled(false);
+                }
+                case "sample" -> {
+                    flags.setSampleEnabled(false);
+                }
+                case "metadata" -> {
+                    flags.setMetadataEnabled(false);
+                }
+                default -> {
+                    out.println("Unknown disable option: " + s);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static char[] readNewPassword(PrintStream out) {
+        Console console = System.console();
+        if (console == null) {
+            out.println("Console is not available for password reading");
+            return null;
+        }
+        while (true) {
+            char[] pass = console.readPassword("[%s]", "Password:");
+            try {
+                if (pass == null || pass.length == 0) {
+                    out.println("Password is empty, try again");
+                    continue;
+                }
+                char[] confirmPass = console.readPassword("[%s]", "Confirm Password:");
+                try {
+                    if (!Arrays.equals(pass, confirmPass)) {
+                        out.println("Passwords are not equal, try again");
+                        continue;
+                    }
+                } finally {
+                    if (confirmPass != null) {
+                        Arrays.fill(confirmPass, '\0');
+                    }
+                }
+                return pass.clone();
+            } finally {
+                if (pass != null) {
+                    Arrays.fill(pass, '\0');
+                }
+            }
+        }
+    }
+
+    static byte[] readSalt(PrintStream out, Scanner scanner) {
+        out.println("Type random characters below or leave empty to skip.");
+        out.print("[Salt:]");
+        String salt = scanner.nextLine();
+        if (salt != null && salt.length() > 0) {
+            return salt.getBytes(StandardCharsets.UTF_8);
         }
+        return null;
     }
 
     private CreateCommand() {
@@ -0,0 +1,352 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.ui.cli;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.zip.GZIPOutputStream;
+import matinilad.contentlist.phantomfs.entry.FileEntryWriter;
+import matinilad.contentlist.phantomfs.utils.EncryptedOutputStream;
+import matinilad.contentlist.phantomfs.utils.SyntheticListGenerator;
+import matinilad.contentlist.phantomfs.utils.TempFileList;
+import matinilad.contentlist.ui.UIUtils;
+
+/**
+ *
+ * @author Cien
+ */
+public class GenerateCommand {
+
+    private static void printHelp(PrintStream out) {
+        out.println("Generates a synthetic list for testing, the same arguments always generate the same list.");
+        out.println("Arguments (Can be used in any order):");
+        out.println("-out [file] - Sets the output file [REQUIRED!]");
+        out.println("-count [entries] - Sets the maximum number of entries (default 100000)");
+        out.println("-seed [number] - Sets the random seed (default 0)");
+        out.println("-depth [number] - Sets the maximum directory depth (default 8)");
+        out.println("-dirs [number] - Sets the number of directories per directory (default 8)");
+        out.println("-files [number] - Sets the number of files per directory (default 16)");
+        out.println("-nameLength [min,max] - Sets the name length range (default 4,16)");
+        out.println("-nameDistribution [distribution] - Sets the name length distribution (default uniform)");
+        out.println("-size [min,max] - Sets the file size range in bytes (default 0,16777216)");
+        out.println("-sizeDistribution [distribution] - Sets the file size distribution (default log_uniform)");
+        out.println("  Distributions: fixed, uniform, log_uniform, normal");
+        out.println("-duplicates [ratio] - Sets the chance of a file duplicating a recent one, from 0 to 1");
+        out.println("-metadata [ratio] - Sets the chance of a entry having generated metadata, from 0 to 1");
+        out.println("-content [random_hashes/zeros/pseudo_random] - Sets the content of the files (default random_hashes)");
+        out.println("  zeros and pseudo_random compute real hashes, so the list matches a tree created with -tree");
+        out.println("-tree [directory] - Also creates the files in a empty directory, zeros creates sparse files");
+        out.println("-name [name] - Sets the name of the list");
+        out.println("-author [author] - Sets the author of the list");
+        out.println("-desc [description] - Sets the description of the list");
+        out.println("-sampleSize [size] - Sets the sample size for files");
+        out.println("-verbose - Enables verbose mode");
+        out.println("-encrypt - Encrypts (and compresses) the file with a password");
+        out.println("-replace - Replaces the output file without asking, if it already exists");
+        out.println("-disable [type/timestamps/size/filesAndDirectories/sha256/sample/metadata]");
+        out.println("  Same as in -create");
+    }
+
+    private static long[] parseRange(String argument) {
+        String[] split = argument.split(",");
+        if (split.length != 2) {
+            throw new NumberFormatException("Not a range: " + argument);
+        }
+        return new long[]{Long.parseLong(split[0].trim()), Long.parseLong(split[1].trim())};
+    }
+
+    public static int run(InputStream in, PrintStream out, String[] args) throws Exception {
+        if (args.length == 0) {
+            printHelp(out);
+            return 0;
+        }
+        if (args.length == 1 && args[0].equalsIgnoreCase("-help")) {
+            printHelp(out);
+            return 0;
+        }
+
+        Scanner scanner = new Scanner(in);
+
+        Path outputFile = null;
+        Path treeDirectory = null;
+        long count = 100000;
+        boolean verbose = false;
+        boolean encrypt = false;
+        boolean replace = false;
+        SyntheticListGenerator generator = new SyntheticListGenerator();
+        FileEntryWriter.Flags flags = new FileEntryWriter.Flags();
+
+        for (int i = 0; i < args.length; i++) {
+            String argument = args[i].toLowerCase();
+            String nextArgument = null;
+            if ((i + 1) < args.length) {
+                nextArgument = args[i + 1];
+            }
+
+            switch (argument) {
+                case "-verbose" -> {
+                    verbose = true;
+                    continue;
+                }
+                case "-encrypt" -> {
+                    encrypt = true;
+                    continue;
+                }
+                case "-replace" -> {
+                    replace = true;
+                    continue;
+                }
+            }
+
+            if (nextArgument == null) {
+                out.println("A argument is required for " + argument);
+                out.println("Type -help for a list of arguments");
+                return -1;
+            }
+
+            i++;
+
+            try {
+                switch (argument) {
+                    case "-out", "-tree" -> {
+                        Path path;
+                        try {
+                            path = Path.of(nextArgument).toAbsolutePath().normalize();
+                        } catch (InvalidPathException ex) {
+                            out.println("Invalid path: " + nextArgument);
+                            ex.printStackTrace(out);
+                            return -1;
+                        }
+                        if (argument.equals("-out")) {
+                            outputFile = path;
+                        } else {
+                            treeDirectory = path;
+                        }
+                    }
+                    case "-count" -> {
+                        count = Long.parseLong(nextArgument);
+                        if (count < 0) {
+                            out.println("Count is negative");
+                            return -1;
+                        }
+                    }
+                    case "-seed" -> {
+                        generator.setSeed(Long.parseLong(nextArgument));
+                    }
+                    case "-depth" -> {
+                        generator.setMaxDepth(Integer.parseInt(nextArgument));
+                    }
+                    case "-dirs" -> {
+                        generator.setDirectoriesPerDirectory(Integer.parseInt(nextArgument));
+                    }
+                    case "-files" -> {
+                        generator.setFilesPerDirectory(Integer.parseInt(nextArgument));
+                    }
+                    case "-namelength" -> {
+                        long[] range = parseRange(nextArgument);
+                        generator.setNameLength((int) range[0], (int) range[1]);
+                    }
+                    case "-namedistribution" -> {
+                        generator.setNameLengthDistribution(SyntheticListGenerator.Distribution.valueOf(nextArgument.toUpperCase()));
+                    }
+                    case "-size" -> {
+                        long[] range = parseRange(nextArgument);
+                        if (range[1] < range[0]) {
+                            out.println("Max size is smaller than min size: " + nextArgument);
+                            return -1;
+                        }
+                        generator.setMinFileSize(range[0]);
+                        generator.setMaxFileSize(range[1]);
+                    }
+                    case "-sizedistribution" -> {
+                        generator.setFileSizeDistribution(SyntheticListGenerator.Distribution.valueOf(nextArgument.toUpperCase()));
+                    }
+                    case "-duplicates" -> {
+                        generator.setDuplicateRatio(Double.parseDouble(nextArgument));
+                    }
+                    case "-metadata" -> {
+                        generator.setMetadataRatio(Double.parseDouble(nextArgument));
+                    }
+                    case "-content" -> {
+                        generator.setContent(SyntheticListGenerator.Content.valueOf(nextArgument.toUpperCase()));
+                    }
+                    case "-name" -> {
+                        generator.setName(nextArgument);
+                    }
+                    case "-author" -> {
+                        generator.setAuthor(nextArgument);
+                    }
+                    case "-desc", "-description" -> {
+                        generator.setDescription(nextArgument);
+                    }
+                    case "-samplesize" -> {
+                        generator.setSampleSize(Integer.parseInt(nextArgument));
+                    }
+                    case "-disable" -> {
+                        if (!CreateCommand.parseDisable(out, flags, nextArgument)) {
+                            return -1;
+                        }
+                    }
+                    default -> {
+                        out.println("Unknown argument: " + argument);
+                        out.println("Type -help for a list of arguments");
+                        return -1;
+                    }
+                }
+            } catch (IllegalArgumentException ex) {
+                out.println("Invalid value for " + argument + ": " + nextArgument);
+                out.println(ex.getLocalizedMessage());
+                return -1;
+            }
+        }
+
+        if (outputFile == null) {
+            out.println("Output file must be set!");
+            return -1;
+        }
+
+        Path filename = outputFile.getFileName();
+        if (filename == null) {
+            out.println("Output file has no name!");
+            return -1;
+        }
+
+        if (!filename.toString().contains(".")) {
+            String ext = (encrypt ? "bin" : "csv");
+            String newName = filename.toString() + "." + ext;
+            if (outputFile.getParent() == null) {
+                outputFile = outputFile.getFileSystem().getPath(newName);
+            } else {
+                outputFile = outputFile.getParent().resolve(newName);
+            }
+        }
+
+        if (Files.exists(outputFile)) {
+            if (Files.isDirectory(outputFile)) {
+                out.println("Output file is a directory!");
+                return -1;
+            }
+
+            if (!replace) {
+                out.println("Replace " + outputFile + " ?");
+                out.print("[Y/N:]");
+                String response = scanner.nextLine().toLowerCase();
+                if (!response.equals("y") && !response.equals("yes")) {
+                    out.println("Operation canceled");
+                    return 0;
+                }
+            }
+        }
+
+        if (treeDirectory != null) {
+            if (Files.exists(treeDirectory)) {
+                if (!Files.isDirectory(treeDirectory)) {
+                    out.println("Tree directory is not a directory: " + treeDirectory);
+                    return -1;
+                }
+                try (var list = Files.list(treeDirectory)) {
+                    if (list.findAny().isPresent()) {
+                        out.println("Tree directory is not empty: " + treeDirectory);
+                        return -1;
+                    }
+                }
+            } else {
+                Files.createDirectories(treeDirectory);
+            }
+        }
+
+        if (!flags.isSampleEnabled()) {
+            generator.setSampleSize(0);
+        }
+        generator.setSha256Enabled(flags.isSha256Enabled());
+
+        long start = System.currentTimeMillis();
+
+        TempFileList temp = new TempFileList();
+        long written;
+        try {
+            if (outputFile.getParent() != null) {
+                temp.createDirectories(outputFile.getParent());
+            }
+            try (OutputStream fileOut = temp.newOutputStream(outputFile)) {
+                char[] password = null;
+                try {
+                    OutputStream toOutput = fileOut;
+                    if (encrypt) {
+                        password = CreateCommand.readNewPassword(out);
+                        if (password == null) {
+                            return -1;
+                        }
+                        byte[] userSalt = CreateCommand.readSalt(out, scanner);
+                        toOutput = new GZIPOutputStream(new EncryptedOutputStream(fileOut, userSalt, password));
+                        Arrays.fill(password, '\0');
+                    }
+
+                    if (verbose) {
+                        out.println("Writing list to " + outputFile);
+                    }
+                    try (FileEntryWriter writer = new FileEntryWriter(new OutputStreamWriter(toOutput, StandardCharsets.UTF_8), flags)) {
+                        written = generator.writeList(writer, count);
+                    }
+                } finally {
+                    if (password != null) {
+                        Arrays.fill(password, '\0');
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            temp.deleteFiles();
+            throw t;
+        }
+
+        if (treeDirectory != null) {
+            if (verbose) {
+                out.println("Creating tree in " + treeDirectory);
+            }
+            generator.createTree(treeDirectory, count);
+        }
+
+        if (verbose) {
+            out.println("Entries: " + written);
+            out.println("Time: " + UIUtils.formatTimeCountdown((System.currentTimeMillis() - start) / 1000));
+        }
+
+        return 0;
+    }
+
+    private GenerateCommand() {
+
+    }
+}
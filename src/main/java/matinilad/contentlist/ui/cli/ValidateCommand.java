@@ -37,15 +37,33 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.GZIPInputStream;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
 import matinilad.contentlist.phantomfs.entry.FileEntryReader;
+import matinilad.contentlist.phantomfs.entry.FileEntryType;
 import matinilad.contentlist.phantomfs.entry.FileEntryValidator;
 import matinilad.contentlist.phantomfs.entry.FileEntryValidatorResult;
 import matinilad.contentlist.phantomfs.utils.EncryptedInputStream;
+import matinilad.contentlist.phantomfs.utils.HardlinkTable;
+import matinilad.contentlist.phantomfs.utils.HashCache;
+import matinilad.contentlist.phantomfs.utils.LocalityOrder;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.ScrubState;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
+import matinilad.contentlist.ui.SpaceUnit;
 import matinilad.contentlist.ui.UIUtils;
+import matinilad.contentlist.ui.cfg.Configuration;
 
 /**
  *
@@ -53,12 +71,41 @@ import matinilad.contentlist.ui.UIUtils;
  */
 public class ValidateCommand {
 
+    private static class PendingResult {
+
+        final FileEntryValidator validator;
+        final Future<FileEntryValidatorResult> future;
+
+        PendingResult(FileEntryValidator validator, Future<FileEntryValidatorResult> future) {
+            this.validator = validator;
+            this.future = future;
+        }
+    }
+
     private static void printHelp(PrintStream out) {
         out.println("Arguments (Can be used in any order):");
         out.println("-in [input file] - Sets the input file [REQUIRED!]");
         out.println("-root [root directory] - Sets the root directory [REQUIRED!]");
         out.println("-verbose - Enables verbose mode, otherwise only errors will be displayed");
         out.println("-decrypt - Use this if the file is encrypted");
+        out.println("-fastOnly - Checks only the CRC32C checksum of files that have one, instead of the SHA-256");
+        out.println("-quick - Checks only the sample points of files that have them, reading a small part of each file");
+        out.println("-threads [threads] - Validates files in parallel, hashing uses at most one thread per processor, results keep the list order (default 1)");
+        out.println("-locality - Validates files in batches ordered by their location on disk, reducing seeks on hard disks");
+        out.println("-hardlinks - Reads files with more than one hard link once, reusing the hashes for the other links");
+        out.println("-hashCache - Reuses hashes of files that did not change since they were last read, those files are not read again and corruption in them is not detected");
+        out.println("-hashCacheSize [entries] - Sets the maximum number of files in the hash cache (default " + HashCache.DEFAULT_MAX_ENTRIES + ")");
+        out.println("-scrubBytes [bytes] - Validates only the least recently verified files up to a size, like 500GB, the next runs continue from there");
+        out.println("-scrubDays [days] - Scrubs enough files per run to validate the whole list once every that many daily runs");
+        out.println("-scrubTime [minutes] - Scrubs until a time limit, the files not validated are the first of the next run");
+        out.println("Scrubs read the whole files, they don't use the hash cache and can't be used with -quick or -fastOnly");
+        out.println("-maxSpeed [bytes/s] - Limits the bytes read per second, like 50MB or 20MiB");
+        out.println("-maxFiles [files/s] - Limits the files read per second");
+        out.println("-schedule [windows] - Slows down or pauses at certain times, like mon-fri@09:00-18:00=0.25,12:00-13:00=0");
+        out.println("When limited, type speed [bytes/s], files [files/s], pause or resume while running to change the limits");
+        out.println("-direct - Reads files with direct I/O, bypassing the page cache, if supported by the file system");
+        out.println("-metrics - Prints a timing breakdown of the operation when done");
+        out.println("-report [file] - Writes the operation metrics as json to a file");
     }
 
     public static int run(InputStream in, PrintStream out, String[] args) throws Exception {
@@ -75,6 +122,21 @@ public class ValidateCommand {
         Path rootDirectory = null;
         boolean verbose = false;
         boolean decrypt = false;
+        boolean printMetrics = false;
+        Path reportFile = null;
+        int threads = 1;
+        boolean hashCache = false;
+        boolean fastOnly = false;
+        boolean quick = false;
+        boolean directIO = false;
+        boolean locality = false;
+        boolean hardlinks = false;
+        RateLimiter rateLimiter = new RateLimiter();
+        boolean rateLimited = false;
+        int hashCacheSize = HashCache.DEFAULT_MAX_ENTRIES;
+        long scrubBytes = 0;
+        int scrubDays = 0;
+        int scrubMinutes = 0;
 
         Scanner scanner = new Scanner(in);
 
@@ -94,6 +156,34 @@ public class ValidateCommand {
                     decrypt = true;
                     continue;
                 }
+                case "-metrics" -> {
+                    printMetrics = true;
+                    continue;
+                }
+                case "-fastonly" -> {
+                    fastOnly = true;
+                    continue;
+                }
+                case "-quick" -> {
+                    quick = true;
+                    continue;
+                }
+                case "-hashcache" -> {
+                    hashCache = true;
+                    continue;
+                }
+                case "-direct" -> {
+                    directIO = true;
+                    continue;
+                }
+                case "-locality" -> {
+                    locality = true;
+                    continue;
+                }
+                case "-hardlinks" -> {
+                    hardlinks = true;
+                    continue;
+                }
             }
 
             if (nextArgument == null) {
@@ -117,6 +207,12 @@ public class ValidateCommand {
                         return -1;
                     }
                 }
+                case "-report" -> {
+                    reportFile = CreateCommand.parseReportFile(out, nextArgument);
+                    if (reportFile == null) {
+                        return -1;
+                    }
+                }
                 case "-root" -> {
                     try {
                         rootDirectory = Path.of(nextArgument).toRealPath();
@@ -129,6 +225,70 @@ public class ValidateCommand {
                         return -1;
                     }
                 }
+                case "-maxspeed", "-maxfiles", "-schedule" -> {
+                    if (!CreateCommand.parseRateLimit(out, rateLimiter, argument, nextArgument)) {
+                        return -1;
+                    }
+                    rateLimited = true;
+                }
+                case "-hashcachesize" -> {
+                    try {
+                        hashCacheSize = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (hashCacheSize < 1) {
+                        out.println("Hash cache size must be at least 1");
+                        return -1;
+                    }
+                }
+                case "-scrubbytes" -> {
+                    try {
+                        scrubBytes = SpaceUnit.parse(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a size: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (scrubBytes < 1) {
+                        out.println("Scrub size must be at least 1 byte");
+                        return -1;
+                    }
+                }
+                case "-scrubdays", "-scrubtime" -> {
+                    int value;
+                    try {
+                        value = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (value < 1) {
+                        out.println((argument.equals("-scrubdays") ? "Scrub days" : "Scrub time") + " must be at least 1");
+                        return -1;
+                    }
+                    if (argument.equals("-scrubdays")) {
+                        scrubDays = value;
+                    } else {
+                        scrubMinutes = value;
+                    }
+                }
+                case "-threads" -> {
+                    try {
+                        threads = Integer.parseInt(nextArgument);
+                    } catch (NumberFormatException ex) {
+                        out.println("Not a integer: " + nextArgument);
+                        ex.printStackTrace(out);
+                        return -1;
+                    }
+                    if (threads < 1) {
+                        out.println("Threads must be at least 1");
+                        return -1;
+                    }
+                }
             }
         }
 
@@ -142,6 +302,19 @@ public class ValidateCommand {
             return -1;
         }
 
+        boolean scrub = (scrubBytes > 0 || scrubDays > 0 || scrubMinutes > 0);
+        if (scrub && (quick || fastOnly)) {
+            out.println("A scrub reads the whole files, it can't be used with -quick or -fastOnly");
+            return -1;
+        }
+        if (scrub && hashCache) {
+            //a cached file is not read, it would be marked as verified without its contents being checked
+            hashCache = false;
+            if (verbose) {
+                out.println("The hash cache is not used when scrubbing");
+            }
+        }
+
         if (!decrypt && inputFile.getFileName().toString().toLowerCase().endsWith(".bin")) {
             out.println("Is " + inputFile.toString() + " encrypted?");
             out.print("[Y/N:]");
@@ -151,6 +324,11 @@ public class ValidateCommand {
             }
         }
 
+        OperationMetrics metrics = OperationMetrics.DISABLED;
+        if (printMetrics || reportFile != null) {
+            metrics = new OperationMetrics("Validate " + inputFile.getFileName());
+        }
+
         InputStream input = Files.newInputStream(inputFile);
         if (decrypt) {
             Console console = System.console();
@@ -182,7 +360,9 @@ public class ValidateCommand {
                         //ignore
                     }
                     
-                    input = new GZIPInputStream(new EncryptedInputStream(input, password));
+                    EncryptedInputStream encrypted = new EncryptedInputStream(input, password);
+                    encrypted.setMetrics(metrics);
+                    input = new GZIPInputStream(encrypted);
                     break;
                 } finally {
                     if (password != null) {
@@ -193,11 +373,75 @@ public class ValidateCommand {
         }
 
         int errors = 0;
+        HashCache cache = (hashCache ? CreateCommand.openHashCache(out, hashCacheSize) : null);
+        int window = (threads == 1 ? 0 : threads);
+        ArrayDeque<PendingResult> pending = new ArrayDeque<>();
+        HardlinkTable links = (hardlinks ? new HardlinkTable() : null);
+        List<FileEntryValidator> batch = new ArrayList<>();
+        List<BasicFileAttributes> batchAttributes = new ArrayList<>();
+        rateLimiter.setMetrics(metrics);
+        Future<?> rateControl = (rateLimited ? CreateCommand.controlRateLimiter(out, scanner, rateLimiter) : null);
+        ScrubState scrubState = null;
 
-        try (FileEntryReader reader = new FileEntryReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+        try (FileEntryReader reader = new FileEntryReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+                TaskExecutor.Scope scope = TaskExecutor.shared().newScope(Thread::interrupted);
+                cache) {
+            reader.setMetrics(metrics);
+            
+            Iterator<FileEntry> selected = null;
+            long deadline = Long.MAX_VALUE;
+            if (scrub) {
+                List<FileEntry> entries = new ArrayList<>();
+                FileEntry e;
+                while ((e = reader.readEntry()) != null) {
+                    entries.add(e);
+                }
+                scrubState = ScrubState.open(ScrubState.fileFor(
+                        Configuration.getPath().resolve(ScrubState.DIRECTORY_NAME), inputFile, rootDirectory));
+                scrubState.retain(entries);
+                
+                long budget = Long.MAX_VALUE;
+                if (scrubBytes > 0 || scrubDays > 0) {
+                    budget = scrubBytes;
+                    if (scrubDays > 0) {
+                        long total = 0;
+                        for (FileEntry f : entries) {
+                            if (f.getType().equals(FileEntryType.FILE)) {
+                                total += f.getSize();
+                            }
+                        }
+                        budget = Math.max(budget, (total + scrubDays - 1) / scrubDays);
+                    }
+                }
+                if (scrubMinutes > 0) {
+                    deadline = System.currentTimeMillis() + (scrubMinutes * 60L * 1000L);
+                }
+                List<FileEntry> toValidate = scrubState.select(entries, budget);
+                if (verbose) {
+                    long oldest = scrubState.getOldest(entries);
+                    out.println("Scrubbing " + toValidate.size() + " of " + entries.size() + " entries, oldest verification: "
+                            + (oldest == 0 ? "never" : UIUtils.asShortLocalizedDateTime(oldest)));
+                }
+                selected = toValidate.iterator();
+            }
+            
             FileEntry entry;
-            while ((entry = reader.readEntry()) != null) {
+            while ((entry = next(reader, selected)) != null) {
+                if (System.currentTimeMillis() >= deadline) {
+                    if (verbose) {
+                        out.println("Scrub time is over, the remaining files are the first of the next run");
+                    }
+                    break;
+                }
+                saveScrub(out, scrubState, false);
                 FileEntryValidator validator = new FileEntryValidator(rootDirectory, entry);
+                validator.setMetrics(metrics);
+                validator.setHashCache(cache);
+                validator.setHardlinkTable(links);
+                validator.setFastOnly(fastOnly);
+                validator.setQuick(quick);
+                validator.setDirectIO(directIO);
+                validator.setRateLimiter(rateLimited ? rateLimiter : null);
                 Path file = validator.getPath();
                 try {
                     if (verbose) {
@@ -207,25 +451,162 @@ public class ValidateCommand {
                             out.println(file.toString());
                         }
                     }
-                    FileEntryValidatorResult result = validator.validate();
-                    if (!result.success()) {
-                        throw new IOException(UIUtils.getFailureReason(result));
-                    }
                 } catch (IOException ex) {
                     errors++;
+                    metrics.increment(OperationMetrics.Counter.ERRORS);
                     out.println("Failed: " + file.toString());
                     ex.printStackTrace(out);
+                    continue;
+                }
+                
+                if (locality) {
+                    BasicFileAttributes attributes = null;
+                    try {
+                        attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (IOException ex) {
+                        //reported by the validator
+                    }
+                    batch.add(validator);
+                    batchAttributes.add(attributes);
+                    if (batch.size() >= LocalityOrder.DEFAULT_BATCH_SIZE) {
+                        errors += validateBatch(out, verbose, scope, metrics, scrubState, window, batch, batchAttributes);
+                    }
+                    continue;
+                }
+                
+                pending.add(new PendingResult(validator, submit(scope, window, validator)));
+                
+                while (pending.size() > window) {
+                    errors += complete(out, verbose, scope, metrics, scrubState, pending.poll());
                 }
             }
+            while (!pending.isEmpty()) {
+                errors += complete(out, verbose, scope, metrics, scrubState, pending.poll());
+            }
+            errors += validateBatch(out, verbose, scope, metrics, scrubState, window, batch, batchAttributes);
+        } finally {
+            if (rateControl != null) {
+                rateControl.cancel(true);
+            }
+            saveScrub(out, scrubState, true);
         }
 
         if (verbose || errors != 0) {
             out.println("Errors: " + errors);
         }
+        if (verbose && cache != null) {
+            out.println("Hash cache hits: " + cache.getHits() + " of " + (cache.getHits() + cache.getMisses()));
+        }
+        if (verbose && links != null) {
+            CreateCommand.printHardlinks(out, links);
+        }
+        if (verbose && scrubState != null) {
+            out.println("Scrubbed " + scrubState.getFilesVerified() + " files with " + UIUtils.formatBytes(scrubState.getBytesVerified()));
+        }
+        
+        metrics.finish();
+        if (printMetrics) {
+            out.print(metrics.toReport());
+        }
+        if (reportFile != null) {
+            CreateCommand.writeReport(out, metrics, reportFile);
+        }
 
         return errors;
     }
 
+    private static FileEntry next(FileEntryReader reader, Iterator<FileEntry> selected) throws IOException {
+        if (selected == null) {
+            return reader.readEntry();
+        }
+        return (selected.hasNext() ? selected.next() : null);
+    }
+
+    private static void saveScrub(PrintStream out, ScrubState state, boolean force) {
+        if (state == null) {
+            return;
+        }
+        try {
+            if (force) {
+                state.save();
+            } else {
+                state.checkpoint();
+            }
+        } catch (IOException ex) {
+            out.println("Failed to save the scrub state to " + state.getFile());
+            ex.printStackTrace(out);
+        }
+    }
+
+    private static Future<FileEntryValidatorResult> submit(TaskExecutor.Scope scope, int window, FileEntryValidator validator) {
+        if (window == 0) {
+            FutureTask<FileEntryValidatorResult> inline = new FutureTask<>(validator::validate);
+            inline.run();
+            return inline;
+        }
+        //hashing waits for a core inside the task, reads are not capped by the processors
+        return scope.forkIO(validator::validate);
+    }
+
+    /**
+     * Validates a batch in the location order of the files and reports the
+     * results in the list order, the batch is cleared.
+     */
+    private static int validateBatch(
+            PrintStream out, boolean verbose, TaskExecutor.Scope scope, OperationMetrics metrics, ScrubState scrubState, int window,
+            List<FileEntryValidator> batch, List<BasicFileAttributes> attributes
+    ) throws InterruptedException {
+        List<Future<FileEntryValidatorResult>> futures = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        ArrayDeque<Integer> reading = new ArrayDeque<>();
+        for (int i : LocalityOrder.order(attributes)) {
+            futures.set(i, submit(scope, window, batch.get(i)));
+            reading.add(i);
+            while (reading.size() > window) {
+                scope.await(futures.get(reading.poll()));
+            }
+        }
+        int errors = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            errors += complete(out, verbose, scope, metrics, scrubState, new PendingResult(batch.get(i), futures.get(i)));
+        }
+        batch.clear();
+        attributes.clear();
+        return errors;
+    }
+
+    private static int complete(
+            PrintStream out, boolean verbose, TaskExecutor.Scope scope, OperationMetrics metrics, ScrubState scrubState,
+            PendingResult p
+    ) throws InterruptedException {
+        try {
+            FileEntryValidatorResult result;
+            try {
+                result = scope.join(p.future);
+            } catch (IOException ex) {
+                //failed entries are verified too, they are reported now and checked again in a later run
+                if (scrubState != null) {
+                    scrubState.setVerified(p.validator.getEntry(), System.currentTimeMillis());
+                }
+                throw ex;
+            }
+            if (scrubState != null && !result.isCached()) {
+                scrubState.setVerified(p.validator.getEntry(), System.currentTimeMillis());
+            }
+            if (!result.success()) {
+                throw new IOException(UIUtils.getFailureReason(result));
+            }
+            if (verbose && result.isCached()) {
+                out.println("Unchanged (cached), not read: " + p.validator.getPath().toString());
+            }
+            return 0;
+        } catch (IOException ex) {
+            metrics.increment(OperationMetrics.Counter.ERRORS);
+            out.println("Failed: " + p.validator.getPath().toString());
+            ex.printStackTrace(out);
+            return 1;
+        }
+    }
+
     private ValidateCommand() {
 
     }
@@ -0,0 +1,290 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.ui.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+import matinilad.contentlist.ui.cfg.Configuration;
+
+/**
+ * A bounded ring buffer of log lines, lines pushed out of the buffer are written to a rotating file in the configuration directory.
+ *
+ * <p>
+ * Lines are addressed by a sequence number that only grows, lines with a sequence number lower than {@link #getFirst()} are no longer in memory.</p>
+ *
+ * @author Cien
+ */
+public class LogBuffer implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    public static final String SPILL_DIRECTORY = "logs";
+    public static final long SPILL_FILE_LIMIT = 16 * 1024 * 1024;
+    public static final int SPILL_FILE_COUNT = 4;
+    public static final int SPILL_DIRECTORY_MAX_FILES = 32;
+
+    private static final AtomicLong spillCounter = new AtomicLong(0);
+
+    private final int capacity;
+    private final String[] lines;
+    private final int[] levels;
+
+    private long first = 0;
+    private long next = 0;
+
+    private final String spillName = "log-" + System.currentTimeMillis() + "-" + spillCounter.getAndIncrement();
+    private Writer spillWriter = null;
+    private Path spillFile = null;
+    private long spillWritten = 0;
+    private int spillGeneration = 0;
+    private boolean spillFailed = false;
+    private boolean spillDirty = false;
+
+    public LogBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.capacity = capacity;
+        this.lines = new String[capacity];
+        this.levels = new int[capacity];
+    }
+
+    public LogBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % this.capacity);
+    }
+
+    /**
+     * Appends a text to the buffer, the text is split into lines and every line gets the same level
+     *
+     * @param level The level of the text, not null
+     * @param text The text, not null
+     */
+    public synchronized void append(Level level, String text) {
+        int levelValue = level.intValue();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                int end = i;
+                if (end > start && text.charAt(end - 1) == '\r') {
+                    end--;
+                }
+                add(levelValue, text.substring(start, end));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            add(levelValue, text.substring(start));
+        }
+    }
+
+    private void add(int level, String line) {
+        if ((this.next - this.first) >= this.capacity) {
+            int oldest = index(this.first);
+            spill(this.lines[oldest]);
+            this.lines[oldest] = null;
+            this.first++;
+        }
+        int i = index(this.next);
+        this.lines[i] = line;
+        this.levels[i] = level;
+        this.next++;
+    }
+
+    /**
+     * Returns the sequence number of the oldest line in memory
+     *
+     * @return the sequence number of the oldest line
+     */
+    public synchronized long getFirst() {
+        return first;
+    }
+
+    /**
+     * Returns the sequence number the next appended line will have
+     *
+     * @return the next sequence number
+     */
+    public synchronized long getNext() {
+        return next;
+    }
+
+    /**
+     * Returns a line by its sequence number
+     *
+     * @param sequence The sequence number
+     * @return the line or null if it is not in memory
+     */
+    public synchronized String getLine(long sequence) {
+        if (sequence < this.first || sequence >= this.next) {
+            return null;
+        }
+        return this.lines[index(sequence)];
+    }
+
+    /**
+     * Returns the level value of a line by its sequence number
+     *
+     * @param sequence The sequence number
+     * @return the level value or {@link Level#OFF} value if it is not in memory
+     */
+    public synchronized int getLevel(long sequence) {
+        if (sequence < this.first || sequence >= this.next) {
+            return Level.OFF.intValue();
+        }
+        return this.levels[index(sequence)];
+    }
+
+    /**
+     * Removes all lines from memory, cleared lines are not written to the spill file.
+     */
+    public synchronized void clear() {
+        for (long i = this.first; i < this.next; i++) {
+            this.lines[index(i)] = null;
+        }
+        this.first = this.next;
+    }
+
+    /**
+     * Returns the current spill file
+     *
+     * @return the file lines are being spilled to or null if nothing was spilled yet
+     */
+    public synchronized Path getSpillFile() {
+        return spillFile;
+    }
+
+    private void cleanupSpillDirectory(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream
+                    .filter((p) -> p.getFileName().toString().endsWith(".log"))
+                    .forEach(files::add);
+        }
+        if (files.size() < SPILL_DIRECTORY_MAX_FILES) {
+            return;
+        }
+        files.sort(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed());
+        for (int i = SPILL_DIRECTORY_MAX_FILES - 1; i < files.size(); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (this.spillWriter != null) {
+            this.spillWriter.close();
+            this.spillWriter = null;
+        }
+
+        Path directory = Configuration.getPath().resolve(SPILL_DIRECTORY);
+        Files.createDirectories(directory);
+        if (this.spillGeneration == 0) {
+            cleanupSpillDirectory(directory);
+        }
+
+        int oldGeneration = this.spillGeneration - SPILL_FILE_COUNT;
+        if (oldGeneration >= 0) {
+            Files.deleteIfExists(directory.resolve(this.spillName + "-" + oldGeneration + ".log"));
+        }
+
+        this.spillFile = directory.resolve(this.spillName + "-" + this.spillGeneration + ".log");
+        this.spillWriter = Files.newBufferedWriter(this.spillFile, StandardCharsets.UTF_8);
+        this.spillWritten = 0;
+        this.spillGeneration++;
+    }
+
+    private void spill(String line) {
+        if (this.spillFailed || line == null) {
+            return;
+        }
+        try {
+            if (this.spillWriter == null || this.spillWritten >= SPILL_FILE_LIMIT) {
+                rotate();
+            }
+            this.spillWriter.write(line);
+            this.spillWriter.write(System.lineSeparator());
+            this.spillWritten += line.length() + System.lineSeparator().length();
+            this.spillDirty = true;
+        } catch (IOException ex) {
+            //the log can't be logged, keep working in memory only
+            this.spillFailed = true;
+            closeSpill();
+        }
+    }
+
+    private void closeSpill() {
+        if (this.spillWriter == null) {
+            return;
+        }
+        try {
+            this.spillWriter.close();
+        } catch (IOException ex) {
+            //ignore
+        }
+        this.spillWriter = null;
+    }
+
+    /**
+     * Flushes the spill file if anything was written to it since the last flush
+     */
+    public synchronized void flush() {
+        if (!this.spillDirty || this.spillWriter == null) {
+            return;
+        }
+        this.spillDirty = false;
+        try {
+            this.spillWriter.flush();
+        } catch (IOException ex) {
+            this.spillFailed = true;
+            closeSpill();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        closeSpill();
+    }
+
+}
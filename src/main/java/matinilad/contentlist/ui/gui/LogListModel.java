@@ -0,0 +1,137 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.ui.gui;
+
+import java.util.Objects;
+import java.util.logging.Level;
+import javax.swing.AbstractListModel;
+
+/**
+ * A list model that shows the lines of a {@link LogBuffer} at or above a level, only the sequence numbers are kept so memory does not depend on the length of the lines.
+ *
+ * <p>
+ * The model must only be used from the event dispatch thread, call {@link #update()} to pick up the lines appended since the last update.</p>
+ *
+ * @author Cien
+ */
+@SuppressWarnings("serial")
+public class LogListModel extends AbstractListModel<String> {
+
+    private final LogBuffer buffer;
+    private final long[] view;
+
+    private Level level = Level.WARNING;
+    private int head = 0;
+    private int size = 0;
+    private long lastSeen;
+
+    public LogListModel(LogBuffer buffer) {
+        this.buffer = Objects.requireNonNull(buffer, "buffer is null");
+        this.view = new long[buffer.getCapacity()];
+        this.lastSeen = buffer.getFirst();
+    }
+
+    public LogBuffer getBuffer() {
+        return buffer;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = Objects.requireNonNull(level, "level is null");
+        rebuild();
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        String line = this.buffer.getLine(this.view[(this.head + index) % this.view.length]);
+        return (line == null ? "" : line);
+    }
+
+    private void collect(long from, long to) {
+        int minimum = this.level.intValue();
+        for (long sequence = from; sequence < to; sequence++) {
+            if (this.buffer.getLevel(sequence) >= minimum) {
+                this.view[(this.head + this.size) % this.view.length] = sequence;
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * Removes the lines that left the buffer and adds the new ones
+     */
+    public void update() {
+        int removed = 0;
+        int oldSize;
+        synchronized (this.buffer) {
+            long first = this.buffer.getFirst();
+            long next = this.buffer.getNext();
+
+            while (this.size > 0 && this.view[this.head] < first) {
+                this.head = (this.head + 1) % this.view.length;
+                this.size--;
+                removed++;
+            }
+
+            oldSize = this.size;
+            collect(Math.max(this.lastSeen, first), next);
+            this.lastSeen = next;
+        }
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+        if (this.size > oldSize) {
+            fireIntervalAdded(this, oldSize, this.size - 1);
+        }
+    }
+
+    private void rebuild() {
+        int oldSize = this.size;
+        synchronized (this.buffer) {
+            this.head = 0;
+            this.size = 0;
+            long next = this.buffer.getNext();
+            collect(this.buffer.getFirst(), next);
+            this.lastSeen = next;
+        }
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (this.size > 0) {
+            fireIntervalAdded(this, 0, this.size - 1);
+        }
+    }
+
+}
@@ -44,7 +44,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -83,10 +85,50 @@ public class MainWindow extends javax.swing.JFrame {
 
     private static final Logger LOGGER = Logger.getLogger(MainWindow.class.getName());
 
+    private static final int LISTING_CACHE_SIZE = 64;
+    private static final int PREFETCH_LIMIT = 32;
+
+    private static class DirectoryListing {
+
+        final PhantomPath[] paths;
+        final Object[][] tableData;
+
+        DirectoryListing(PhantomPath[] paths, Object[][] tableData) {
+            this.paths = paths;
+            this.tableData = tableData;
+        }
+    }
+
+    private static class ListingCache {
+
+        private final Map<PhantomPath, DirectoryListing> listings = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PhantomPath, DirectoryListing> eldest) {
+                return size() > LISTING_CACHE_SIZE;
+            }
+        };
+
+        synchronized DirectoryListing get(PhantomPath directory) {
+            return this.listings.get(directory);
+        }
+
+        synchronized boolean contains(PhantomPath directory) {
+            return this.listings.containsKey(directory);
+        }
+
+        synchronized void put(PhantomPath directory, DirectoryListing listing) {
+            this.listings.put(directory, listing);
+        }
+    }
+
     private StatusDialog log;
     private About about;
     
     private final ExecutorService searchThread = Executors.newSingleThreadExecutor();
+    private final ExecutorService listingThread = Executors.newSingleThreadExecutor();
+    private final ExecutorService prefetchThread = Executors.newSingleThreadExecutor();
 
     private final ImageIcon okIcon = new ImageIcon(MainWindow.class.getResource("check_ok.png"));
     private final ImageIcon failedIcon = new ImageIcon(MainWindow.class.getResource("check_failed.png"));
@@ -109,6 +151,12 @@ public class MainWindow extends javax.swing.JFrame {
     private Future<?> searchThreadTask = null;
     private long searchId = 0;
 
+    private ListingCache listingCache = new ListingCache();
+    private Future<?> listingThreadTask = null;
+    private Future<?> prefetchThreadTask = null;
+    private long listingId = 0;
+    private PhantomPath listingSelection = null;
+
     private final Timer searchTimer = new Timer(500, (ActionEvent e) -> {
         updateSearch();
     });
@@ -182,6 +230,7 @@ public class MainWindow extends javax.swing.JFrame {
         caseSensitiveSearch = new javax.swing.JCheckBoxMenuItem();
         exactSearch = new javax.swing.JCheckBoxMenuItem();
         storageSpaceUnitMenu = new javax.swing.JMenu();
+        directIOCheckbox = new javax.swing.JCheckBoxMenuItem();
         jMenu3 = new javax.swing.JMenu();
         logButton = new javax.swing.JMenuItem();
         jMenu4 = new javax.swing.JMenu();
@@ -545,6 +594,9 @@ public class MainWindow extends javax.swing.JFrame {
         storageSpaceUnitMenu.add(decimalSpaceUnitCheckbox);
         jMenu2.add(storageSpaceUnitMenu);
 
+        directIOCheckbox.setText("Bypass Page Cache on Validation");
+        jMenu2.add(directIOCheckbox);
+
         jMenuBar1.add(jMenu2);
 
         jMenu3.setText("View");
@@ -608,14 +660,147 @@ public class MainWindow extends javax.swing.JFrame {
         openFileSystemCSV(new File(file), false);
     }
     
-    private void updateFileTable() {
-        PhantomPath[] files = this.fileSystem.listFiles(this.currentPath, true);
+    private static DirectoryListing createListing(
+            PhantomFileSystem fs, PhantomPathTableModel model, PhantomPath directory
+    ) throws InterruptedException {
+        PhantomPath[] files = fs.listFiles(directory, true);
+        if (files == null) {
+            files = new PhantomPath[0];
+        }
+        return new DirectoryListing(files, model.createTableData(files));
+    }
+
+    private void cancelListingTasks() {
+        if (this.listingThreadTask != null) {
+            this.listingThreadTask.cancel(true);
+            this.listingThreadTask = null;
+        }
+        if (this.prefetchThreadTask != null) {
+            this.prefetchThreadTask.cancel(true);
+            this.prefetchThreadTask = null;
+        }
+    }
+
+    private void updateFileTable(PhantomPath selection) {
         if (!(this.fileTableList.getModel() instanceof PhantomPathTableModel)) {
             this.fileSystemTableModel = new PhantomPathTableModel(this.fileSystem, false);
             this.fileTableList.setModel(this.fileSystemTableModel);
         }
-        ((PhantomPathTableModel) this.fileTableList.getModel()).updatePaths(files);
+
+        cancelListingTasks();
+
+        final PhantomFileSystem fs = this.fileSystem;
+        final PhantomPathTableModel model = this.fileSystemTableModel;
+        final ListingCache cache = this.listingCache;
+        final PhantomPath directory = this.currentPath;
+        final long id = this.listingId;
+        this.listingId++;
+        this.listingSelection = selection;
+
+        DirectoryListing cached = cache.get(directory);
+        if (cached != null) {
+            onListingDone(id, directory, cached);
+            return;
+        }
+
+        this.fileTableList.setEnabled(false);
+        this.listingThreadTask = this.listingThread.submit(() -> {
+            try {
+                final DirectoryListing listing = createListing(fs, model, directory);
+                cache.put(directory, listing);
+                SwingUtilities.invokeLater(() -> {
+                    onListingDone(id, directory, listing);
+                });
+            } catch (Throwable t) {
+                if (t instanceof InterruptedException) {
+                    return;
+                }
+                SwingUtilities.invokeLater(() -> {
+                    onListingThreadException(t);
+                });
+            }
+        });
+    }
+
+    private void updateFileTable() {
+        updateFileTable(null);
+    }
+
+    private void onListingThreadException(Throwable t) {
+        Toolkit.getDefaultToolkit().beep();
+        LOGGER.log(Level.SEVERE, "listing thread error:", t);
+    }
+
+    private void onListingDone(long id, PhantomPath directory, DirectoryListing listing) {
+        if (id != (this.listingId - 1) || this.searchModeEnabled) {
+            return;
+        }
+        this.fileSystemTableModel.updatePaths(listing.paths, listing.tableData);
         this.fileTableList.setEnabled(true);
+
+        if (this.listingSelection != null) {
+            for (int i = 0; i < listing.paths.length; i++) {
+                if (listing.paths[i].equals(this.listingSelection)) {
+                    this.fileTableList.getSelectionModel().setSelectionInterval(i, i);
+                    break;
+                }
+            }
+            this.listingSelection = null;
+        }
+
+        prefetchListings(directory);
+    }
+
+    private void prefetchListings(PhantomPath directory) {
+        if (this.prefetchThreadTask != null) {
+            this.prefetchThreadTask.cancel(true);
+            this.prefetchThreadTask = null;
+        }
+
+        final PhantomFileSystem fs = this.fileSystem;
+        final PhantomPathTableModel model = this.fileSystemTableModel;
+        final ListingCache cache = this.listingCache;
+
+        //history neighbors first, they are the most likely next directories
+        final List<PhantomPath> history = new ArrayList<>();
+        if (!this.returnList.isEmpty()) {
+            history.add(this.returnList.get(this.returnList.size() - 1));
+        }
+        if (!this.nextList.isEmpty()) {
+            history.add(this.nextList.get(0));
+        }
+        history.add(directory.getParent());
+
+        this.prefetchThreadTask = this.prefetchThread.submit(() -> {
+            try {
+                List<PhantomPath> toPrefetch = new ArrayList<>(history);
+                PhantomPath[] children = fs.listFiles(directory, false);
+                if (children != null) {
+                    for (PhantomPath child : children) {
+                        if (toPrefetch.size() >= (history.size() + PREFETCH_LIMIT)) {
+                            break;
+                        }
+                        if (fs.isDirectory(child)) {
+                            toPrefetch.add(child);
+                        }
+                    }
+                }
+                for (PhantomPath p : toPrefetch) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    PhantomPath real = fs.toRealPath(p);
+                    if (real == null || !fs.isDirectory(real) || cache.contains(real)) {
+                        continue;
+                    }
+                    cache.put(real, createListing(fs, model, real));
+                }
+            } catch (InterruptedException ex) {
+                //canceled by a newer navigation
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "prefetch thread error:", t);
+            }
+        });
     }
 
     private void updateBottomInfoField() {
@@ -664,6 +849,8 @@ public class MainWindow extends javax.swing.JFrame {
             this.searchThreadTask.cancel(true);
             this.searchThreadTask = null;
         }
+        cancelListingTasks();
+        this.listingCache = new ListingCache();
 
         this.backButton.setEnabled(false);
         this.forwardButton.setEnabled(false);
@@ -821,6 +1008,9 @@ public class MainWindow extends javax.swing.JFrame {
     
     private void tryUpdatingSpaceUnit() {
         if (this.fileSystem != null) {
+            //cached listings were formatted with the old unit
+            cancelListingTasks();
+            this.listingCache = new ListingCache();
             if (!this.searchModeEnabled) {
                 updateFileTable();
             } else {
@@ -1159,6 +1349,7 @@ public class MainWindow extends javax.swing.JFrame {
         FileEntry[] entries = this.fileSystem.listEntries(selectedPaths);
         
         ValidateDialog dialog = new ValidateDialog(this, true);
+        dialog.setDirectIO(this.directIOCheckbox.isSelected());
         dialog.validate(entries, base);
         dialog.setVisible(true);
     }//GEN-LAST:event_validateFileButtonActionPerformed
@@ -1190,7 +1381,7 @@ public class MainWindow extends javax.swing.JFrame {
         showEntryProperties(selectedEntries.toArray(FileEntry[]::new));
     }//GEN-LAST:event_filePropertiesButtonActionPerformed
 
-    private void updateCurrentPath(PhantomPath newPath, boolean addToReturnList) {
+    private void updateCurrentPath(PhantomPath newPath, boolean addToReturnList, PhantomPath selection) {
         if (this.searchModeEnabled) {
             this.searchModeEnabled = false;
             onSearchDisabled();
@@ -1208,7 +1399,11 @@ public class MainWindow extends javax.swing.JFrame {
         this.pathField.setText(this.currentPath.toString());
 
         updateBottomInfoField();
-        updateFileTable();
+        updateFileTable(selection);
+    }
+
+    private void updateCurrentPath(PhantomPath newPath, boolean addToReturnList) {
+        updateCurrentPath(newPath, addToReturnList, null);
     }
 
     private void updateCurrentPath(PhantomPath newPath) {
@@ -1223,18 +1418,7 @@ public class MainWindow extends javax.swing.JFrame {
         }
         PhantomPath selected = this.fileSystem.toRealPath(selectedPaths[0]);
         PhantomPath directory = selected.getParent();
-        updateCurrentPath(directory);
-
-        if (this.fileTableList.getModel() instanceof PhantomPathTableModel model) {
-            int selectedIndex = -1;
-            for (int i = 0; i < model.getRowCount(); i++) {
-                if (model.getContentPath(i).equals(selected)) {
-                    selectedIndex = i;
-                    break;
-                }
-            }
-            this.fileTableList.getSelectionModel().setSelectionInterval(selectedIndex, selectedIndex);
-        }
+        updateCurrentPath(directory, true, selected);
     }//GEN-LAST:event_openLocationButtonActionPerformed
 
     public static class FileTransferable implements Transferable {
@@ -1380,6 +1564,7 @@ public class MainWindow extends javax.swing.JFrame {
         }
 
         final PhantomFileSystem fs = this.fileSystem;
+        final PhantomPathTableModel model = this.searchTableModel;
         final PhantomPath searchDirectory = this.currentPath;
         final String toSearch = this.searchField.getText();
         final boolean caseSensitive = this.caseSensitiveSearch.isSelected();
@@ -1390,8 +1575,9 @@ public class MainWindow extends javax.swing.JFrame {
         this.searchThreadTask = this.searchThread.submit(() -> {
             try {
                 final PhantomPath[] result = fs.search(searchDirectory, toSearch, caseSensitive, exact, true);
+                final Object[][] tableData = model.createTableData(result);
                 SwingUtilities.invokeLater(() -> {
-                    onSearchDone(id, searchDirectory, result);
+                    onSearchDone(id, searchDirectory, result, tableData);
                 });
             } catch (Throwable t) {
                 if (t instanceof InterruptedException) {
@@ -1404,12 +1590,12 @@ public class MainWindow extends javax.swing.JFrame {
         });
     }
 
-    private void onSearchDone(long id, PhantomPath directory, PhantomPath[] results) {
+    private void onSearchDone(long id, PhantomPath directory, PhantomPath[] results, Object[][] tableData) {
         if (id != (this.searchId - 1) || !this.searchModeEnabled) {
             return;
         }
         this.fileTableList.setEnabled(true);
-        this.searchTableModel.updatePaths(results);
+        this.searchTableModel.updatePaths(results, tableData);
         if (results.length == 1) {
             this.pathField.setText(directory.toString() + " (1 result)");
         } else {
@@ -1501,6 +1687,7 @@ public class MainWindow extends javax.swing.JFrame {
     private javax.swing.JCheckBoxMenuItem caseSensitiveSearch;
     private javax.swing.JMenuItem copySystemButton;
     private javax.swing.JMenuItem createButton;
+    private javax.swing.JCheckBoxMenuItem directIOCheckbox;
     private javax.swing.JCheckBoxMenuItem exactSearch;
     private javax.swing.JMenu existsSystemMenu;
     private javax.swing.JPopupMenu filePopupMenu;
@@ -41,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -62,11 +63,16 @@ import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.PhantomPath;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
 import matinilad.contentlist.phantomfs.entry.FileEntryFactory;
+import matinilad.contentlist.phantomfs.entry.FileEntryJournal;
 import matinilad.contentlist.phantomfs.entry.FileEntryMetadata;
 import matinilad.contentlist.phantomfs.entry.FileEntryType;
 import matinilad.contentlist.phantomfs.entry.FileEntryWriter;
 import matinilad.contentlist.phantomfs.utils.EncryptedOutputStream;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.PathScanner;
 import matinilad.contentlist.phantomfs.utils.PathStream;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
 import matinilad.contentlist.phantomfs.utils.TempFileList;
 import matinilad.contentlist.ui.UIUtils;
 
@@ -128,6 +134,8 @@ public class NewDialog extends javax.swing.JDialog {
         noTimestampsButton = new javax.swing.JCheckBox();
         noFileSizeButton = new javax.swing.JCheckBox();
         includeHiddenFilesCheckbox = new javax.swing.JCheckBox();
+        directIOCheckbox = new javax.swing.JCheckBox();
+        resumableCheckbox = new javax.swing.JCheckBox();
         jPanel6 = new javax.swing.JPanel();
         encryptWithAPasswordCheckbox = new javax.swing.JCheckBox();
         passwordField = new javax.swing.JPasswordField();
@@ -378,6 +386,10 @@ public class NewDialog extends javax.swing.JDialog {
 
         includeHiddenFilesCheckbox.setText("Include hidden files");
 
+        directIOCheckbox.setText("Bypass the page cache (direct I/O)");
+
+        resumableCheckbox.setText("Resumable (keeps a journal next to the list)");
+
         javax.swing.GroupLayout jPanel2Layout = new javax.swing.GroupLayout(jPanel2);
         jPanel2.setLayout(jPanel2Layout);
         jPanel2Layout.setHorizontalGroup(
@@ -399,7 +411,9 @@ public class NewDialog extends javax.swing.JDialog {
                             .addComponent(noFilesAndDirectoriesButton)
                             .addComponent(fileSampleSizeSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(fileSampleSizeLabel)
-                            .addComponent(includeHiddenFilesCheckbox))
+                            .addComponent(includeHiddenFilesCheckbox)
+                            .addComponent(directIOCheckbox)
+                            .addComponent(resumableCheckbox))
                         .addGap(0, 165, Short.MAX_VALUE))))
         );
         jPanel2Layout.setVerticalGroup(
@@ -425,6 +439,10 @@ public class NewDialog extends javax.swing.JDialog {
                 .addComponent(fileSampleSizeSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(includeHiddenFilesCheckbox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(directIOCheckbox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(resumableCheckbox)
                 .addContainerGap(29, Short.MAX_VALUE))
         );
 
@@ -648,7 +666,9 @@ public class NewDialog extends javax.swing.JDialog {
             FileEntryWriter.Flags flags, int sampleSize,
             String name, String author, String description,
             byte[] userSalt, char[] password,
-            boolean includeHiddenFiles
+            boolean includeHiddenFiles,
+            boolean directIO,
+            boolean resumable
     ) throws IOException, InterruptedException {
         LOGGER.log(Level.INFO, "Creating list on {0} for {1}",
                 new Object[]{
@@ -658,15 +678,35 @@ public class NewDialog extends javax.swing.JDialog {
         StatusDialogFileItem fileStatus = new StatusDialogFileItem(progressBar);
         fileStatus.reset();
         fileStatus.updateDialog(true);
+        
+        OperationMetrics metrics = new OperationMetrics("Create " + outputFile.getName());
+        progressBar.setMetrics(metrics);
+        RateLimiter limiter = new RateLimiter();
+        limiter.setMetrics(metrics);
+        progressBar.setRateLimiter(limiter);
+        
+        FileEntryJournal journal = null;
+        if (resumable && password == null) {
+            journal = FileEntryJournal.open(FileEntryJournal.directoryFor(outputFile.toPath()));
+            if (journal.getLoadedEntries() != 0) {
+                LOGGER.log(Level.INFO, "Resuming from {0} files in {1}", new Object[]{journal.getLoadedEntries(), journal.getDirectory()});
+            }
+        } else if (resumable) {
+            LOGGER.log(Level.WARNING, "The journal is not encrypted, a encrypted list is created without it");
+        }
+        FileEntryJournal finalJournal = journal;
 
         TempFileList tempFile = new TempFileList();
         try {
             OutputStream out = tempFile.newOutputStream(outputFile.toPath());
             if (password != null) {
-                out = new GZIPOutputStream(new EncryptedOutputStream(out, userSalt, password));
+                EncryptedOutputStream encrypted = new EncryptedOutputStream(out, userSalt, password);
+                encrypted.setMetrics(metrics);
+                out = new GZIPOutputStream(encrypted);
             }
             
             try (FileEntryWriter w = new FileEntryWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), flags)) {
+                w.setMetrics(metrics);
                 PhantomFileSystem fs = new PhantomFileSystem();
 
                 FileEntryFactory factory = new FileEntryFactory() {
@@ -683,6 +723,10 @@ public class NewDialog extends javax.swing.JDialog {
                 };
                 factory.setSampleSize(sampleSize);
                 factory.setSha256Enabled(flags.isSha256Enabled());
+                factory.setDirectIO(directIO);
+                factory.setRateLimiter(limiter);
+                factory.setJournal(journal);
+                factory.setMetrics(metrics);
 
                 AtomicInteger entries = new AtomicInteger(0);
                 AtomicLong totalSize = new AtomicLong(0);
@@ -692,6 +736,22 @@ public class NewDialog extends javax.swing.JDialog {
                     input[i] = inputFiles.get(i).toPath();
                 }
                 PathStream stream = new PathStream(input, includeHiddenFiles);
+                stream.setMetrics(metrics);
+                
+                PathScanner scanner = new PathScanner(new PathStream(input, includeHiddenFiles)) {
+                    @Override
+                    protected void onProgress(long files, long directories, long bytes) {
+                        fileStatus.setTotals(files + directories, bytes, false);
+                    }
+
+                    @Override
+                    protected void onFinished() {
+                        fileStatus.setTotals(getFiles() + getDirectories(), getBytes(), true);
+                        LOGGER.log(Level.INFO, "Scan finished, {0} files and {1} directories with {2} in total",
+                                new Object[]{getFiles(), getDirectories(), UIUtils.formatBytes(getBytes())});
+                    }
+                };
+                Thread scannerThread = scanner.scanInBackground();
                 try {
                     stream.stream((e) -> {
                         Path file = e.getPath();
@@ -702,12 +762,24 @@ public class NewDialog extends javax.swing.JDialog {
 
                             LOGGER.log(Level.INFO, "Reading {0}", file.toString());
 
-                            fileStatus.reset();
                             fileStatus.setFileName(file.toString());
                             fileStatus.updateDialog(false);
 
-                            FileEntry entry = factory.newFileEntry(e.getRoot(), file);
+                            FileEntry entry;
+                            try {
+                                entry = factory.newFileEntry(e.getRoot(), file, e.getAttributes());
+                            } finally {
+                                fileStatus.nextFile();
+                            }
                             fs.writeEntry(entry);
+                            if (finalJournal != null) {
+                                finalJournal.add(entry);
+                                try {
+                                    finalJournal.checkpoint();
+                                } catch (IOException ex) {
+                                    LOGGER.log(Level.WARNING, "Failed to write the journal", ex);
+                                }
+                            }
 
                             if (entry.getType().equals(FileEntryType.FILE)) {
                                 totalSize.addAndGet(entry.getSize());
@@ -721,6 +793,7 @@ public class NewDialog extends javax.swing.JDialog {
                             if (t instanceof InterruptedException ex) {
                                 throw new RuntimeException(ex);
                             } else {
+                                metrics.increment(OperationMetrics.Counter.ERRORS);
                                 LOGGER.log(Level.WARNING, "Error on " + file.toString(), e.getError());
                             }
                         }
@@ -730,6 +803,8 @@ public class NewDialog extends javax.swing.JDialog {
                         throw in;
                     }
                     throw ex;
+                } finally {
+                    scannerThread.interrupt();
                 }
 
                 fs.validate();
@@ -762,9 +837,24 @@ public class NewDialog extends javax.swing.JDialog {
                 );
             }
             
+            if (journal != null) {
+                journal.delete();
+            }
+            
+            metrics.finish();
+            LOGGER.log(Level.INFO, "Metrics report:\n{0}", metrics.toReport());
         } catch (Throwable t) {
             tempFile.deleteFiles();
             throw t;
+        } finally {
+            metrics.finish();
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to write the journal", ex);
+                }
+            }
         }
     }
 
@@ -853,6 +943,8 @@ public class NewDialog extends javax.swing.JDialog {
         }
 
         final boolean includeHiddenFiles = this.includeHiddenFilesCheckbox.isSelected();
+        final boolean directIO = this.directIOCheckbox.isSelected();
+        final boolean resumable = this.resumableCheckbox.isSelected();
         final byte[] finalUserSalt = userSalt;
         final char[] finalPassword = password;
 
@@ -861,9 +953,9 @@ public class NewDialog extends javax.swing.JDialog {
         LOGGER.addHandler(dialog.getLoggerHandler());
 
         AtomicBoolean canceled = new AtomicBoolean(false);
-        Thread th = new Thread(() -> {
+        Future<?> task = TaskExecutor.shared().start(() -> {
             try {
-                create(dialog, output, inputFiles, flags, finalSampleSize, name, author, description, finalUserSalt, finalPassword, includeHiddenFiles);
+                create(dialog, output, inputFiles, flags, finalSampleSize, name, author, description, finalUserSalt, finalPassword, includeHiddenFiles, directIO, resumable);
             } catch (InterruptedException e) {
                 LOGGER.log(Level.INFO, "Interrupted by user", e);
             } catch (Throwable t) {
@@ -876,6 +968,7 @@ public class NewDialog extends javax.swing.JDialog {
             SwingUtilities.invokeLater(() -> {
                 LOGGER.info("Finished!");
                 LOGGER.removeHandler(dialog.getLoggerHandler());
+                dialog.flushUpdates();
                 dialog.getCancelButton().setEnabled(false);
                 dialog.getCurrentItemName().setText("Finished");
                 dialog.getCurrentItemStatus().setText("");
@@ -885,7 +978,7 @@ public class NewDialog extends javax.swing.JDialog {
         });
         dialog.getCancelButton().addActionListener((e) -> {
             if (dialog.showCancelDialog()) {
-                th.interrupt();
+                task.cancel(true);
                 dialog.setVisible(false);
                 dialog.dispose();
                 canceled.set(true);
@@ -900,9 +993,6 @@ public class NewDialog extends javax.swing.JDialog {
                 }
             }
         });
-        th.setDaemon(true);
-        th.start();
-
         dialog.setVisible(true);
     }//GEN-LAST:event_createButtonActionPerformed
 
@@ -967,6 +1057,7 @@ public class NewDialog extends javax.swing.JDialog {
     private javax.swing.JPasswordField confirmPasswordField;
     private javax.swing.JLabel confirmPasswordLabel;
     private javax.swing.JButton createButton;
+    private javax.swing.JCheckBox directIOCheckbox;
     private javax.swing.JCheckBox encryptWithAPasswordCheckbox;
     private javax.swing.JLabel fileSampleSizeLabel;
     private javax.swing.JSpinner fileSampleSizeSpinner;
@@ -1002,6 +1093,7 @@ public class NewDialog extends javax.swing.JDialog {
     private javax.swing.JTextField outputFile;
     private javax.swing.JButton outputFileSelectButton;
     private javax.swing.JPasswordField passwordField;
+    private javax.swing.JCheckBox resumableCheckbox;
     private javax.swing.JTextArea saltArea;
     private javax.swing.JLabel saltLabel;
     private javax.swing.JButton setUsernameToAuthorButton;
@@ -42,6 +42,7 @@ import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,6 +53,8 @@ import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
 import matinilad.contentlist.phantomfs.entry.FileEntryReader;
 import matinilad.contentlist.phantomfs.utils.EncryptedInputStream;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
 
 /**
  *
@@ -62,7 +65,7 @@ public class OpenDialog extends StatusDialog {
 
     private static final Logger LOGGER = Logger.getLogger(OpenDialog.class.getName());
 
-    private Thread thread = null;
+    private Future<?> thread = null;
 
     public OpenDialog(Frame parent, boolean modal) {
         super(parent, modal);
@@ -77,7 +80,7 @@ public class OpenDialog extends StatusDialog {
     private void init() {
         getCancelButton().addActionListener((e) -> {
             if (this.thread != null) {
-                this.thread.interrupt();
+                this.thread.cancel(true);
                 this.thread = null;
             }
         });
@@ -171,8 +174,11 @@ public class OpenDialog extends StatusDialog {
 
         StatusDialogFileItem fileItem = new StatusDialogFileItem(this);
         boolean finalDecrypt = decrypt;
+        
+        OperationMetrics metrics = new OperationMetrics("Open " + filePath);
+        setMetrics(metrics);
 
-        this.thread = new Thread(() -> {
+        this.thread = TaskExecutor.shared().start(() -> {
             try {
                 try {
                     InputStream in = getFileStream(obj);
@@ -221,7 +227,9 @@ public class OpenDialog extends StatusDialog {
                                 //ignore
                             }
 
-                            in = new GZIPInputStream(new EncryptedInputStream(in, password));
+                            EncryptedInputStream encrypted = new EncryptedInputStream(in, password);
+                            encrypted.setMetrics(metrics);
+                            in = new GZIPInputStream(encrypted);
                             break;
                         }
                     }
@@ -231,6 +239,7 @@ public class OpenDialog extends StatusDialog {
                     
                     PhantomFileSystem fs = new PhantomFileSystem();
                     try (FileEntryReader entryReader = new FileEntryReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))) {
+                        entryReader.setMetrics(metrics);
                         int entryCount = 0;
 
                         FileEntry entry;
@@ -241,6 +250,10 @@ public class OpenDialog extends StatusDialog {
 
                             fs.writeEntry(entry);
                             entryCount++;
+                            switch (entry.getType()) {
+                                case FILE -> metrics.increment(OperationMetrics.Counter.FILES);
+                                case DIRECTORY -> metrics.increment(OperationMetrics.Counter.DIRECTORIES);
+                            }
 
                             fileItem.setFileName(entry.getPath().toString());
 
@@ -250,6 +263,9 @@ public class OpenDialog extends StatusDialog {
                     }
                     
                     fs.validate();
+                    
+                    metrics.finish();
+                    LOGGER.log(Level.INFO, "Metrics report:\n{0}", metrics.toReport());
 
                     fileItem.setFileName("Done.");
                     fileItem.setFileProgress(fileItem.getFileSize());
@@ -263,7 +279,9 @@ public class OpenDialog extends StatusDialog {
                         }
                     });
                 } catch (Throwable t) {
+                    metrics.finish();
                     if (!(t instanceof InterruptedException)) {
+                        metrics.increment(OperationMetrics.Counter.ERRORS);
                         LOGGER.log(Level.SEVERE, "Failed to read file!", t);
                         SwingUtilities.invokeLater(() -> {
                             Toolkit.getDefaultToolkit().beep();
@@ -289,7 +307,5 @@ public class OpenDialog extends StatusDialog {
                 });
             }
         });
-        this.thread.setDaemon(true);
-        this.thread.start();
     }
 }
@@ -83,53 +83,69 @@ public class PhantomPathTableModel extends DefaultTableModel {
         return name == null ? "(root)" : name;
     }
     
-    private Object[][] createTableData() {
-        Object[][] tableData = new Object[this.paths.length][header.length];
-        for (int row = 0; row < this.paths.length; row++) {
-            Object[] rowData = new Object[header.length];
-            Arrays.fill(rowData, "");
-            PhantomPath p = this.paths[row];
-            FileEntry entry = getFileSystem().getEntry(p);
-            String name = getName(p);
-            rowData[1] = name;
-            if (entry != null) {
-                rowData[0] = entry.getType().getDisplayName();
+    private Object[] createRow(PhantomPath p) {
+        Object[] rowData = new Object[(isSearchMode() ? searchHeader : header).length];
+        Arrays.fill(rowData, "");
+        FileEntry entry = getFileSystem().getEntry(p);
+        rowData[1] = getName(p);
+        if (entry != null) {
+            rowData[0] = entry.getType().getDisplayName();
+            if (isSearchMode()) {
+                rowData[2] = entry.getPath().getParent().toString();
+                rowData[3] = UIUtils.formatBytes(entry.getSize());
+            } else {
                 rowData[2] = UIUtils.formatBytesShort(entry.getSize());
                 rowData[3] = UIUtils.asShortLocalizedDateTime(entry.getCreated());
                 rowData[4] = UIUtils.asShortLocalizedDateTime(entry.getModified());
             }
-            tableData[row] = rowData;
         }
-        return tableData;
+        return rowData;
     }
     
-    private Object[][] createSearchModeTableData() {
-        Object[][] tableData = new Object[this.paths.length][searchHeader.length];
-        for (int row = 0; row < this.paths.length; row++) {
-            Object[] rowData = new Object[searchHeader.length];
-            Arrays.fill(rowData, "");
-            PhantomPath p = this.paths[row];
-            FileEntry entry = getFileSystem().getEntry(p);
-            String name = getName(p);
-            rowData[1] = name;
-            if (entry != null) {
-                rowData[0] = entry.getType().getDisplayName();
-                rowData[2] = entry.getPath().getParent().toString();
-                rowData[3] = UIUtils.formatBytes(entry.getSize());
+    /**
+     * Creates the table rows for a list of paths, does not touch the table itself and can be called outside of the event dispatch thread.
+     *
+     * @param newData The paths, not null
+     * @return The table rows
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public Object[][] createTableData(PhantomPath[] newData) throws InterruptedException {
+        Object[][] tableData = new Object[newData.length][];
+        for (int row = 0; row < newData.length; row++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
             }
-            tableData[row] = rowData;
+            tableData[row] = createRow(newData[row]);
         }
         return tableData;
     }
     
-    public void updatePaths(PhantomPath[] newData) {
+    /**
+     * Updates the table with rows previously created by createTableData
+     *
+     * @param newData The paths, not null
+     * @param tableData The rows created for the paths, not null
+     */
+    public void updatePaths(PhantomPath[] newData, Object[][] tableData) {
+        if (newData.length != tableData.length) {
+            throw new IllegalArgumentException("paths and rows length mismatch");
+        }
         this.paths = newData.clone();
-        Object[][] tableData = (isSearchMode() ? createSearchModeTableData() : createTableData());
         
-        setRowCount(0);
-        for (int i = 0; i < tableData.length; i++) {
-            addRow(tableData[i]);
+        //a single event instead of one per row, without resetting the columns
+        this.dataVector.clear();
+        for (Object[] row : tableData) {
+            this.dataVector.add(convertToVector(row));
+        }
+        fireTableDataChanged();
+    }
+    
+    public void updatePaths(PhantomPath[] newData) {
+        Object[][] tableData = new Object[newData.length][];
+        for (int row = 0; row < newData.length; row++) {
+            tableData[row] = createRow(newData[row]);
         }
+        updatePaths(newData, tableData);
     }
 
     @Override
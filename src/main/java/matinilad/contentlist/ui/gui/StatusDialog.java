@@ -26,16 +26,21 @@
  */
 package matinilad.contentlist.ui.gui;
 
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.ErrorManager;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -47,10 +52,19 @@ import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.ui.SpaceUnit;
+import matinilad.contentlist.ui.UIUtils;
 
 /**
  *
@@ -61,6 +75,8 @@ public class StatusDialog extends javax.swing.JDialog {
 
     private static final Logger LOGGER = Logger.getLogger(StatusDialog.class.getName());
 
+    public static final int FRAMES_PER_SECOND = 30;
+
     private static class LoggerLevelJCheckBoxMenuItem extends JCheckBoxMenuItem {
 
         private final Level level;
@@ -75,25 +91,43 @@ public class StatusDialog extends javax.swing.JDialog {
         }
     }
 
-    private final List<LoggerLevelJCheckBoxMenuItem> loggerLevelButtons = new ArrayList<>();
+    private static class SpeedLimitJCheckBoxMenuItem extends JCheckBoxMenuItem {
 
-    private final Handler loggerHandler = new Handler() {
-        private int warnings = 0;
-        private int errors = 0;
+        private final long bytesPerSecond;
 
-        {
-            setFormatter(new SimpleFormatter());
+        public SpeedLimitJCheckBoxMenuItem(long bytesPerSecond) {
+            super(bytesPerSecond == 0 ? "Unlimited" : UIUtils.formatSpeed(bytesPerSecond));
+            this.bytesPerSecond = bytesPerSecond;
         }
 
-        @Override
-        public synchronized void setLevel(Level newLevel) throws SecurityException {
-            super.setLevel(newLevel);
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+    }
 
-            SwingUtilities.invokeLater(() -> {
-                for (LoggerLevelJCheckBoxMenuItem e : loggerLevelButtons) {
-                    e.setSelected(e.getLevel().equals(newLevel));
-                }
-            });
+    private final List<LoggerLevelJCheckBoxMenuItem> loggerLevelButtons = new ArrayList<>();
+    private final List<SpeedLimitJCheckBoxMenuItem> speedLimitButtons = new ArrayList<>();
+    private final JCheckBoxMenuItem customSpeedLimitButton = new JCheckBoxMenuItem("Custom...");
+    private final JCheckBoxMenuItem pausedButton = new JCheckBoxMenuItem("Paused");
+
+    private final AtomicReference<StatusDialogItem> pendingItem = new AtomicReference<>(null);
+    private final AtomicReference<String> pendingGlobalStatus = new AtomicReference<>(null);
+
+    private final LogBuffer logBuffer = new LogBuffer();
+    private final LogListModel logListModel = new LogListModel(this.logBuffer);
+    private int logCellWidth = 0;
+
+    private final AtomicInteger warnings = new AtomicInteger(0);
+    private final AtomicInteger errors = new AtomicInteger(0);
+    private final AtomicBoolean logCountChanged = new AtomicBoolean(false);
+
+    private final Timer updateTimer = new Timer(1000 / FRAMES_PER_SECOND, (e) -> {
+        flushUpdates();
+    });
+
+    private final Handler loggerHandler = new Handler() {
+        {
+            setFormatter(new SimpleFormatter());
         }
 
         @Override
@@ -110,64 +144,46 @@ public class StatusDialog extends javax.swing.JDialog {
             }
 
             int recordLevel = record.getLevel().intValue();
-            boolean updatedCount = false;
             if (recordLevel >= Level.WARNING.intValue() && recordLevel < Level.SEVERE.intValue()) {
-                updatedCount = true;
-                this.warnings++;
+                warnings.incrementAndGet();
+                logCountChanged.set(true);
             }
             if (recordLevel >= Level.SEVERE.intValue()) {
-                updatedCount = true;
-                this.errors++;
+                errors.incrementAndGet();
+                logCountChanged.set(true);
             }
 
-            final boolean finalUpdatedCount = updatedCount;
-            SwingUtilities.invokeLater(() -> {
-                logTextArea.append(msg);
-
-                if (finalUpdatedCount) {
-                    StringBuilder b = new StringBuilder();
-                    b.append(this.warnings);
-                    if (this.warnings == 1) {
-                        b.append(" Warning, ");
-                    } else {
-                        b.append(" Warnings, ");
-                    }
-                    b.append(this.errors);
-                    if (this.errors == 1) {
-                        b.append(" Error");
-                    } else {
-                        b.append(" Errors");
-                    }
-
-                    logCount.setText(b.toString());
-                }
-            });
+            logBuffer.append(record.getLevel(), msg);
         }
 
         @Override
         public void flush() {
-
+            logBuffer.flush();
         }
 
         @Override
         public void close() throws SecurityException {
-
+            logBuffer.flush();
         }
     };
 
     private float progress = 0f;
-    private Future<?> globalStatusUpdate = null;
+    
+    private volatile OperationMetrics metrics = null;
+    private volatile RateLimiter rateLimiter = null;
 
     public StatusDialog(java.awt.Frame parent, boolean modal) {
         super(parent, modal);
         initComponents();
         setLocationRelativeTo(parent);
+        this.updateTimer.start();
     }
 
     public StatusDialog(java.awt.Dialog parent, boolean modal) {
         super(parent, modal);
         initComponents();
         setLocationRelativeTo(parent);
+        this.updateTimer.start();
     }
 
     /**
@@ -189,12 +205,14 @@ public class StatusDialog extends javax.swing.JDialog {
         logCount = new javax.swing.JLabel();
         logPanel = new javax.swing.JPanel();
         jScrollPane1 = new javax.swing.JScrollPane();
-        logTextArea = new javax.swing.JTextArea();
+        logList = new javax.swing.JList<>();
         jMenuBar1 = new javax.swing.JMenuBar();
         jMenu1 = new javax.swing.JMenu();
         saveLogButton = new javax.swing.JMenuItem();
+        metricsReportButton = new javax.swing.JMenuItem();
         jMenu2 = new javax.swing.JMenu();
         logLevelMenu = new javax.swing.JMenu();
+        speedLimitMenu = new javax.swing.JMenu();
         jSeparator1 = new javax.swing.JPopupMenu.Separator();
         clearLogButton = new javax.swing.JMenuItem();
 
@@ -275,10 +293,28 @@ public class StatusDialog extends javax.swing.JDialog {
 
         jTabbedPane1.addTab("Status", statusPanel);
 
-        logTextArea.setEditable(false);
-        logTextArea.setColumns(20);
-        logTextArea.setRows(5);
-        jScrollPane1.setViewportView(logTextArea);
+        logList.setModel(this.logListModel);
+        this.logList.getModel().addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                StatusDialog.this.onLogLinesAdded(e);
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+
+            }
+        });
+        this.logList.addPropertyChangeListener("font", (e) -> {
+            StatusDialog.this.updateLogCellSize();
+        });
+        updateLogCellSize();
+        jScrollPane1.setViewportView(logList);
 
         javax.swing.GroupLayout logPanelLayout = new javax.swing.GroupLayout(logPanel);
         logPanel.setLayout(logPanelLayout);
@@ -311,6 +347,16 @@ public class StatusDialog extends javax.swing.JDialog {
         });
         jMenu1.add(saveLogButton);
 
+        metricsReportButton.setEnabled(false);
+        metricsReportButton.setIcon(new javax.swing.ImageIcon(getClass().getResource("/matinilad/contentlist/ui/gui/info.png"))); // NOI18N
+        metricsReportButton.setText("Metrics Report");
+        metricsReportButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                metricsReportButtonActionPerformed(evt);
+            }
+        });
+        jMenu1.add(metricsReportButton);
+
         jMenuBar1.add(jMenu1);
 
         jMenu2.setText("Edit");
@@ -327,15 +373,21 @@ public class StatusDialog extends javax.swing.JDialog {
 
                 LoggerLevelJCheckBoxMenuItem item = new LoggerLevelJCheckBoxMenuItem(level);
                 item.addActionListener((evt) -> {
-                    this.loggerHandler.setLevel(level);
+                    setLogLevel(level);
                 });
 
                 this.logLevelMenu.add(item);
                 this.loggerLevelButtons.add(item);
             }
-            this.loggerHandler.setLevel(Level.WARNING);
+            setLogLevel(Level.WARNING);
         }
         jMenu2.add(logLevelMenu);
+
+        speedLimitMenu.setEnabled(false);
+        speedLimitMenu.setIcon(new javax.swing.ImageIcon(getClass().getResource("/matinilad/contentlist/ui/gui/settings.png"))); // NOI18N
+        speedLimitMenu.setText("Speed Limit");
+        initSpeedLimitMenu();
+        jMenu2.add(speedLimitMenu);
         jMenu2.add(jSeparator1);
 
         clearLogButton.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_D, java.awt.event.InputEvent.CTRL_DOWN_MASK));
@@ -400,7 +452,8 @@ public class StatusDialog extends javax.swing.JDialog {
         if (result != JOptionPane.YES_OPTION) {
             return;
         }
-        this.logTextArea.setText("");
+        this.logBuffer.clear();
+        this.logListModel.update();
         Toolkit.getDefaultToolkit().beep();
     }//GEN-LAST:event_clearLogButtonActionPerformed
 
@@ -430,8 +483,11 @@ public class StatusDialog extends javax.swing.JDialog {
             selected = new File(selected.getParentFile(), selected.getName() + extension);
         }
         try {
-            try (FileOutputStream o = new FileOutputStream(selected)) {
-                o.write(this.logTextArea.getText().getBytes(StandardCharsets.UTF_8));
+            try (BufferedWriter w = Files.newBufferedWriter(selected.toPath(), StandardCharsets.UTF_8)) {
+                for (int i = 0; i < this.logListModel.getSize(); i++) {
+                    w.write(this.logListModel.getElementAt(i));
+                    w.newLine();
+                }
             }
             LOGGER.log(Level.INFO, "Log saved to: {0}", selected.toString());
         } catch (IOException ex) {
@@ -442,10 +498,271 @@ public class StatusDialog extends javax.swing.JDialog {
         }
     }//GEN-LAST:event_saveLogButtonActionPerformed
 
+    private void metricsReportButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_metricsReportButtonActionPerformed
+        OperationMetrics m = this.metrics;
+        if (m == null) {
+            return;
+        }
+        JTextArea area = new JTextArea(m.toReport(), 16, 60);
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, area.getFont().getSize()));
+        
+        Object[] options = {"Save JSON", "Close"};
+        int option = JOptionPane.showOptionDialog(this,
+                new JScrollPane(area), "Metrics Report",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE,
+                null, options, options[1]);
+        if (option != 0) {
+            return;
+        }
+        
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogType(JFileChooser.SAVE_DIALOG);
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        chooser.setFileFilter(new FileNameExtensionFilter("JSON File (.json)", "json"));
+        chooser.setMultiSelectionEnabled(false);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File selected = chooser.getSelectedFile();
+        if (!selected.getName().contains(".")) {
+            selected = new File(selected.getParentFile(), selected.getName() + ".json");
+        }
+        try {
+            Files.writeString(selected.toPath(), m.toJson(), StandardCharsets.UTF_8);
+            LOGGER.log(Level.INFO, "Metrics report saved to: {0}", selected.toString());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Failed to save file! Check log for details", "Failed!", JOptionPane.ERROR_MESSAGE);
+            LOGGER.log(Level.WARNING, "Failed to save metrics report to: " + selected.toString(), ex);
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }//GEN-LAST:event_metricsReportButtonActionPerformed
+
+    /**
+     * Sets the metrics of the running operation, enabling the metrics report
+     * in the file menu. Can be called from any thread.
+     *
+     * @param metrics The metrics, or null to disable the report
+     */
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics;
+        SwingUtilities.invokeLater(() -> {
+            this.metricsReportButton.setEnabled(this.metrics != null);
+        });
+    }
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void initSpeedLimitMenu() {
+        long[] speeds = {
+            0,
+            500 * UIUtils.MEGABYTE, 200 * UIUtils.MEGABYTE, 100 * UIUtils.MEGABYTE,
+            50 * UIUtils.MEGABYTE, 20 * UIUtils.MEGABYTE, 10 * UIUtils.MEGABYTE,
+            5 * UIUtils.MEGABYTE, 1 * UIUtils.MEGABYTE
+        };
+        for (int i = 0; i < speeds.length; i++) {
+            if (i == 1) {
+                this.speedLimitMenu.add(new JSeparator());
+            }
+            SpeedLimitJCheckBoxMenuItem item = new SpeedLimitJCheckBoxMenuItem(speeds[i]);
+            item.addActionListener((evt) -> {
+                setSpeedLimit(item.getBytesPerSecond());
+            });
+            this.speedLimitMenu.add(item);
+            this.speedLimitButtons.add(item);
+        }
+        this.customSpeedLimitButton.addActionListener((evt) -> {
+            RateLimiter limiter = this.rateLimiter;
+            String s = JOptionPane.showInputDialog(this,
+                    "Bytes per second (like 50MB or 20MiB, 0 for unlimited):",
+                    (limiter == null ? 0 : limiter.getBytesPerSecond()));
+            if (s != null) {
+                try {
+                    setSpeedLimit(SpaceUnit.parse(s));
+                    return;
+                } catch (NumberFormatException ex) {
+                    JOptionPane.showMessageDialog(this, "Invalid speed: " + s, "Invalid Speed", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+            updateSpeedLimitMenu();
+        });
+        this.speedLimitMenu.add(this.customSpeedLimitButton);
+        this.speedLimitMenu.add(new JSeparator());
+        this.pausedButton.addActionListener((evt) -> {
+            RateLimiter limiter = this.rateLimiter;
+            if (limiter != null) {
+                limiter.setPaused(this.pausedButton.isSelected());
+                LOGGER.log(Level.INFO, (limiter.isPaused() ? "Paused" : "Resumed"));
+            }
+        });
+        this.speedLimitMenu.add(this.pausedButton);
+        updateSpeedLimitMenu();
+    }
+
+    private void updateSpeedLimitMenu() {
+        RateLimiter limiter = this.rateLimiter;
+        long speed = (limiter == null ? 0 : limiter.getBytesPerSecond());
+        boolean preset = false;
+        for (SpeedLimitJCheckBoxMenuItem e : this.speedLimitButtons) {
+            e.setSelected(e.getBytesPerSecond() == speed);
+            preset |= e.isSelected();
+        }
+        this.customSpeedLimitButton.setSelected(!preset);
+        this.customSpeedLimitButton.setText(preset ? "Custom..." : "Custom (" + UIUtils.formatSpeed(speed) + ")...");
+        this.pausedButton.setSelected(limiter != null && limiter.isPaused());
+    }
+
+    private void setSpeedLimit(long bytesPerSecond) {
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter != null) {
+            limiter.setBytesPerSecond(bytesPerSecond);
+            LOGGER.log(Level.INFO, "Speed limit: {0}", (bytesPerSecond == 0 ? "Unlimited" : UIUtils.formatSpeed(bytesPerSecond)));
+        }
+        updateSpeedLimitMenu();
+    }
+
+    /**
+     * Sets the limiter of the running operation, enabling the speed limit
+     * menu so the limit can be changed while it runs. Can be called from any
+     * thread.
+     *
+     * @param rateLimiter The limiter, or null to disable the menu
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        SwingUtilities.invokeLater(() -> {
+            this.speedLimitMenu.setEnabled(this.rateLimiter != null);
+            updateSpeedLimitMenu();
+        });
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     public Handler getLoggerHandler() {
         return loggerHandler;
     }
 
+    /**
+     * Sets the lowest level shown in the log tab, everything is still recorded.
+     *
+     * @param level The level, not null
+     */
+    public void setLogLevel(Level level) {
+        this.logListModel.setLevel(level);
+        for (LoggerLevelJCheckBoxMenuItem e : this.loggerLevelButtons) {
+            e.setSelected(e.getLevel().equals(level));
+        }
+    }
+
+    public Level getLogLevel() {
+        return this.logListModel.getLevel();
+    }
+
+    private void updateLogCellSize() {
+        //fixed cell sizes so the list never measures every line
+        FontMetrics metrics = this.logList.getFontMetrics(this.logList.getFont());
+        this.logList.setFixedCellHeight(metrics.getHeight() + 2);
+        this.logCellWidth = 0;
+        for (int i = 0; i < this.logListModel.getSize(); i++) {
+            this.logCellWidth = Math.max(this.logCellWidth, metrics.stringWidth(this.logListModel.getElementAt(i)));
+        }
+        this.logList.setFixedCellWidth(this.logCellWidth + 8);
+    }
+
+    private void onLogLinesAdded(ListDataEvent e) {
+        FontMetrics metrics = this.logList.getFontMetrics(this.logList.getFont());
+        int width = this.logCellWidth;
+        for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+            width = Math.max(width, metrics.stringWidth(this.logListModel.getElementAt(i)));
+        }
+        if (width != this.logCellWidth) {
+            this.logCellWidth = width;
+            this.logList.setFixedCellWidth(width + 8);
+        }
+    }
+
+    private void updateLogList() {
+        Rectangle visible = this.logList.getVisibleRect();
+        boolean atBottom = (visible.y + visible.height) >= (this.logList.getHeight() - this.logList.getFixedCellHeight());
+
+        this.logListModel.update();
+        this.logBuffer.flush();
+
+        int size = this.logListModel.getSize();
+        if (atBottom && size > 0) {
+            this.logList.ensureIndexIsVisible(size - 1);
+        }
+    }
+
+    private void updateLogCount() {
+        int w = this.warnings.get();
+        int e = this.errors.get();
+
+        StringBuilder b = new StringBuilder();
+        b.append(w);
+        if (w == 1) {
+            b.append(" Warning, ");
+        } else {
+            b.append(" Warnings, ");
+        }
+        b.append(e);
+        if (e == 1) {
+            b.append(" Error");
+        } else {
+            b.append(" Errors");
+        }
+
+        this.logCount.setText(b.toString());
+    }
+
+    /**
+     * Applies all pending item, global status and log updates now, must be called from the event dispatch thread.
+     * <p>
+     * Updates are normally applied by a timer at {@link #FRAMES_PER_SECOND}, call this before setting the components directly so a pending update does not overwrite them later.
+     */
+    public void flushUpdates() {
+        StatusDialogItem item = this.pendingItem.getAndSet(null);
+        if (item != null) {
+            item.getUpdateTask().run();
+        }
+
+        String globalStatus = this.pendingGlobalStatus.getAndSet(null);
+        if (globalStatus != null) {
+            getCurrentGlobalStatus().setText(globalStatus);
+        }
+
+        updateLogList();
+
+        if (this.logCountChanged.getAndSet(false)) {
+            updateLogCount();
+        }
+    }
+
+    /**
+     * Schedules a item to be drawn on the next frame, only the last item posted before a frame is drawn.
+     *
+     * @param item The item, not null
+     * @param force If the item should be drawn as soon as possible instead of waiting for the next frame
+     */
+    public void postItemUpdate(StatusDialogItem item, boolean force) {
+        this.pendingItem.set(Objects.requireNonNull(item, "item is null"));
+        if (force) {
+            SwingUtilities.invokeLater(this::flushUpdates);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        this.updateTimer.stop();
+        this.logBuffer.close();
+        super.dispose();
+    }
+
     public JTextField getCurrentItemName() {
         return currentItemName;
     }
@@ -498,22 +815,9 @@ public class StatusDialog extends javax.swing.JDialog {
     }
 
     public void updateCurrentGlobalStatusAsync(String text, boolean force) {
-        Runnable task = () -> {
-            getCurrentGlobalStatus().setText(text);
-        };
-
+        this.pendingGlobalStatus.set(text);
         if (force) {
-            SwingUtilities.invokeLater(task);
-            return;
-        }
-
-        if (this.globalStatusUpdate == null || this.globalStatusUpdate.isDone()) {
-            this.globalStatusUpdate = CompletableFuture.runAsync(() -> {
-                try {
-                    SwingUtilities.invokeAndWait(task);
-                } catch (InterruptedException | InvocationTargetException ex) {
-                }
-            });
+            SwingUtilities.invokeLater(this::flushUpdates);
         }
     }
 
@@ -541,10 +845,12 @@ public class StatusDialog extends javax.swing.JDialog {
     private javax.swing.JLabel logCount;
     private javax.swing.JMenu logLevelMenu;
     private javax.swing.JPanel logPanel;
-    private javax.swing.JTextArea logTextArea;
+    private javax.swing.JList<String> logList;
+    private javax.swing.JMenuItem metricsReportButton;
     private javax.swing.JProgressBar progressBar;
     private javax.swing.JLabel progressLabel;
     private javax.swing.JMenuItem saveLogButton;
+    private javax.swing.JMenu speedLimitMenu;
     private javax.swing.JPanel statusPanel;
     // End of variables declaration//GEN-END:variables
 }
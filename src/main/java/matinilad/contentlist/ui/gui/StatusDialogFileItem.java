@@ -26,9 +26,15 @@
  */
 package matinilad.contentlist.ui.gui;
 
+import matinilad.contentlist.ui.ThroughputEstimator;
 import matinilad.contentlist.ui.UIUtils;
 
 /**
+ * Status of a file being processed, optionally inside of a larger job.
+ * <p>
+ * If the totals of the job are set (they can be updated from another thread,
+ * like a background scan), the progress and estimated time are for the whole
+ * job instead of the current file.
  *
  * @author Cien
  */
@@ -37,15 +43,18 @@ public class StatusDialogFileItem extends StatusDialogItem {
     private String fileName = null;
     private String fileStatus = null;
     
-    private long lastUpdateTime = System.nanoTime();
-    private long lastUpdateFileProgress = 0;
-    
     private long fileProgress = 0;
     private long fileSize = 0;
     
-    private double transferSpeed = 0.0;
-    private double estimatedTime = 0.0;
-    private double progress = 0f;
+    private volatile long totalEntries = -1;
+    private volatile long totalSize = -1;
+    private volatile boolean totalsComplete = false;
+    
+    private long completedEntries = 0;
+    private long completedSize = 0;
+    
+    private final ThroughputEstimator fileSpeed = new ThroughputEstimator(2.0);
+    private final ThroughputEstimator totalSpeed = new ThroughputEstimator();
     
     public StatusDialogFileItem(StatusDialog dialog) {
         super(dialog);
@@ -77,16 +86,68 @@ public class StatusDialogFileItem extends StatusDialogItem {
         return (this.fileStatus == null ? "" : this.fileStatus);
     }
     
+    /**
+     * Resets the current file and the totals of the job.
+     */
     public void reset() {
-        this.lastUpdateTime = System.nanoTime();
-        this.lastUpdateFileProgress = 0;
-        
         this.fileProgress = 0;
         this.fileSize = 0;
+        this.fileSpeed.reset();
+        
+        this.totalEntries = -1;
+        this.totalSize = -1;
+        this.totalsComplete = false;
         
-        this.transferSpeed = 0;
-        this.estimatedTime = 0;
-        this.progress = 0;
+        this.completedEntries = 0;
+        this.completedSize = 0;
+        this.totalSpeed.reset();
+    }
+    
+    /**
+     * Marks the current entry as done, adding its size to the job progress,
+     * and resets the file progress for the next one.
+     */
+    public void nextFile() {
+        this.completedEntries++;
+        this.completedSize += Math.max(this.fileSize, 0);
+        this.totalSpeed.update(this.completedSize);
+        
+        this.fileProgress = 0;
+        this.fileSize = 0;
+        this.fileSpeed.reset();
+    }
+    
+    /**
+     * Sets the totals of the job, can be called from any thread.
+     *
+     * @param entries The number of files and directories, or -1 if unknown
+     * @param size The sum of the file sizes in bytes, or -1 if unknown
+     * @param complete If the totals are final or still being counted
+     */
+    public void setTotals(long entries, long size, boolean complete) {
+        this.totalEntries = entries;
+        this.totalSize = size;
+        this.totalsComplete = complete;
+    }
+
+    public long getTotalEntries() {
+        return totalEntries;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public boolean isTotalsComplete() {
+        return totalsComplete;
+    }
+
+    public long getCompletedEntries() {
+        return completedEntries;
+    }
+
+    public long getCompletedSize() {
+        return completedSize;
     }
     
     public long getFileSize() {
@@ -104,47 +165,77 @@ public class StatusDialogFileItem extends StatusDialogItem {
     public void setFileProgress(long fileProgress) {
         this.fileProgress = fileProgress;
         
-        long size = Math.max(this.fileSize, 0);
-        long bytes = Math.min(Math.max(this.fileProgress, 0), size);
-        
-        double timePassed = (System.nanoTime() - this.lastUpdateTime) / 1E9d;
-        if (timePassed >= 1.0) {
-            long bytesProcessed = Math.max(bytes - this.lastUpdateFileProgress, 0);
-            this.transferSpeed = bytesProcessed / timePassed;
-            this.estimatedTime = (size - bytes) / this.transferSpeed;
-            
-            this.lastUpdateTime = System.nanoTime();
-            this.lastUpdateFileProgress = bytes;
+        long bytes = Math.min(Math.max(this.fileProgress, 0), Math.max(this.fileSize, 0));
+        this.fileSpeed.update(bytes);
+        this.totalSpeed.update(this.completedSize + bytes);
+    }
+    
+    private long getCurrentFileBytes() {
+        return Math.min(Math.max(this.fileProgress, 0), Math.max(this.fileSize, 0));
+    }
+    
+    private static String formatEstimate(double seconds, boolean lowerBound) {
+        if (!Double.isFinite(seconds)) {
+            return "(Estimated time unknown)";
         }
-        
-        this.progress = bytes / ((double)size);
+        String time = UIUtils.formatTimeCountdown((long) seconds);
+        if (lowerBound) {
+            return "(at least " + time + ")";
+        }
+        return "(" + time + " estimated)";
+    }
+    
+    private static String formatSpeed(double rate) {
+        long bytes = 0;
+        if (Double.isFinite(rate)) {
+            bytes = (long) rate;
+        }
+        return UIUtils.formatSpeed(bytes);
     }
     
     @Override
     public String getEstimatedTime() {
-        long transferSpeedBytes = 0;
-        if (Double.isFinite(this.transferSpeed)) {
-            transferSpeedBytes = (long) this.transferSpeed;
+        long size = this.totalSize;
+        if (size > 0) {
+            boolean complete = this.totalsComplete;
+            String more = (complete ? "" : "+");
+            
+            long done = this.completedSize + getCurrentFileBytes();
+            double estimate = this.totalSpeed.estimateSeconds(size - done);
+            
+            String entriesString = "";
+            long entries = this.totalEntries;
+            if (entries > 0) {
+                entriesString = " -- " + this.completedEntries + " of " + entries + more + " entries";
+            }
+            
+            return UIUtils.formatBytesShort(done) + " of " + UIUtils.formatBytesShort(size) + more
+                    + entriesString
+                    + " -- " + formatSpeed(this.totalSpeed.getRate())
+                    + " " + formatEstimate(estimate, !complete);
         }
-        String speedString = UIUtils.formatSpeed(transferSpeedBytes);
         
-        String estimatedTimeString;
-        if (Double.isFinite(this.estimatedTime)) {
-            estimatedTimeString = UIUtils.formatTimeCountdown((long) this.estimatedTime)+" estimated";
-        } else {
-            estimatedTimeString = "Estimated time unknown";
-        }
-        estimatedTimeString = "(" + estimatedTimeString + ")";
+        long bytes = getCurrentFileBytes();
+        double estimate = this.fileSpeed.estimateSeconds(Math.max(this.fileSize, 0) - bytes);
         
         String sizeString = UIUtils.formatBytesShort(Math.max(this.fileSize, 0));
         String processedString = UIUtils.formatBytesShort(Math.max(this.fileProgress, 0));
         
-        return processedString+" of "+sizeString+" -- "+speedString + " " + estimatedTimeString;
+        return processedString + " of " + sizeString + " -- " + formatSpeed(this.fileSpeed.getRate()) + " " + formatEstimate(estimate, false);
     }
     
     @Override
     public float getProgress() {
-        return (float) this.progress;
+        long size = this.totalSize;
+        if (size > 0) {
+            long done = this.completedSize + getCurrentFileBytes();
+            return (float) Math.min(done / ((double) size), 1.0);
+        }
+        long fileSizeValue = Math.max(this.fileSize, 0);
+        if (fileSizeValue == 0) {
+            return 0f;
+        }
+        return (float) (getCurrentFileBytes() / ((double) fileSizeValue));
     }
     
 }
@@ -26,11 +26,7 @@
  */
 package matinilad.contentlist.ui.gui;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
-import javax.swing.SwingUtilities;
 
 /**
  *
@@ -39,7 +35,6 @@ import javax.swing.SwingUtilities;
 public abstract class StatusDialogItem {
 
     private final StatusDialog dialog;
-    private Future<?> currentUpdate = null;
     
     public StatusDialogItem(StatusDialog dialog) {
         this.dialog = Objects.requireNonNull(dialog, "dialog is null");
@@ -72,21 +67,12 @@ public abstract class StatusDialogItem {
         return r;
     }
     
+    /**
+     * Marks this item as changed, the dialog reads it again on its next frame, so calling this on every update is cheap.
+     *
+     * @param force If the dialog should be updated as soon as possible instead of waiting for the next frame
+     */
     public void updateDialog(boolean force) {
-        Runnable updateTask = getUpdateTask();
-        if (force) {
-            SwingUtilities.invokeLater(updateTask);
-            return;
-        }
-        
-        if (this.currentUpdate != null && !this.currentUpdate.isDone()) {
-            return;
-        }
-        
-        this.currentUpdate = CompletableFuture.runAsync(() -> {
-            try {
-                SwingUtilities.invokeAndWait(updateTask);
-            } catch (InterruptedException | InvocationTargetException ex) {}
-        });
+        getDialog().postItemUpdate(this, force);
     }
 }
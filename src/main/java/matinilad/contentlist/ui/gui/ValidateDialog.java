@@ -34,13 +34,18 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HexFormat;
 import java.util.Objects;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
+import matinilad.contentlist.phantomfs.entry.FileEntryType;
 import matinilad.contentlist.phantomfs.entry.FileEntryValidator;
 import matinilad.contentlist.phantomfs.entry.FileEntryValidatorResult;
+import matinilad.contentlist.phantomfs.utils.OperationMetrics;
+import matinilad.contentlist.phantomfs.utils.RateLimiter;
+import matinilad.contentlist.phantomfs.utils.TaskExecutor;
 import matinilad.contentlist.ui.UIUtils;
 
 /**
@@ -52,7 +57,8 @@ public class ValidateDialog extends StatusDialog {
 
     private static final Logger LOGGER = Logger.getLogger(ValidateDialog.class.getName());
 
-    private Thread thread = null;
+    private Future<?> thread = null;
+    private boolean directIO = false;
 
     public ValidateDialog(Frame parent, boolean modal) {
         super(parent, modal);
@@ -67,7 +73,7 @@ public class ValidateDialog extends StatusDialog {
     private void init() {
         getCancelButton().addActionListener((e) -> {
             if (this.thread != null) {
-                this.thread.interrupt();
+                this.thread.cancel(true);
                 this.thread = null;
             }
             setVisible(false);
@@ -78,6 +84,14 @@ public class ValidateDialog extends StatusDialog {
         return this.thread != null;
     }
 
+    public boolean isDirectIO() {
+        return directIO;
+    }
+
+    public void setDirectIO(boolean directIO) {
+        this.directIO = directIO;
+    }
+
     public void validate(FileEntry[] entries, File rootDirectory) {
         validate(entries, rootDirectory.toPath());
     }
@@ -100,19 +114,27 @@ public class ValidateDialog extends StatusDialog {
         LOGGER.log(Level.INFO, "Root directory: {0}", rootDirectory.toString());
 
         StatusDialogFileItem item = new StatusDialogFileItem(this);
+        
+        OperationMetrics metrics = new OperationMetrics("Validate " + rootDirectory.toString());
+        setMetrics(metrics);
+        RateLimiter limiter = new RateLimiter();
+        limiter.setMetrics(metrics);
+        setRateLimiter(limiter);
 
         setTitle(rootDirectory.toString());
         getCurrentGlobalStatus().setText("0 Success, 0 Failed (0 of " + entries.length + " total)");
         getCancelButton().setEnabled(true);
         item.updateDialog(true);
 
-        this.thread = new Thread(() -> {
+        this.thread = TaskExecutor.shared().start(() -> {
             try {
                 try {
-                    validateEntries(item, entries, rootDirectory);
+                    validateEntries(item, entries, rootDirectory, metrics);
                 } catch (InterruptedException ex) {
                     LOGGER.info("Canceled");
                 }
+                metrics.finish();
+                LOGGER.log(Level.INFO, "Metrics report:\n{0}", metrics.toReport());
             } finally {
                 SwingUtilities.invokeLater(() -> {
                     this.thread = null;
@@ -120,13 +142,21 @@ public class ValidateDialog extends StatusDialog {
                 });
             }
         });
-        this.thread.setDaemon(true);
-        this.thread.start();
     }
 
-    private void validateEntries(StatusDialogFileItem item, FileEntry[] entries, Path root) throws InterruptedException {
+    private void validateEntries(StatusDialogFileItem item, FileEntry[] entries, Path root, OperationMetrics metrics) throws InterruptedException {
         int success = 0;
         int failed = 0;
+        
+        long totalSize = 0;
+        for (FileEntry entry : entries) {
+            if (entry.getType().equals(FileEntryType.FILE)) {
+                totalSize += Math.max(entry.getSize(), 0);
+            }
+        }
+        item.reset();
+        item.setTotals(entries.length, totalSize, true);
+        
         for (int i = 0; i < entries.length; i++) {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
@@ -135,7 +165,9 @@ public class ValidateDialog extends StatusDialog {
             FileEntry entry = entries[i];
             final int entryIndex = i;
 
-            item.reset();
+            if (entry.getType().equals(FileEntryType.FILE)) {
+                item.setFileSize(Math.max(entry.getSize(), 0));
+            }
 
             String entryPathString = entry.getPath().toString();
             item.setFileName(entryPathString);
@@ -156,6 +188,9 @@ public class ValidateDialog extends StatusDialog {
                         item.updateDialog(false);
                     }
                 };
+                validator.setMetrics(metrics);
+                validator.setDirectIO(this.directIO);
+                validator.setRateLimiter(getRateLimiter());
                 FileEntryValidatorResult result = validator.validate();
 
                 if (result.success()) {
@@ -163,6 +198,7 @@ public class ValidateDialog extends StatusDialog {
                     LOGGER.log(Level.INFO, "Entry {0} validated with success!", entryPathString);
                 } else {
                     failed++;
+                    metrics.increment(OperationMetrics.Counter.ERRORS);
                     Object expected = result.getExpectedValue();
                     Object found = result.getFoundValue();
                     HexFormat hex = HexFormat.of();
@@ -179,6 +215,12 @@ public class ValidateDialog extends StatusDialog {
                         case SAMPLE -> {
                             LOGGER.log(Level.WARNING, "Entry {0} validation failed! Reason: Wrong sample! Expected: {1} Found: {2}", new Object[]{entryPathString, hex.formatHex((byte[]) expected), hex.formatHex((byte[]) found)});
                         }
+                        case CHECKSUM -> {
+                            LOGGER.log(Level.WARNING, "Entry {0} validation failed! Reason: Wrong checksum! Expected: {1} Found: {2}", new Object[]{entryPathString, hex.formatHex((byte[]) expected), hex.formatHex((byte[]) found)});
+                        }
+                        case SAMPLE_POINTS, TREE_HASH -> {
+                            LOGGER.log(Level.WARNING, "Entry {0} validation failed! Reason: {1}", new Object[]{entryPathString, UIUtils.getFailureReason(result)});
+                        }
                         case HASH -> {
                             LOGGER.log(Level.WARNING, "Entry {0} validation failed! Reason: Wrong hash! Expected: {1} Found: {2}", new Object[]{entryPathString, hex.formatHex((byte[]) expected), hex.formatHex((byte[]) found)});
                         }
@@ -190,14 +232,18 @@ public class ValidateDialog extends StatusDialog {
                 if (t instanceof InterruptedException interruptedException) {
                     throw interruptedException;
                 }
+                metrics.increment(OperationMetrics.Counter.ERRORS);
                 LOGGER.log(Level.SEVERE, "Error while validating", t);
             }
+            
+            item.nextFile();
         }
 
         int finalFailed = failed;
         int finalSuccess = success;
 
         SwingUtilities.invokeLater(() -> {
+            flushUpdates();
             getCancelButton().setEnabled(false);
             getCurrentItemName().setText("Done!");
             getCurrentItemStatus().setText("");
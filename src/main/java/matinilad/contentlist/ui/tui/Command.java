@@ -111,4 +111,15 @@ public abstract class Command {
     }
 
     public abstract String execute(String input) throws CommandException;
+
+    /**
+     * Executes the command and returns the output as lines, commands with large outputs should override this to create the lines on demand.
+     *
+     * @param input The command input, may be null
+     * @return the output
+     * @throws CommandException if the command failed
+     */
+    public CommandOutput executeLines(String input) throws CommandException {
+        return CommandOutput.of(execute(input));
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package matinilad.contentlist.ui.tui;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * The output of a command as a source of lines, lines are only created when they are requested so a page of a large output does not need the whole output in memory.
+ *
+ * @author Cien
+ */
+public abstract class CommandOutput {
+
+    private static final int PRINT_CHUNK = 256;
+
+    private static class Indexed extends CommandOutput {
+
+        private final int size;
+        private final IntFunction<String> lines;
+
+        public Indexed(int size, IntFunction<String> lines) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size < 0");
+            }
+            this.size = size;
+            this.lines = Objects.requireNonNull(lines, "lines is null");
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public boolean hasLine(int index) {
+            return index >= 0 && index < this.size;
+        }
+
+        @Override
+        public List<String> getLines(int from, int to) {
+            from = Math.max(from, 0);
+            to = Math.min(to, this.size);
+            if (from >= to) {
+                return Collections.emptyList();
+            }
+            List<String> list = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                list.add(this.lines.apply(i));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Creates a output from a text, leading and trailing whitespace is removed.
+     *
+     * @param text The text, null is the same as a empty text
+     * @return a new output
+     */
+    public static CommandOutput of(String text) {
+        if (text == null) {
+            return empty();
+        }
+        text = text.trim();
+        if (text.isEmpty()) {
+            return empty();
+        }
+        String[] lines = text.lines().toArray(String[]::new);
+        return new Indexed(lines.length, (i) -> lines[i]);
+    }
+
+    /**
+     * Creates a output of a known size where each line is created on demand.
+     *
+     * @param size The number of lines
+     * @param lines A function that creates the line at a index
+     * @return a new output
+     */
+    public static CommandOutput of(int size, IntFunction<String> lines) {
+        return new Indexed(size, lines);
+    }
+
+    public static CommandOutput empty() {
+        return new Indexed(0, (i) -> null);
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public abstract int size();
+
+    /**
+     * Checks if a line exists.
+     *
+     * @param index The index of the line
+     * @return true if the output has that line
+     */
+    public abstract boolean hasLine(int index);
+
+    /**
+     * Returns the lines from a index (inclusive) to another (exclusive), fewer lines are returned if the output ends before.
+     *
+     * @param from The first index
+     * @param to The last index, exclusive
+     * @return the lines, may be empty
+     */
+    public abstract List<String> getLines(int from, int to);
+
+    /**
+     * Prints all lines, only a small number of lines is held in memory at the same time.
+     *
+     * @param out The output stream
+     */
+    public void print(PrintStream out) {
+        for (int i = 0;; i += PRINT_CHUNK) {
+            List<String> lines = getLines(i, i + PRINT_CHUNK);
+            for (String line : lines) {
+                out.println(line);
+            }
+            if (lines.size() < PRINT_CHUNK) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Joins all lines into a single text.
+     *
+     * @return the text
+     */
+    public String toText() {
+        StringBuilder b = new StringBuilder();
+        boolean first = true;
+        for (int i = 0;; i += PRINT_CHUNK) {
+            List<String> lines = getLines(i, i + PRINT_CHUNK);
+            for (String line : lines) {
+                if (!first) {
+                    b.append(System.lineSeparator());
+                }
+                b.append(line);
+                first = false;
+            }
+            if (lines.size() < PRINT_CHUNK) {
+                break;
+            }
+        }
+        return b.toString();
+    }
+
+}
@@ -29,6 +29,7 @@ package matinilad.contentlist.ui.tui;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.PhantomPath;
 import matinilad.contentlist.phantomfs.entry.FileEntry;
@@ -45,7 +46,7 @@ public class TUIState {
     private PhantomPath workingDirectory = PhantomPath.of("/");
     
     private int linesPerPage = 25;
-    private String[] lines = null;
+    private CommandOutput output = null;
     
     private Path rootDirectory = null;
     private PrintStream directOutput = null;
@@ -144,41 +145,55 @@ public class TUIState {
     
     public void setCommandOutput(String text) {
         if (text == null) {
-            this.lines = null;
+            this.output = null;
             return;
         }
-        this.lines = text.lines().toArray(String[]::new);
+        this.output = CommandOutput.of(text);
     }
-    
+
+    public void setCommandOutput(CommandOutput output) {
+        this.output = output;
+    }
+
+    public CommandOutput getCommandOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the number of pages of the current output.
+     *
+     * @return the number of pages
+     */
     public int getNumberOfPages() {
-        if (this.lines == null) {
+        if (this.output == null) {
             return 0;
         }
-        return (this.lines.length / this.linesPerPage) + ((this.lines.length % this.linesPerPage) != 0 ? 1 : 0);
+        return toPages(this.output.size());
     }
-    
+
+    private int toPages(int lines) {
+        return (lines / this.linesPerPage) + ((lines % this.linesPerPage) != 0 ? 1 : 0);
+    }
+
+    public boolean hasPage(int index) {
+        if (this.output == null || index < 0) {
+            return false;
+        }
+        return this.output.hasLine(index * this.linesPerPage);
+    }
+
     public String getPage(int index) {
-        if (this.lines == null || this.lines.length == 0 || index < 0) {
+        if (this.output == null || index < 0) {
             return null;
         }
-        
+
         int startLine = index * this.linesPerPage;
-        int endLine = Math.min((index * this.linesPerPage) + this.linesPerPage, this.lines.length);
-        
-        if (startLine >= this.lines.length) {
+        List<String> pageLines = this.output.getLines(startLine, startLine + this.linesPerPage);
+        if (pageLines.isEmpty()) {
             return null;
         }
-        
-        StringBuilder b = new StringBuilder();
-        
-        for (int i = startLine; i < endLine; i++) {
-            b.append(this.lines[i]);
-            if (i != (endLine - 1)) {
-                b.append(System.lineSeparator());
-            }
-        }
-        
-        return b.toString();
+
+        return String.join(System.lineSeparator(), pageLines);
     }
 
     public Path getRootDirectory() {
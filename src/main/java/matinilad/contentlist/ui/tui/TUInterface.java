@@ -249,16 +249,16 @@ public class TUInterface {
             Command newCommand = commands.getCommand(command);
             if (newCommand != null) {
                 try {
-                    String commandOutput = newCommand.execute(argument).trim();
+                    CommandOutput commandOutput = newCommand.executeLines(argument);
                     if (!newCommand.isDirectOutputEnabled()) {
                         Command pageCommand = state.getCommands().getCommand("pg");
                         if (pageCommand != null) {
                             state.setCommandOutput(commandOutput);
-                            if (state.getNumberOfPages() > 0) {
+                            if (state.hasPage(0)) {
                                 pageCommand.execute("1");
                             }
                         } else {
-                            out.println(commandOutput);
+                            commandOutput.print(out);
                         }
                     }
                 } catch (CommandException ex) {
@@ -85,16 +85,28 @@ public class AboutCommand extends Command {
         }
 
         byte[] sha256 = entry.getSha256();
+        byte[] crc32c = entry.getCrc32c();
+        byte[] treeHash = entry.getTreeHash();
         byte[] sample = entry.getSample();
+        byte[] samplePoints = entry.getSamplePoints();
 
-        if (sha256 != null || sample != null) {
+        if (sha256 != null || crc32c != null || treeHash != null || sample != null || samplePoints != null) {
             HexFormat hex = HexFormat.of();
             if (sha256 != null) {
                 b.append(" SHA256: ").append(hex.formatHex(sha256)).append(System.lineSeparator());
             }
+            if (crc32c != null) {
+                b.append(" CRC32C: ").append(hex.formatHex(crc32c)).append(System.lineSeparator());
+            }
+            if (treeHash != null) {
+                b.append(" Tree hash: ").append(hex.formatHex(treeHash)).append(System.lineSeparator());
+            }
             if (sample != null) {
                 b.append(" Sample: ").append(hex.formatHex(sample)).append(System.lineSeparator());
             }
+            if (samplePoints != null) {
+                b.append(" Sample points: ").append(hex.formatHex(samplePoints)).append(System.lineSeparator());
+            }
         }
         
         return b.toString();
@@ -30,6 +30,7 @@ import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.PhantomPath;
 import matinilad.contentlist.ui.tui.Command;
 import matinilad.contentlist.ui.tui.CommandException;
+import matinilad.contentlist.ui.tui.CommandOutput;
 import matinilad.contentlist.ui.tui.TUIState;
 
 /**
@@ -54,28 +55,27 @@ public class ListCommand extends Command {
     
     @Override
     public String execute(String input) throws CommandException {
-        StringBuilder b = new StringBuilder();
+        return executeLines(input).toText();
+    }
 
+    @Override
+    public CommandOutput executeLines(String input) throws CommandException {
         PhantomFileSystem fs = getFileSystem();
         TUIState state = getState();
 
-        PhantomPath[] files = fs.listFiles(state.getWorkingDirectory(), true);
-        for (int i = 0; i < files.length; i++) {
+        PhantomPath workingDirectory = state.getWorkingDirectory();
+        PhantomPath[] files = fs.listFiles(workingDirectory, true);
+        return CommandOutput.of(files.length, (i) -> {
             PhantomPath file = files[i];
             
-            b.append(file.relative(state.getWorkingDirectory()).toString());
+            String line = file.relative(workingDirectory).toString();
             if (!file.getName().equals(".")
                     && !file.getName().equals("..")
                     && fs.isDirectory(file)) {
-                b.append("/");
+                line += "/";
             }
-            
-            if (i != (files.length - 1)) {
-                b.append(System.lineSeparator());
-            }
-        }
-
-        return b.toString();
+            return line;
+        });
     }
 
 }
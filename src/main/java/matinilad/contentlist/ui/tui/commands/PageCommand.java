@@ -78,7 +78,7 @@ public class PageCommand extends Command {
             throw new CommandException("Unknown number: " + input, ex);
         }
         
-        String page = getState().getPage(pageIndex - 1);
+        String page = state.getPage(pageIndex - 1);
         if (page == null) {
             throw new CommandException("Unknown page " + pageIndex + "\n"+pages+(pages == 1 ? " Page" : " Pages")+" available");
         }
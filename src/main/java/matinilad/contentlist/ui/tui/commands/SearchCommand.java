@@ -30,6 +30,7 @@ import matinilad.contentlist.phantomfs.PhantomFileSystem;
 import matinilad.contentlist.phantomfs.PhantomPath;
 import matinilad.contentlist.ui.tui.Command;
 import matinilad.contentlist.ui.tui.CommandException;
+import matinilad.contentlist.ui.tui.CommandOutput;
 import matinilad.contentlist.ui.tui.TUIState;
 
 /**
@@ -50,8 +51,8 @@ public class SearchCommand extends Command {
         }
         
         @Override
-        public String execute(String input) throws CommandException {
-            return super.execute(input, true, false);
+        public CommandOutput executeLines(String input) throws CommandException {
+            return super.executeLines(input, true, false);
         }
     }
     
@@ -66,8 +67,8 @@ public class SearchCommand extends Command {
         }
         
         @Override
-        public String execute(String input) throws CommandException {
-            return super.execute(input, false, true);
+        public CommandOutput executeLines(String input) throws CommandException {
+            return super.executeLines(input, false, true);
         }
     }
     
@@ -82,8 +83,8 @@ public class SearchCommand extends Command {
         }
         
         @Override
-        public String execute(String input) throws CommandException {
-            return super.execute(input, true, true);
+        public CommandOutput executeLines(String input) throws CommandException {
+            return super.executeLines(input, true, true);
         }
     }
     
@@ -112,10 +113,15 @@ public class SearchCommand extends Command {
     
     @Override
     public String execute(String input) throws CommandException {
-        return execute(input, false, false);
+        return executeLines(input).toText();
+    }
+
+    @Override
+    public CommandOutput executeLines(String input) throws CommandException {
+        return executeLines(input, false, false);
     }
     
-    protected String execute(String input, boolean caseSensitive, boolean exact) throws CommandException {
+    protected CommandOutput executeLines(String input, boolean caseSensitive, boolean exact) throws CommandException {
         if (input == null) {
             throw new CommandException("Usage: " + getName() + " [name]");
         }
@@ -131,30 +137,28 @@ public class SearchCommand extends Command {
         }
         
         if (p.length == 0) {
-            return "No files found for '" + input + "'!";
+            return CommandOutput.of("No files found for '" + input + "'!");
         }
         
-        StringBuilder b = new StringBuilder();
-        
-        b.append(p.length)
-                .append(" ")
-                .append(p.length == 1 ? "File" : "Files")
-                .append(" found for '")
-                .append(input)
-                .append("'!")
-                .append(System.lineSeparator())
-                .append(System.lineSeparator())
-                ;
+        String header = p.length + " " + (p.length == 1 ? "File" : "Files") + " found for '" + input + "'!";
+        PhantomPath workingDirectory = state.getWorkingDirectory();
         
-        for (PhantomPath e : p) {
-            b.append(e.relative(state.getWorkingDirectory()));
+        return CommandOutput.of(p.length + 2, (i) -> {
+            switch (i) {
+                case 0 -> {
+                    return header;
+                }
+                case 1 -> {
+                    return "";
+                }
+            }
+            PhantomPath e = p[i - 2];
+            String line = e.relative(workingDirectory).toString();
             if (fs.isDirectory(e)) {
-                b.append("/.");
+                line += "/.";
             }
-            b.append(System.lineSeparator());
-        }
-        
-        return b.toString();
+            return line;
+        });
     }
 
 }
@@ -111,6 +111,12 @@ public class ValidateSystemCommand extends SystemCommand {
                         case SAMPLE -> {
                             out.println("Reason: Wrong sample! Expected: " + hex.formatHex((byte[]) expected) + " Found: " + hex.formatHex((byte[]) found));
                         }
+                        case CHECKSUM -> {
+                            out.println("Reason: Wrong checksum! Expected: " + hex.formatHex((byte[]) expected) + " Found: " + hex.formatHex((byte[]) found));
+                        }
+                        case SAMPLE_POINTS, TREE_HASH -> {
+                            out.println("Reason: " + UIUtils.getFailureReason(result));
+                        }
                         case HASH -> {
                             out.println("Reason: Wrong hash! Expected: " + hex.formatHex((byte[]) expected) + " Found: " + hex.formatHex((byte[]) found));
                         }